@@ -21,8 +21,8 @@ import static android.support.test.espresso.contrib.RecyclerViewActions.scrollTo
 import static android.support.test.espresso.matcher.ViewMatchers.hasDescendant;
 import static android.support.test.espresso.matcher.ViewMatchers.isAssignableFrom;
 import static android.support.test.espresso.matcher.ViewMatchers.isDisplayed;
+import static android.support.test.espresso.matcher.ViewMatchers.withContentDescription;
 import static android.support.test.espresso.matcher.ViewMatchers.withId;
-import static android.support.test.espresso.matcher.ViewMatchers.withText;
 
 
 /**
@@ -49,10 +49,11 @@ public class ListActivityCreateTest {
         onView(isAssignableFrom(EditText.class)).perform(typeText(testProduct), pressKey(KeyEvent.KEYCODE_ENTER));
 
         // Scroll to the element with the typed String
-        onView(withId(R.id.list_recycler_view)).perform(scrollTo(hasDescendant(withText(testProduct))));
+        // Rows are drawn by a ListItemView, described by their product
+        onView(withId(R.id.list_recycler_view)).perform(scrollTo(hasDescendant(withContentDescription(testProduct))));
 
         // Check the unique String is Displayed on a View
-        onView(withText(testProduct)).check(matches(isDisplayed()));
+        onView(withContentDescription(testProduct)).check(matches(isDisplayed()));
     }
 
     private String createUniqueString() {
@@ -0,0 +1,224 @@
+package com.athebapps.android.list;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.ContextThemeWrapper;
+import android.view.Gravity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Measures how long a row of the list takes to be bound, measured, laid out and drawn, as when
+ * RecyclerView scrolls through the list, with ListItemView and with the hierarchy of nested
+ * LinearLayouts and TextViews it replaced, rebuilt here as it was inflated from item_list_normal.
+ * The first pass over the rows builds the layouts of ListItemView, the next ones find them in its
+ * cache. The latencies are logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ListItemViewBenchmark {
+
+    private static final String TAG = ListItemViewBenchmark.class.getSimpleName();
+
+    /* Number of different rows bound in each pass */
+    private static final int NB_OF_ROWS = 200;
+
+    /* Number of passes over the rows, the first one being reported separately */
+    private static final int NB_OF_PASSES = 10;
+
+    /* Width of the rows, the one of a phone in portrait */
+    private static final int WIDTH_DP = 360;
+
+    private Context mContext;
+
+    private int mWidth;
+
+    private Bitmap mBitmap;
+
+    private Canvas mCanvas;
+
+    private final String[] mProducts = new String[NB_OF_ROWS];
+    private final String[] mAnnotations = new String[NB_OF_ROWS];
+    private final String[] mPriorityMarks = new String[NB_OF_ROWS];
+
+    @Before
+    public void setUp() {
+        mContext = new ContextThemeWrapper(InstrumentationRegistry.getTargetContext(), R.style.AppTheme);
+        mWidth = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, WIDTH_DP,
+                mContext.getResources().getDisplayMetrics());
+        mBitmap = Bitmap.createBitmap(mWidth, mWidth, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+
+        String highPriorityMark = mContext.getString(R.string.list_high_priority_mark);
+        String lowPriorityMark = mContext.getString(R.string.list_low_priority_mark);
+        for (int i = 0; i < NB_OF_ROWS; i++) {
+            // Some products long enough to wrap, a third of them annotated, a few with a mark
+            mProducts[i] = i % 10 == 0 ? "Product with a rather long name to be wrapped " + i : "Product " + i;
+            mAnnotations[i] = i % 3 == 0 ? "Annotation " + i : null;
+            mPriorityMarks[i] = i % 7 == 0 ? highPriorityMark : i % 11 == 0 ? lowPriorityMark : null;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mBitmap.recycle();
+    }
+
+    @Test
+    public void bindMeasureDraw_textViewHierarchy() {
+        final TextViewRow row = new TextViewRow(mContext);
+        run("TextView hierarchy", row.root, new Binder() {
+            @Override
+            public void bind(int i) {
+                row.bind(mProducts[i], mAnnotations[i], mPriorityMarks[i]);
+            }
+        });
+    }
+
+    @Test
+    public void bindMeasureDraw_listItemView() {
+        View root = LayoutInflater.from(mContext).inflate(R.layout.item_list_normal, new FrameLayout(mContext), false);
+        final ListItemView view = root.findViewById(R.id.item_list_layout);
+        view.setLayoutCache(new ListItemView.LayoutCache());
+        run("ListItemView", root, new Binder() {
+            @Override
+            public void bind(int i) {
+                view.bind(i, mProducts[i], mAnnotations[i], mPriorityMarks[i], null);
+            }
+        });
+    }
+
+    private void run(String name, View root, Binder binder) {
+        long[] firstPass = new long[NB_OF_ROWS];
+        long[] nextPasses = new long[NB_OF_ROWS * (NB_OF_PASSES - 1)];
+        int widthMeasureSpec = View.MeasureSpec.makeMeasureSpec(mWidth, View.MeasureSpec.EXACTLY);
+        int heightMeasureSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+
+        for (int pass = 0; pass < NB_OF_PASSES; pass++) {
+            for (int i = 0; i < NB_OF_ROWS; i++) {
+                long start = System.nanoTime();
+                binder.bind(i);
+                root.measure(widthMeasureSpec, heightMeasureSpec);
+                root.layout(0, 0, root.getMeasuredWidth(), root.getMeasuredHeight());
+                root.draw(mCanvas);
+                long duration = System.nanoTime() - start;
+                if (pass == 0) firstPass[i] = duration;
+                else nextPasses[(pass - 1) * NB_OF_ROWS + i] = duration;
+            }
+        }
+
+        log(name + ", first pass", firstPass);
+        log(name + ", next passes", nextPasses);
+    }
+
+    private static void log(String name, long[] latencies) {
+        long[] sorted = Arrays.copyOf(latencies, latencies.length);
+        Arrays.sort(sorted);
+        Log.i(TAG, String.format("%s: %d rows, median %d us, p95 %d us, max %d us",
+                name,
+                sorted.length,
+                percentile(sorted, 50) / 1000,
+                percentile(sorted, 95) / 1000,
+                percentile(sorted, 100) / 1000));
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    /* Binds the row at the given index to the measured view */
+    private interface Binder {
+        void bind(int i);
+    }
+
+    /* The hierarchy of the rows of the list before ListItemView, bound as ListAdapter bound it */
+    private static final class TextViewRow {
+
+        final FrameLayout root;
+        final TextView product;
+        final TextView annotation;
+        final TextView priority;
+
+        TextViewRow(Context context) {
+            int padding = dp(context, 16);
+
+            root = new FrameLayout(context);
+            root.setBackgroundColor(Color.WHITE);
+            root.setLayoutParams(new ViewGroup.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+
+            LinearLayout row = new LinearLayout(context);
+            row.setOrientation(LinearLayout.HORIZONTAL);
+            row.setPadding(padding, padding, padding, padding);
+            root.addView(row, new FrameLayout.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+
+            LinearLayout column = new LinearLayout(context);
+            column.setOrientation(LinearLayout.VERTICAL);
+            row.addView(column, new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT, 1));
+
+            product = new TextView(context);
+            product.setTextAppearance(context, android.R.style.TextAppearance);
+            product.setTextSize(TypedValue.COMPLEX_UNIT_PX, context.getResources().getDimension(R.dimen.text_list_product_big));
+            LinearLayout.LayoutParams productParams = new LinearLayout.LayoutParams(
+                    ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+            productParams.gravity = Gravity.CENTER_VERTICAL;
+            column.addView(product, productParams);
+
+            annotation = new TextView(context);
+            annotation.setTextAppearance(context, android.R.style.TextAppearance_Small);
+            annotation.setTextSize(TypedValue.COMPLEX_UNIT_PX, context.getResources().getDimension(R.dimen.text_list_annotation_big));
+            column.addView(annotation, new LinearLayout.LayoutParams(
+                    ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+
+            priority = new TextView(context);
+            priority.setTextAppearance(context, android.R.style.TextAppearance);
+            priority.setTextSize(TypedValue.COMPLEX_UNIT_PX, context.getResources().getDimension(R.dimen.text_list_product_big));
+            priority.setGravity(Gravity.END);
+            LinearLayout.LayoutParams priorityParams = new LinearLayout.LayoutParams(
+                    ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+            priorityParams.gravity = Gravity.CENTER_VERTICAL;
+            priorityParams.leftMargin = padding;
+            priorityParams.rightMargin = padding;
+            row.addView(priority, priorityParams);
+        }
+
+        void bind(String productText, String annotationText, String priorityMark) {
+            annotation.setVisibility(View.GONE);
+            if (annotationText != null && !annotationText.equals("")) {
+                annotation.setVisibility(View.VISIBLE);
+                annotation.setText(annotationText);
+            }
+            product.setText(productText);
+            if (priorityMark != null) {
+                priority.setText(priorityMark);
+                priority.setVisibility(View.VISIBLE);
+            } else {
+                priority.setVisibility(View.INVISIBLE);
+            }
+        }
+
+        private static int dp(Context context, int dp) {
+            return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp,
+                    context.getResources().getDisplayMetrics());
+        }
+    }
+}
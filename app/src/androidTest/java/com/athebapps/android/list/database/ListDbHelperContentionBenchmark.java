@@ -0,0 +1,114 @@
+package com.athebapps.android.list.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Measures how long reads of the list table take while another thread keeps writing to it, which is
+ * what happens when the list loader requeries while DataExecutor inserts products.
+ * The same scenario is run with and without write-ahead logging and the latencies are logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ListDbHelperContentionBenchmark {
+
+    private static final String TAG = ListDbHelperContentionBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "contention_benchmark.db";
+
+    /* Number of rows in the list table before the benchmark starts */
+    private static final int NB_OF_INITIAL_ROWS = 500;
+
+    /* Number of rows inserted, each in its own transaction, by the writer thread */
+    private static final int NB_OF_WRITES = 300;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void readsDuringWrites_withoutWriteAheadLogging() throws InterruptedException {
+        run(false);
+    }
+
+    @Test
+    public void readsDuringWrites_withWriteAheadLogging() throws InterruptedException {
+        run(true);
+    }
+
+    private void run(boolean writeAheadLogging) throws InterruptedException {
+        ListDbHelper helper = new ListDbHelper(mContext, DATABASE_NAME);
+        helper.setWriteAheadLoggingEnabled(writeAheadLogging);
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        insertRows(db, 0, NB_OF_INITIAL_ROWS);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < NB_OF_WRITES; i++) {
+                    insertRows(db, NB_OF_INITIAL_ROWS + i, 1);
+                }
+            }
+        });
+        writer.start();
+
+        // Read the whole table, the way the list loader does, until the writer is done
+        long[] latencies = new long[NB_OF_WRITES * 10];
+        int nbOfReads = 0;
+        while (writer.isAlive() && nbOfReads < latencies.length) {
+            long start = System.nanoTime();
+            Cursor cursor = helper.getReadableDatabase().query(ListContract.ListEntry.TABLE_NAME,
+                    null, null, null, null, null, ListContract.ListEntry.COLUMN_PRIORITY + " ASC");
+            cursor.moveToLast();
+            cursor.close();
+            latencies[nbOfReads++] = System.nanoTime() - start;
+        }
+        writer.join();
+        helper.close();
+
+        long[] sorted = Arrays.copyOf(latencies, nbOfReads);
+        Arrays.sort(sorted);
+        Log.i(TAG, String.format("WAL %s: %d reads, median %d us, p95 %d us, max %d us",
+                writeAheadLogging ? "on" : "off",
+                nbOfReads,
+                percentile(sorted, 50) / 1000,
+                percentile(sorted, 95) / 1000,
+                percentile(sorted, 100) / 1000));
+    }
+
+    /* Inserts nb rows in the list table, each one in its own transaction. */
+    private static void insertRows(SQLiteDatabase db, int first, int nb) {
+        for (int i = first; i < first + nb; i++) {
+            ContentValues values = new ContentValues();
+            values.put(ListContract.ListEntry.COLUMN_PRODUCT, "Product " + i);
+            values.put(ListContract.ListEntry.COLUMN_PRIORITY, ListContract.ListEntry.DEFAULT_PRIORITY_PRODUCT);
+            db.insert(ListContract.ListEntry.TABLE_NAME, null, values);
+        }
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+}
@@ -1,19 +1,14 @@
 package com.athebapps.android.list;
 
-import android.annotation.SuppressLint;
 import android.app.AlertDialog;
-import android.app.LoaderManager;
-import android.content.CursorLoader;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.Loader;
 import android.content.SharedPreferences;
-import android.database.Cursor;
-import android.os.AsyncTask;
+import android.graphics.Typeface;
 import android.os.Bundle;
 import android.support.design.widget.FloatingActionButton;
 import android.support.design.widget.Snackbar;
-import android.support.v4.content.res.ResourcesCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.preference.PreferenceManager;
 import android.support.v7.widget.RecyclerView;
@@ -23,13 +18,13 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.ProgressBar;
 
-import com.athebapps.android.list.database.ListContract;
+import com.athebapps.android.list.database.DataExecutor;
+import com.athebapps.android.list.utils.AppSettings;
 import com.athebapps.android.list.utils.DatabaseUtils;
+import com.athebapps.android.list.utils.FontCache;
 import com.athebapps.android.list.utils.PreferenceUtils;
 import com.athebapps.android.list.utils.Utils;
 
-import java.util.HashMap;
-
 
 /**
  * HistoryActivity displays the products in the history table, which stores products that have
@@ -39,12 +34,11 @@ import java.util.HashMap;
  *  - select one or several items to remove from the history table
  */
 public class HistoryActivity extends AppCompatActivity
-        implements LoaderManager.LoaderCallbacks<Cursor>,
-        HistoryAdapter.HistoryAdapterOnClickHandler,
-        SharedPreferences.OnSharedPreferenceChangeListener {
+        implements HistoryAdapter.HistoryAdapterOnClickHandler,
+        AppSettings.OnSettingsChangedListener {
 
-    /* Helps the LoaderManager identify the loader for the history */
-    private static final int HISTORY_LOADER_ID = 1000;
+    /* Key of the ids of the selected elements in the saved instance state */
+    private static final String SELECTED_KEY = "selected";
 
     /* A Floating Action Button that appears when at least one element has been selected and that
      * is used to confirm the addition of the selected element(s) to the list */
@@ -70,9 +64,12 @@ public class HistoryActivity extends AppCompatActivity
     /* The Adapter that binds the data from the history table to the Recycler View */
     private HistoryAdapter mAdapter;
 
-    /* An HashMap is used to store (text, id) pairs of selected elements.
-     * id is used for deletion and text is used for insertion. */
-    private HashMap<String, String> selected;
+    /* The ids of the selected elements, used for both insertion and deletion. */
+    private HistorySelection selected;
+
+    /* Set when the activity is destroyed, after which the results of the writes it started are
+     * ignored: the writes themselves must complete, but its views and resources are gone */
+    private boolean mDestroyed;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -80,7 +77,7 @@ public class HistoryActivity extends AppCompatActivity
         setContentView(R.layout.activity_history);
 
         // Replace default ActionBar by Toolbar
-        Toolbar toolbar = findViewById(R.id.toolbar);
+        final Toolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
         // Add back button
@@ -89,17 +86,22 @@ public class HistoryActivity extends AppCompatActivity
         getSupportActionBar().setDisplayShowHomeEnabled(true);
 
         mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-        mSharedPreferences.registerOnSharedPreferenceChangeListener(this);
+        AppSettings.registerListener(this);
 
         setTitle(getString(R.string.history_title));
 
-        Utils.styleToolbar(toolbar, ResourcesCompat.getFont(this, R.font.montserrat_bold));
+        // The font is usually in memory, loaded by ListActivity or when the process started
+        FontCache.getInstance(this).load(FontCache.TOOLBAR_FONT_QUERY, new FontCache.Callback() {
+            @Override
+            public void onTypefaceLoaded(Typeface typeface) {
+                Utils.styleToolbar(toolbar, typeface);
+            }
+        });
 
         if (savedInstanceState != null)
-            //noinspection unchecked
-            selected = (HashMap<String, String >) savedInstanceState.getSerializable("selected");
+            selected = HistorySelection.fromArray(savedInstanceState.getLongArray(SELECTED_KEY));
         else
-            selected = new HashMap<>();
+            selected = new HistorySelection();
 
         mFab = findViewById(R.id.floatingActionButtonHistory);
         updateFabVisibility();
@@ -116,10 +118,29 @@ public class HistoryActivity extends AppCompatActivity
 
         // Set up the Recycler View with its Adapter
         mRecyclerView = findViewById(R.id.history_recycler_view);
-        mLayoutManager = PreferenceUtils.getHistoryLayoutManager(this, mSharedPreferences);
+        mLayoutManager = PreferenceUtils.getHistoryLayoutManager(this, AppSettings.get(this));
         mRecyclerView.setLayoutManager(mLayoutManager);
         mAdapter = new HistoryAdapter(this, selected, this);
         mRecyclerView.setAdapter(mAdapter);
+        // The adapter is loaded asynchronously, so the empty view is updated when its content changes
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                // The number of products has been loaded
+                mProgressBar.setVisibility(View.GONE);
+                updateEmptyViewVisibility();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyViewVisibility();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyViewVisibility();
+            }
+        });
 
         // By default, the empty view's visibility is set to 'gone'
         mEmptyView = findViewById(R.id.empty_view);
@@ -128,13 +149,16 @@ public class HistoryActivity extends AppCompatActivity
         mProgressBar = findViewById(R.id.progress_bar);
         mProgressBar.setVisibility(View.VISIBLE);
 
-        getLoaderManager().initLoader(HISTORY_LOADER_ID, null, this);
+        // Start loading the history, page by page
+        mAdapter.startLoading();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        mSharedPreferences.unregisterOnSharedPreferenceChangeListener(this);
+        mDestroyed = true;
+        mAdapter.stopLoading();
+        AppSettings.unregisterListener(this);
     }
 
     @Override
@@ -147,8 +171,8 @@ public class HistoryActivity extends AppCompatActivity
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
 
-        // Save the map of selected elements
-        outState.putSerializable("selected", selected);
+        // Save the ids of selected elements
+        outState.putLongArray(SELECTED_KEY, selected.toArray());
     }
 
     @Override
@@ -157,12 +181,11 @@ public class HistoryActivity extends AppCompatActivity
 
         // Only show the menu item for deletion if at least one element is selected
         MenuItem trash = menu.findItem(R.id.action_delete);
-        if (selected != null) trash.setVisible(!selected.isEmpty());
-        else trash.setVisible(false);
+        trash.setVisible(!selected.isEmpty());
 
         MenuItem compact_layout = menu.findItem(R.id.action_compact_layout);
         MenuItem normal_layout = menu.findItem(R.id.action_normal_layout);
-        if (mSharedPreferences.getBoolean(getString(R.string.pref_history_compact_layout_key), getResources().getBoolean(R.bool.history_layout_compact_default))) {
+        if (AppSettings.get(this).isHistoryCompactLayout()) {
             compact_layout.setVisible(false);
             normal_layout.setVisible(true);
         } else {
@@ -181,15 +204,11 @@ public class HistoryActivity extends AppCompatActivity
                 deleteSelectedProducts();
                 return true;
             case R.id.action_compact_layout:
-                SharedPreferences.Editor editor = mSharedPreferences.edit();
-                editor.putBoolean(getString(R.string.pref_history_compact_layout_key), true);
-                editor.apply();
+                PreferenceUtils.setHistoryCompactLayout(this, mSharedPreferences, true);
                 invalidateOptionsMenu();
                 return true;
             case R.id.action_normal_layout:
-                SharedPreferences.Editor editor2 = mSharedPreferences.edit();
-                editor2.putBoolean(getString(R.string.pref_history_compact_layout_key), false);
-                editor2.apply();
+                PreferenceUtils.setHistoryCompactLayout(this, mSharedPreferences, false);
                 invalidateOptionsMenu();
                 return true;
             case android.R.id.home:
@@ -200,39 +219,6 @@ public class HistoryActivity extends AppCompatActivity
         }
     }
 
-    @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle bundle) {
-        switch (id) {
-            case HISTORY_LOADER_ID :
-                String order = ListContract.HistoryEntry.COLUMN_PRODUCT + " COLLATE LOCALIZED ASC";
-                return new CursorLoader(
-                        this,    // Parent activity context
-                        ListContract.HistoryEntry.CONTENT_URI,    // Table to query
-                        null,    // Projection to return
-                        null,    // No selection clause
-                        null,    // No selection arguments
-                        order    // Default sort order
-                );
-            default:
-                // An invalid id was passed in
-                return null;
-        }
-    }
-
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
-        mProgressBar.setVisibility(View.GONE);
-        mAdapter.swapCursor(cursor);
-        updateEmptyViewVisibility();
-    }
-
-    @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        mProgressBar.setVisibility(View.VISIBLE);
-        mAdapter.swapCursor(null);
-        updateEmptyViewVisibility();
-    }
-
     @Override
     public void onClick() {
         updateFabVisibility();
@@ -240,9 +226,9 @@ public class HistoryActivity extends AppCompatActivity
     }
 
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String s) {
-        if (s.equals(getString(R.string.pref_history_compact_layout_key))) {
-            mLayoutManager = PreferenceUtils.getHistoryLayoutManager(this, mSharedPreferences);
+    public void onSettingsChanged(AppSettings previous, AppSettings current) {
+        if (previous.isHistoryCompactLayout() != current.isHistoryCompactLayout()) {
+            mLayoutManager = PreferenceUtils.getHistoryLayoutManager(this, current);
             mRecyclerView.setLayoutManager(mLayoutManager);
             mAdapter.reloadLayout();
         }
@@ -253,26 +239,28 @@ public class HistoryActivity extends AppCompatActivity
         new AlertDialog.Builder(HistoryActivity.this)
                 .setMessage(getResources().getQuantityString(R.plurals.history_delete_selection_title, selected.size()))
                 .setPositiveButton(android.R.string.yes, new DialogInterface.OnClickListener() {
-                    @SuppressLint("StaticFieldLeak")
                     @Override
                     public void onClick(DialogInterface dialogInterface, int i) {
-                        // We use an AsyncTask here to perform deletions on a background thread.
-                        new AsyncTask<Void, Void, Integer>() {
-                            @Override
-                            protected Integer doInBackground(Void... voids) {
-                                return DatabaseUtils.deleteProductsFromHistoryTable(HistoryActivity.this, selected);
-                            }
-
-                            @Override
-                            protected void onPostExecute(Integer integer) {
-                                super.onPostExecute(integer);
-                                showMessage(getResources().getQuantityString(R.plurals.history_products_deleted_message, integer, integer));
-                                selected.clear();
-                                updateFabVisibility();
-                                mAdapter.notifyDataSetChanged();
-                                invalidateOptionsMenu();
-                            }
-                        }.execute();
+                        final long[] ids = selected.toArray();
+                        final Context context = getApplicationContext();
+                        // Deletions are performed on the writer thread of DataExecutor
+                        DataExecutor.getInstance().startWrite(DataExecutor.DELETION_HISTORY, DataExecutor.PRIORITY_UI,
+                                new DataExecutor.Operation<Integer>() {
+                                    @Override
+                                    public Integer run() {
+                                        return DatabaseUtils.deleteProductsFromHistoryTable(context, ids);
+                                    }
+                                }, new DataExecutor.Callback<Integer>() {
+                                    @Override
+                                    public void onComplete(int token, Integer integer) {
+                                        if (mDestroyed) return;
+                                        showMessage(getResources().getQuantityString(R.plurals.history_products_deleted_message, integer, integer));
+                                        selected.clear();
+                                        updateFabVisibility();
+                                        mAdapter.notifyDataSetChanged();
+                                        invalidateOptionsMenu();
+                                    }
+                                });
                     }
                 })
                 .setNegativeButton(android.R.string.no, null)
@@ -282,7 +270,7 @@ public class HistoryActivity extends AppCompatActivity
     /* Shows a dialog that gives the choice to insert selected elements to the list or
      * to discard the selection. Used when leaving the activity. */
     private void showConfirmationDialog() {
-        if (selected != null && !selected.isEmpty()) {
+        if (!selected.isEmpty()) {
             new AlertDialog.Builder(HistoryActivity.this)
                     .setMessage(getResources().getQuantityString(R.plurals.history_add_selected_products, selected.size()))
                     .setPositiveButton(getString(R.string.history_confirm_yes), new DialogInterface.OnClickListener() {
@@ -305,18 +293,20 @@ public class HistoryActivity extends AppCompatActivity
     }
 
     /* Inserts selected products to the list table and sets the result of the activity. */
-    @SuppressLint("StaticFieldLeak")
     private void addSelectedProducts() {
-        // We use an AsyncTask in order to perform insertions on a background thread
-        new AsyncTask<Void, Void, Integer>() {
+        final long[] ids = selected.toArray();
+        final Context context = getApplicationContext();
+        // Insertions are performed on the writer thread of DataExecutor
+        DataExecutor.getInstance().startWrite(DataExecutor.INSERTION_HISTORY_TO_LIST, DataExecutor.PRIORITY_UI,
+                new DataExecutor.Operation<Integer>() {
             @Override
-            protected Integer doInBackground(Void... voids) {
-                return DatabaseUtils.insertProductsIntoListTable(HistoryActivity.this, selected);
+            public Integer run() {
+                return DatabaseUtils.insertProductsIntoListTable(context, ids);
             }
-
+        }, new DataExecutor.Callback<Integer>() {
             @Override
-            protected void onPostExecute(Integer integer) {
-                super.onPostExecute(integer);
+            public void onComplete(int token, Integer integer) {
+                if (mDestroyed) return;
                 Intent intent = new Intent();
                 if (integer == 0)
                     intent.putExtra(getString(R.string.history_message_to_list),
@@ -327,7 +317,7 @@ public class HistoryActivity extends AppCompatActivity
                 setResult(RESULT_OK, intent);
                 finish();
             }
-        }.execute();
+        });
     }
 
     /* Updates the visibility of the Floating Action Button.
@@ -1,10 +1,7 @@
 package com.athebapps.android.list;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.database.Cursor;
 import android.support.annotation.NonNull;
-import android.support.v7.preference.PreferenceManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -12,15 +9,15 @@ import android.view.ViewGroup;
 import android.widget.CheckBox;
 import android.widget.CompoundButton;
 
-import com.athebapps.android.list.database.ListContract;
-
-import java.util.HashMap;
-
+import com.athebapps.android.list.utils.AppSettings;
 
 /**
  * Adapter class to manage display of items in the recycler view for the history.
+ * Products are loaded by pages as they are displayed, see HistoryPager, which notifies the rows
+ * changed by a modification of the history one by one.
  */
-class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHolder> {
+class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHolder>
+        implements HistoryPager.Callback {
 
     /** Identifies a normal layout */
     private static final int NORMAL_LAYOUT = 1;
@@ -28,44 +25,41 @@ class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHolder> {
     /* Identifies a compact layout */
     private static final int COMPACT_LAYOUT = 2;
 
+    /* Payload of the change of the positions of a loaded page, so that their ViewHolders are
+     * rebound in place instead of being animated */
+    private static final Object PAYLOAD_PAGE_LOADED = new Object();
+
     /* Context object needed for using PreferenceUtils methods as well as
-     * getting a reference to SharedPreferences */
+     * reading the settings */
     final private Context mContext;
 
-    /* SharedPreferences object for using PreferenceUtils methods that get Preferences
-     * for layout */
-    final private SharedPreferences mSharedPreferences;
     /* Reference to an implementation of the interface that handles click on a ViewHolder */
     final private HistoryAdapterOnClickHandler mClickHandler;
-    /* A structure that stores the (name , id) pair of the products that are selected. */
-    private final HashMap<String, String> selected;
+    /* The _IDs of the products that are selected. */
+    private final HistorySelection mSelection;
     /* Type of Layout for the RecyclerView. Used to adjust the layout of a ViewHolder.
      * Possible values: PreferenceUtils.NORMAL_LAYOUT_ITEM or PreferenceUtils.COMPACT_LAYOUT_ITEM */
     private int mCurrentLayout;
-    /* The Cursor that references the actual data that populates the RecyclerView.
-     * Can be null before data has been loaded. */
-    private Cursor mCursor;
+    /* Loads the products that populate the RecyclerView, by pages */
+    private final HistoryPager mPager;
 
     /** @param context  needed for PreferenceUtils methods.
      *  @param clickHandler used to interact with History activity. */
-    HistoryAdapter(Context context, HashMap<String, String> selectedProducts, HistoryAdapterOnClickHandler clickHandler) {
+    HistoryAdapter(Context context, HistorySelection selection, HistoryAdapterOnClickHandler clickHandler) {
 
         mContext = context;
-        mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
 
-        boolean isCompactLayout = mSharedPreferences.getBoolean(
-                mContext.getString(R.string.pref_history_compact_layout_key), context.getResources().getBoolean(R.bool.history_layout_compact_default));
-        if (isCompactLayout)
+        if (AppSettings.get(context).isHistoryCompactLayout())
             mCurrentLayout = COMPACT_LAYOUT;
         else
             mCurrentLayout = NORMAL_LAYOUT;
 
-        selected = selectedProducts;
+        mSelection = selection;
 
         mClickHandler = clickHandler;
 
-        // Optimization
-        setHasStableIds(true);
+        mPager = new HistoryPager(context.getContentResolver(), this);
+        // No stable ids: the id of a position is only known once its page is loaded
     }
 
     @NonNull
@@ -87,28 +81,23 @@ class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHolder> {
     @Override
     public void onBindViewHolder(@NonNull HistoryAdapter.ViewHolder holder, int position) {
         // Gets element at 'position' and replaces the contents of the view with that element
-        if (mCursor.moveToPosition(position)) {
-            String s = mCursor.getString(mCursor.getColumnIndex(ListContract.HistoryEntry.COLUMN_PRODUCT));
-            holder.mCheckBox.setText(s);
-
-            holder.mCheckBox.setOnCheckedChangeListener(null);
-            holder.mCheckBox.setChecked(selected.containsKey(s));
-            final int thisPosition = position;
-            holder.mCheckBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
-                @Override
-                public void onCheckedChanged(CompoundButton compoundButton, boolean b) {
-                    mCursor.moveToPosition(thisPosition);
-                    String txt = mCursor.getString(mCursor.getColumnIndex(ListContract.HistoryEntry.COLUMN_PRODUCT));
-                    if (selected.containsKey(txt))
-                        selected.remove(txt);
-                    else {
-                        String id = mCursor.getString(mCursor.getColumnIndex(ListContract.HistoryEntry._ID));
-                        selected.put(txt, id);
-                    }
-                    mClickHandler.onClick();
-                }
-            });
+        mPager.loadAround(position);
+        String product = mPager.getProduct(position);
+        holder.mId = mPager.getId(position);
+
+        // The listener is detached while restoring the state of the recycled CheckBox
+        holder.mCheckBox.setOnCheckedChangeListener(null);
+        if (product == null) {
+            // Placeholder until the page of the product is loaded
+            holder.mCheckBox.setText("");
+            holder.mCheckBox.setChecked(false);
+            holder.mCheckBox.setEnabled(false);
+            return;
         }
+        holder.mCheckBox.setText(product);
+        holder.mCheckBox.setEnabled(true);
+        holder.mCheckBox.setChecked(mSelection.contains(holder.mId));
+        holder.mCheckBox.setOnCheckedChangeListener(holder);
     }
 
     @Override
@@ -118,27 +107,52 @@ class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHolder> {
 
     @Override
     public int getItemCount() {
-        if (null == mCursor) return 0;
-        return mCursor.getCount();
+        return mPager.size();
     }
 
     @Override
-    public long getItemId(int position) {
-        mCursor.moveToPosition(position);
-        return mCursor.getLong(mCursor.getColumnIndex(ListContract.HistoryEntry._ID));
+    public void onCountLoaded() {
+        notifyDataSetChanged();
     }
 
-    /** Updates the value of the cursor that points to data to be displayed in the RecyclerView */
-    void swapCursor(Cursor cursor) {
-        mCursor = cursor;
-        notifyDataSetChanged();
+    @Override
+    public void onPageLoaded(int positionStart, int itemCount) {
+        notifyItemRangeChanged(positionStart, itemCount, PAYLOAD_PAGE_LOADED);
+    }
+
+    @Override
+    public void onInserted(int position, int count) {
+        notifyItemRangeInserted(position, count);
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+        notifyItemRangeRemoved(position, count);
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+        notifyItemMoved(fromPosition, toPosition);
+    }
+
+    @Override
+    public void onChanged(int position, int count, Object payload) {
+        notifyItemRangeChanged(position, count, payload);
+    }
+
+    /** Starts loading the history, which is then reloaded whenever it is modified. */
+    void startLoading() {
+        mPager.start();
+    }
+
+    /** Stops loading the history. */
+    void stopLoading() {
+        mPager.stop();
     }
 
     /** Updates the layout of the RecyclerView to the most recent value from the user's preferences */
     void reloadLayout() {
-        boolean isCompactLayout = mSharedPreferences.getBoolean(
-                mContext.getString(R.string.pref_history_compact_layout_key), true);
-        if (isCompactLayout)
+        if (AppSettings.get(mContext).isHistoryCompactLayout())
             mCurrentLayout = COMPACT_LAYOUT;
         else
             mCurrentLayout = NORMAL_LAYOUT;
@@ -150,16 +164,26 @@ class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHolder> {
         void onClick();
     }
 
-    /** Our ViewHolder for Recycling purpose */
-    class ViewHolder extends RecyclerView.ViewHolder {
+    /** Our ViewHolder for Recycling purpose. It is also the listener of its CheckBox, so that no
+     *  listener is allocated when binding. */
+    class ViewHolder extends RecyclerView.ViewHolder implements CompoundButton.OnCheckedChangeListener {
 
         /* A Checkbox with a text corresponding to the name of a product */
         final CheckBox mCheckBox;
 
+        /* id in the table (_ID column) of the product displayed */
+        long mId;
+
         ViewHolder(final View itemView) {
             super(itemView);
             mCheckBox = itemView.findViewById(R.id.item_product);
         }
+
+        @Override
+        public void onCheckedChanged(CompoundButton compoundButton, boolean isChecked) {
+            mSelection.set(mId, isChecked);
+            mClickHandler.onClick();
+        }
     }
 }
 
@@ -0,0 +1,482 @@
+package com.athebapps.android.list;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+import android.util.SparseArray;
+
+import com.athebapps.android.list.database.DataExecutor;
+import com.athebapps.android.list.database.ListContract;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Loads the history table page by page, so that only a bounded number of products are held in
+ * memory whatever the size of the table, and no Cursor window has to be refilled while scrolling.
+ * The number of products is loaded first, so that the RecyclerView has its full size from the
+ * start and products that are not loaded yet are displayed as placeholders.
+ * Pages are loaded by the readers of DataExecutor when a position close to them is bound. A page next to
+ * a loaded page is queried from the sort key and _ID of the closest product of that page, which is
+ * a lookup of the index of the sort keys. Other pages, e.g. after a fast scroll, are queried by
+ * offset.
+ * When the history is modified, the loaded pages around the last bound position are queried again
+ * and compared with the previous ones by _ID, so that only the inserted, removed or changed rows
+ * are updated and the displayed rows do not turn back into placeholders.
+ * Must be used from the main thread.
+ */
+final class HistoryPager {
+
+    /** Number of products of a page */
+    static final int PAGE_SIZE = 50;
+
+    /** Maximum number of pages held in memory, the least recently used ones are dropped */
+    static final int MAX_PAGES = 8;
+
+    /* Number of products from the start or the end of a page at which the previous or the next
+     * page is loaded */
+    private static final int PREFETCH_DISTANCE = 20;
+
+    /* Columns of a page: the sort keys are needed to query the neighbouring pages */
+    private static final String[] PROJECTION = {
+            ListContract.HistoryEntry._ID,
+            ListContract.HistoryEntry.COLUMN_PRODUCT,
+            ListContract.HistoryEntry.COLUMN_SORT_KEY};
+
+    /* Order of the products, the _ID makes it total */
+    private static final String SORT_ORDER = ListContract.HistoryEntry.COLUMN_SORT_KEY + " ASC, "
+            + ListContract.HistoryEntry._ID + " ASC";
+
+    /* Reverse order, used to query the page preceding a loaded page */
+    private static final String REVERSE_SORT_ORDER = ListContract.HistoryEntry.COLUMN_SORT_KEY + " DESC, "
+            + ListContract.HistoryEntry._ID + " DESC";
+
+    /* Used to observe the history on the main thread */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final ContentResolver mResolver;
+
+    /* Notified when products are loaded */
+    private final Callback mCallback;
+
+    /* Reloads the history when it is modified */
+    private final ContentObserver mObserver = new ContentObserver(mMainHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            reload();
+        }
+    };
+
+    /* Loaded pages by index, in access order so that the least recently used page is dropped */
+    private final LinkedHashMap<Integer, Page> mPages = new LinkedHashMap<Integer, Page>(MAX_PAGES + 1, 1f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    /* Reads of the pages being loaded, by index */
+    private final SparseArray<DataExecutor.Handle> mLoadingPages = new SparseArray<>();
+
+    /* Read of the number of products and of the first page, null if it is not running */
+    private DataExecutor.Handle mReload;
+
+    /* Number of products in the history */
+    private int mCount;
+
+    /* Incremented by each reload, so that pages loaded before the history was modified are ignored */
+    private int mGeneration;
+
+    /** @param resolver used to query the history table
+     *  @param callback notified when products are loaded */
+    HistoryPager(ContentResolver resolver, Callback callback) {
+        mResolver = resolver;
+        mCallback = callback;
+    }
+
+    /** Loads the number of products and the first page, and reloads them whenever the history
+     *  is modified, until stop() is called. */
+    void start() {
+        mResolver.registerContentObserver(ListContract.HistoryEntry.CONTENT_URI, true, mObserver);
+        reload();
+    }
+
+    /** Stops loading, pages not loaded yet are cancelled and pages being loaded are ignored. */
+    void stop() {
+        mResolver.unregisterContentObserver(mObserver);
+        mGeneration++;
+        cancelReads();
+    }
+
+    /** @return the number of products in the history, loaded or not */
+    int size() {
+        return mCount;
+    }
+
+    /** @return the _ID of the product at the given position, RecyclerView.NO_ID if it is not loaded */
+    long getId(int position) {
+        Page page = mPages.get(position / PAGE_SIZE);
+        int index = position % PAGE_SIZE;
+        return page != null && index < page.ids.length ? page.ids[index] : RecyclerView.NO_ID;
+    }
+
+    /** @return the product at the given position, null if it is not loaded */
+    @Nullable
+    String getProduct(int position) {
+        Page page = mPages.get(position / PAGE_SIZE);
+        int index = position % PAGE_SIZE;
+        return page != null && index < page.products.length ? page.products[index] : null;
+    }
+
+    /** Loads the page of the given position if needed, as well as the previous or the next page
+     *  if the position is close to it. To be called when the position is bound. */
+    void loadAround(int position) {
+        int index = position / PAGE_SIZE;
+        load(index);
+        int positionInPage = position % PAGE_SIZE;
+        if (positionInPage >= PAGE_SIZE - PREFETCH_DISTANCE) load(index + 1);
+        else if (positionInPage < PREFETCH_DISTANCE) load(index - 1);
+    }
+
+    /** Loads the number of products again along with the loaded pages around the last bound
+     *  position, the first page if none is loaded. Called when the history is modified. */
+    void reload() {
+        final int generation = ++mGeneration;
+        cancelReads();
+        final int firstIndex;
+        final int nbOfPages;
+        if (mPages.isEmpty()) {
+            firstIndex = 0;
+            nbOfPages = 1;
+        } else {
+            // The pages next to the most recently used one, other pages are dropped
+            int last = 0;
+            for (Iterator<Integer> i = mPages.keySet().iterator(); i.hasNext(); ) last = i.next();
+            int first = last;
+            while (mPages.containsKey(first - 1)) first--;
+            while (mPages.containsKey(last + 1)) last++;
+            firstIndex = first;
+            nbOfPages = last - first + 1;
+        }
+        mReload = DataExecutor.getInstance().startRead(DataExecutor.QUERY_HISTORY_PAGE, DataExecutor.PRIORITY_UI,
+                new DataExecutor.Operation<Reload>() {
+                    @Override
+                    public Reload run() {
+                        int count = queryCount();
+                        Page[] pages = new Page[nbOfPages];
+                        for (int i = 0; i < nbOfPages && (firstIndex + i) * PAGE_SIZE < count; i++) {
+                            pages[i] = queryPage(ListContract.HistoryEntry.buildPageUri(PAGE_SIZE,
+                                    (firstIndex + i) * PAGE_SIZE), null, SORT_ORDER, false);
+                        }
+                        return new Reload(count, firstIndex, pages);
+                    }
+                }, new DataExecutor.Callback<Reload>() {
+                    @Override
+                    public void onComplete(int token, Reload reload) {
+                        if (generation != mGeneration) return;
+                        mReload = null;
+                        onReloaded(reload);
+                    }
+                });
+    }
+
+    /* Replaces the pages with the reloaded ones, and notifies the callback of the differences
+     * between the products of the previous and of the reloaded pages. The products outside of
+     * these pages are not loaded: the change of the number of products is applied at the end of
+     * the history. If the previous pages are not all loaded any more, or if the number of products
+     * changed by more than a page, all the positions are notified as changed instead. */
+    private void onReloaded(Reload reload) {
+        int oldCount = mCount;
+        Window oldWindow = new Window();
+        boolean complete = true;
+        for (int i = 0; i < reload.pages.length && (reload.firstIndex + i) * PAGE_SIZE < oldCount; i++) {
+            Page page = mPages.get(reload.firstIndex + i);
+            if (page == null) complete = false;
+            else oldWindow.add(page);
+        }
+        Window newWindow = new Window();
+        mPages.clear();
+        for (int i = 0; i < reload.pages.length; i++) {
+            Page page = reload.pages[i];
+            if (page == null || page.ids.length == 0) break;
+            mPages.put(reload.firstIndex + i, page);
+            newWindow.add(page);
+        }
+        mCount = reload.count;
+
+        int countChange = reload.count - oldCount;
+        if (!complete || Math.abs(countChange) > PAGE_SIZE) {
+            mCallback.onCountLoaded();
+            return;
+        }
+        DiffUtil.calculateDiff(new WindowDiffCallback(oldWindow, newWindow), false)
+                .dispatchUpdatesTo(new OffsetListUpdateCallback(mCallback, reload.firstIndex * PAGE_SIZE));
+        // The products that entered or left the history outside of the pages
+        int remainingChange = countChange - (newWindow.size() - oldWindow.size());
+        int count = reload.count - remainingChange;
+        if (remainingChange > 0) mCallback.onInserted(count, remainingChange);
+        else if (remainingChange < 0) mCallback.onRemoved(count + remainingChange, -remainingChange);
+    }
+
+    /* Loads the page with the given index unless it is loaded or being loaded. */
+    private void load(final int index) {
+        if (index < 0 || index * PAGE_SIZE >= mCount) return;
+        if (mPages.containsKey(index) || mLoadingPages.get(index) != null) return;
+
+        final Uri uri;
+        final String selection;
+        final String sortOrder;
+        final boolean reverse;
+        Page previous = mPages.get(index - 1);
+        Page next = mPages.get(index + 1);
+        if (previous != null) {
+            // The products following the last one of the previous page
+            uri = ListContract.HistoryEntry.buildPageUri(PAGE_SIZE, 0);
+            selection = buildKeySelection(previous.lastKey, previous.ids[previous.ids.length - 1], ">");
+            sortOrder = SORT_ORDER;
+            reverse = false;
+        } else if (next != null) {
+            // The products preceding the first one of the next page, queried in reverse order
+            uri = ListContract.HistoryEntry.buildPageUri(PAGE_SIZE, 0);
+            selection = buildKeySelection(next.firstKey, next.ids[0], "<");
+            sortOrder = REVERSE_SORT_ORDER;
+            reverse = true;
+        } else {
+            uri = ListContract.HistoryEntry.buildPageUri(PAGE_SIZE, index * PAGE_SIZE);
+            selection = null;
+            sortOrder = SORT_ORDER;
+            reverse = false;
+        }
+
+        final int generation = mGeneration;
+        DataExecutor.Handle read = DataExecutor.getInstance().startRead(DataExecutor.QUERY_HISTORY_PAGE, DataExecutor.PRIORITY_UI,
+                new DataExecutor.Operation<Page>() {
+                    @Override
+                    public Page run() {
+                        return queryPage(uri, selection, sortOrder, reverse);
+                    }
+                }, new DataExecutor.Callback<Page>() {
+                    @Override
+                    public void onComplete(int token, Page page) {
+                        if (generation != mGeneration) return;
+                        mLoadingPages.delete(index);
+                        if (page == null || page.ids.length == 0) return;
+                        mPages.put(index, page);
+                        mCallback.onPageLoaded(index * PAGE_SIZE,
+                                Math.min(page.ids.length, mCount - index * PAGE_SIZE));
+                    }
+                });
+        mLoadingPages.put(index, read);
+    }
+
+    /* Cancels the reads started by this pager, and only them */
+    private void cancelReads() {
+        if (mReload != null) {
+            mReload.cancel();
+            mReload = null;
+        }
+        for (int i = 0; i < mLoadingPages.size(); i++) mLoadingPages.valueAt(i).cancel();
+        mLoadingPages.clear();
+    }
+
+    /* Returns the number of products in the history. Called on the background thread. */
+    private int queryCount() {
+        Cursor cursor = mResolver.query(ListContract.HistoryEntry.CONTENT_URI,
+                new String[] {"COUNT(*)"}, null, null, null);
+        if (cursor == null) return 0;
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /* Queries a page. If reverse is true, the products are queried in reverse order and stored in
+     * the order of the history. Called on the background thread. */
+    @Nullable
+    private Page queryPage(Uri uri, @Nullable String selection, String sortOrder, boolean reverse) {
+        Cursor cursor = mResolver.query(uri, PROJECTION, selection, null, sortOrder);
+        if (cursor == null) return null;
+        try {
+            int count = cursor.getCount();
+            long[] ids = new long[count];
+            String[] products = new String[count];
+            byte[] firstKey = null;
+            byte[] lastKey = null;
+            for (int i = 0; i < count && cursor.moveToNext(); i++) {
+                int index = reverse ? count - 1 - i : i;
+                ids[index] = cursor.getLong(0);
+                products[index] = cursor.getString(1);
+                if (index == 0) firstKey = cursor.getBlob(2);
+                if (index == count - 1) lastKey = cursor.getBlob(2);
+            }
+            return new Page(ids, products, firstKey, lastKey);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /* Builds the selection of the products after (">") or before ("<") the product with the given
+     * sort key and _ID. The key is written as a blob literal, as selection arguments can only be
+     * strings. The first term is a range of the index of the sort keys. */
+    private static String buildKeySelection(@Nullable byte[] key, long id, String operator) {
+        if (key == null) {
+            // Should not happen, all the products have a sort key
+            return ListContract.HistoryEntry._ID + " " + operator + " " + id;
+        }
+        String literal = toBlobLiteral(key);
+        return ListContract.HistoryEntry.COLUMN_SORT_KEY + " " + operator + "= " + literal
+                + " AND (" + ListContract.HistoryEntry.COLUMN_SORT_KEY + " " + operator + " " + literal
+                + " OR " + ListContract.HistoryEntry._ID + " " + operator + " " + id + ")";
+    }
+
+    /* Returns the SQL literal of a blob, such as X'0A1B' */
+    private static String toBlobLiteral(byte[] bytes) {
+        char[] digits = "0123456789ABCDEF".toCharArray();
+        StringBuilder literal = new StringBuilder(bytes.length * 2 + 3).append("X'");
+        for (byte b : bytes) {
+            literal.append(digits[(b >> 4) & 0xF]).append(digits[b & 0xF]);
+        }
+        return literal.append('\'').toString();
+    }
+
+    /** Notified on the main thread when products are loaded. The rows inserted, removed, moved
+     *  or changed by a modification of the history are notified as a ListUpdateCallback. */
+    interface Callback extends ListUpdateCallback {
+        /** The number of products has been loaded or has changed, any position may have changed */
+        void onCountLoaded();
+
+        /** The products of a range of positions have been loaded */
+        void onPageLoaded(int positionStart, int itemCount);
+    }
+
+    /* Products of a page, in the order of the history */
+    private static class Page {
+
+        final long[] ids;
+        final String[] products;
+
+        /* Sort keys of the first and the last products of the page */
+        final byte[] firstKey;
+        final byte[] lastKey;
+
+        Page(long[] ids, String[] products, byte[] firstKey, byte[] lastKey) {
+            this.ids = ids;
+            this.products = products;
+            this.firstKey = firstKey;
+            this.lastKey = lastKey;
+        }
+    }
+
+    /* Number of products in the history and pages from firstIndex, loaded together by reload().
+     * Pages beyond the end of the history are null. */
+    private static class Reload {
+
+        final int count;
+        final int firstIndex;
+        final Page[] pages;
+
+        Reload(int count, int firstIndex, Page[] pages) {
+            this.count = count;
+            this.firstIndex = firstIndex;
+            this.pages = pages;
+        }
+    }
+
+    /* Products of consecutive pages */
+    private static class Window {
+
+        private long[] mIds = new long[0];
+        private String[] mProducts = new String[0];
+
+        void add(Page page) {
+            int size = mIds.length;
+            long[] ids = new long[size + page.ids.length];
+            String[] products = new String[ids.length];
+            System.arraycopy(mIds, 0, ids, 0, size);
+            System.arraycopy(page.ids, 0, ids, size, page.ids.length);
+            System.arraycopy(mProducts, 0, products, 0, size);
+            System.arraycopy(page.products, 0, products, size, page.products.length);
+            mIds = ids;
+            mProducts = products;
+        }
+
+        int size() {
+            return mIds.length;
+        }
+    }
+
+    /* Compares the products of two windows: the same items if they have the same _ID */
+    private static class WindowDiffCallback extends DiffUtil.Callback {
+
+        private final Window mOld;
+        private final Window mNew;
+
+        WindowDiffCallback(Window oldWindow, Window newWindow) {
+            mOld = oldWindow;
+            mNew = newWindow;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.mIds[oldItemPosition] == mNew.mIds[newItemPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return TextUtils.equals(mOld.mProducts[oldItemPosition], mNew.mProducts[newItemPosition]);
+        }
+    }
+
+    /* Shifts the positions of the updates of a window by the position of its first product */
+    private static class OffsetListUpdateCallback implements ListUpdateCallback {
+
+        private final ListUpdateCallback mCallback;
+        private final int mOffset;
+
+        OffsetListUpdateCallback(ListUpdateCallback callback, int offset) {
+            mCallback = callback;
+            mOffset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mCallback.onInserted(mOffset + position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mCallback.onRemoved(mOffset + position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mCallback.onMoved(mOffset + fromPosition, mOffset + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mCallback.onChanged(mOffset + position, count, payload);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.athebapps.android.list;
+
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+
+
+/**
+ * Set of the _IDs of the products selected in the history.
+ * Ids are kept sorted in a primitive array, so that checking whether a product is selected while
+ * binding it is a binary search without boxing, and the selection can be saved in a Bundle as a
+ * long array instead of a serialized map.
+ */
+final class HistorySelection {
+
+    /* Selected ids, sorted, only the first mSize ones are valid */
+    private long[] mIds;
+
+    /* Number of selected ids */
+    private int mSize;
+
+    HistorySelection() {
+        mIds = new long[16];
+    }
+
+    /** @param ids ids previously returned by toArray(), can be null
+     *  @return a selection containing the given ids */
+    static HistorySelection fromArray(@Nullable long[] ids) {
+        HistorySelection selection = new HistorySelection();
+        if (ids != null) {
+            for (long id : ids) selection.set(id, true);
+        }
+        return selection;
+    }
+
+    /** @return true if the product with the given _ID is selected */
+    boolean contains(long id) {
+        return Arrays.binarySearch(mIds, 0, mSize, id) >= 0;
+    }
+
+    /** Selects or unselects the product with the given _ID */
+    void set(long id, boolean selected) {
+        int index = Arrays.binarySearch(mIds, 0, mSize, id);
+        if (selected && index < 0) {
+            index = -index - 1;
+            if (mSize == mIds.length) mIds = Arrays.copyOf(mIds, mSize * 2);
+            System.arraycopy(mIds, index, mIds, index + 1, mSize - index);
+            mIds[index] = id;
+            mSize++;
+        } else if (!selected && index >= 0) {
+            System.arraycopy(mIds, index + 1, mIds, index, mSize - index - 1);
+            mSize--;
+        }
+    }
+
+    /** @return the number of selected products */
+    int size() {
+        return mSize;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    void clear() {
+        mSize = 0;
+    }
+
+    /** @return a copy of the selected ids, sorted */
+    long[] toArray() {
+        return Arrays.copyOf(mIds, mSize);
+    }
+}
@@ -7,9 +7,8 @@ import android.app.DatePickerDialog;
 import android.app.LoaderManager;
 import android.app.PendingIntent;
 import android.app.TimePickerDialog;
-import android.content.ContentValues;
+import android.content.ContentUris;
 import android.content.Context;
-import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
@@ -18,16 +17,14 @@ import android.content.res.ColorStateList;
 import android.database.Cursor;
 import android.graphics.Typeface;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.design.widget.FloatingActionButton;
 import android.support.design.widget.Snackbar;
 import android.support.v4.app.JobIntentService;
 import android.support.v4.content.ContextCompat;
-import android.support.v4.content.res.ResourcesCompat;
-import android.support.v4.provider.FontRequest;
-import android.support.v4.provider.FontsContractCompat;
+import android.support.v4.os.TraceCompat;
 import android.support.v4.widget.SimpleCursorAdapter;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.preference.PreferenceManager;
@@ -56,13 +53,14 @@ import android.widget.TextView;
 import android.widget.TimePicker;
 import android.widget.Toast;
 
+import com.athebapps.android.list.database.HistorySuggestionCache;
 import com.athebapps.android.list.database.ListContract;
-import com.athebapps.android.list.database.ListQueryHandler;
+import com.athebapps.android.list.utils.AppSettings;
 import com.athebapps.android.list.utils.DatabaseUtils;
+import com.athebapps.android.list.utils.FontCache;
 import com.athebapps.android.list.utils.PreferenceUtils;
 import com.athebapps.android.list.utils.Utils;
 
-import java.util.ArrayList;
 import java.util.Calendar;
 
 import static com.athebapps.android.list.NotificationJobIntentService.NOTIFICATION_ID_KEY;
@@ -84,8 +82,8 @@ import static com.athebapps.android.list.NotificationJobIntentService.NOTIFICATI
  * Finally, the user can start HistoryActivity by tapping the Floating Action Button.
  */
 public class ListActivity extends AppCompatActivity
-        implements LoaderManager.LoaderCallbacks<Cursor>,
-        SharedPreferences.OnSharedPreferenceChangeListener,
+        implements LoaderManager.LoaderCallbacks<ProductSnapshot>,
+        AppSettings.OnSettingsChangedListener,
         ListAdapter.ListAdapterOnClickHandler
 {
 
@@ -97,12 +95,6 @@ public class ListActivity extends AppCompatActivity
     /* Helps the LoaderManager identify the loader for the whole list in the case of email sending */
     /*private static final int LIST_FOR_EMAIL_LOADER_ID = 103;*/
 
-    /* Helps the LoaderManager identify the loader for a single element of the list in the case of edition */
-    private static final int LIST_PRODUCT_FOR_EDITION_LOADER_ID = 101;
-
-    /* Helps the LoaderManager identify the loader for a single element of the list in the case of deletion */
-    private static final int LIST_PRODUCT_FOR_DELETION_LOADER_ID = 102;
-
     /* Used by NotificationManager to identify a notification that is launch directly. */
     public static final int DIRECT_NOTIFICATION_ID = 201;
 
@@ -112,6 +104,9 @@ public class ListActivity extends AppCompatActivity
     /* Used by onActivityResult to identifies that the result comes from HistoryActivity */
     private static final int HISTORY_FOR_RESULT_ID = 300;
 
+    /* Maximum number of suggestions from the history displayed when typing a new product */
+    private static final int SUGGESTIONS_LIMIT = 20;
+
     /* The Floating Action Button that launches HistoryActivity */
     private FloatingActionButton mFab;
 
@@ -140,14 +135,15 @@ public class ListActivity extends AppCompatActivity
     * from the history */
     private AutoCompleteTextView mAutoCompleteTextView;
 
-    /* Used to perform Content Provider operations on a background thread */
-    private ListQueryHandler mListQueryHandler;
+    /* Uptime at the start of onCreate(), to measure how long the list takes to be displayed */
+    private long mCreateTime;
 
-    /* Used when retrieving fonts from Google Fonts programmatically */
-    private Handler fontHandler;
+    /* Whether the list has been loaded since the creation of the activity */
+    private boolean mListLoaded;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mCreateTime = SystemClock.uptimeMillis();
 
         /*boolean DEVELOPER_MODE = true;
         if (DEVELOPER_MODE) {
@@ -174,10 +170,10 @@ public class ListActivity extends AppCompatActivity
         setSupportActionBar(toolbar);
 
         // Change the default font of the Toolbar to our custom one.
-        Utils.styleToolbar(toolbar, ResourcesCompat.getFont(this, R.font.montserrat_bold));
+        styleToolbar(toolbar);
 
         mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-        mSharedPreferences.registerOnSharedPreferenceChangeListener(this);
+        AppSettings.registerListener(this);
 
         mFab = findViewById(R.id.floatingActionButton);
         mFab.setOnClickListener(new View.OnClickListener() {
@@ -190,14 +186,31 @@ public class ListActivity extends AppCompatActivity
 
         // Set up the RecyclerView and its Adapter
         mRecyclerView = findViewById(R.id.list_recycler_view);
-        mLayoutManager = PreferenceUtils.getListLayoutManager(this, mSharedPreferences);
+        mLayoutManager = PreferenceUtils.getListLayoutManager(this, AppSettings.get(this));
         mRecyclerView.setLayoutManager(mLayoutManager);
         mAdapter = new ListAdapter(this, this);
         mRecyclerView.setAdapter(mAdapter);
         // Lower default animation duration (default = 250)
         mRecyclerView.getItemAnimator().setMoveDuration(120);
+        // The adapter is updated asynchronously, so the empty view is updated when its content changes
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyViewVisibility();
+            }
 
-        requestFont();
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyViewVisibility();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyViewVisibility();
+            }
+        });
+
+        loadListFont();
 
         // The ItemTouchHelper class manages deletion of a RecyclerView item that is swiped
         ItemTouchHelper.SimpleCallback mSimpleCallback = new ItemTouchHelper.SimpleCallback(0,
@@ -211,16 +224,16 @@ public class ListActivity extends AppCompatActivity
 
             @Override
             public void onSwiped(RecyclerView.ViewHolder viewHolder, int swipeDir) {
-                // The Adapter class stores the id of the element as a tag in the viewHolder
-                int id = (int) viewHolder.itemView.getTag();
-                deleteSingleProduct(id);
+                // The values of the product are read from the rows displayed by the Adapter
+                int position = viewHolder.getAdapterPosition();
+                if (position == RecyclerView.NO_POSITION) return;
+                ProductSnapshot snapshot = mAdapter.getSnapshot();
+                deleteSingleProduct(snapshot.getId(position), snapshot.getProduct(position),
+                        snapshot.getPriority(position), snapshot.getAnnotation(position));
             }
         };
         new ItemTouchHelper(mSimpleCallback).attachToRecyclerView(mRecyclerView);
 
-        // Create the ListQueryHandler used to perform Content Provider operations
-        mListQueryHandler = new ListQueryHandler(getContentResolver());
-
         // By default, the empty view's visibility is set to 'gone'
         mEmptyView = findViewById(R.id.empty_view);
 
@@ -228,6 +241,9 @@ public class ListActivity extends AppCompatActivity
         mProgressBar = findViewById(R.id.progress_bar);
         mProgressBar.setVisibility(View.VISIBLE);
 
+        // Display the list as it was last loaded until it is loaded again
+        if (savedInstanceState == null) showSnapshotFile();
+
         // Initiate loading of the list to populate the RecyclerView
         getLoaderManager().initLoader(LIST_LOADER_ID, null, this);
     }
@@ -235,7 +251,7 @@ public class ListActivity extends AppCompatActivity
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        mSharedPreferences.unregisterOnSharedPreferenceChangeListener(this);
+        AppSettings.unregisterListener(this);
     }
 
     @Override
@@ -275,33 +291,12 @@ public class ListActivity extends AppCompatActivity
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+    public Loader<ProductSnapshot> onCreateLoader(int id, Bundle args) {
         switch (id) {
             case LIST_LOADER_ID:
             /*case LIST_FOR_EMAIL_LOADER_ID:*/
-                String sortOrder = PreferenceUtils.getSortOrder(this, mSharedPreferences);
-                // Returns a new CursorLoader
-                return new CursorLoader(
-                        this,    // Parent activity context
-                        ListContract.ListEntry.CONTENT_URI,    // Table to query
-                        null,    // Projection to return
-                        null,    // No selection clause
-                        null,    // No selection arguments
-                        sortOrder    // Default sort order
-                );
-            case LIST_PRODUCT_FOR_EDITION_LOADER_ID:
-            case LIST_PRODUCT_FOR_DELETION_LOADER_ID:
-                String stringId = args.getString("id");
-                Uri contentUri = ListContract.ListEntry.CONTENT_URI;
-                final Uri uri = contentUri.buildUpon().appendPath(stringId).build();
-                return new CursorLoader(
-                    this,    // Parent activity context
-                    uri,    // Row of the table to query
-                    null,    // Projection to return
-                    null,    // No selection clause
-                    null,    // No selection arguments
-                    null    // Default sort order
-                );
+                // Returns a loader that only reads the changed rows when the list is modified
+                return new ListSnapshotLoader(this, AppSettings.get(this).isSortedByPriority());
             default:
                 // An invalid id was passed in
                 return null;
@@ -309,34 +304,63 @@ public class ListActivity extends AppCompatActivity
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+    public void onLoadFinished(Loader<ProductSnapshot> loader, ProductSnapshot data) {
         int id = loader.getId();
         switch (id) {
             case LIST_LOADER_ID:
-                // Swap cursor in order to display List items when List Loader has finished
+                // Swap snapshot in order to display List items when List Loader has finished
                 mProgressBar.setVisibility(View.GONE);
-                mAdapter.swapCursor(data);
+                mAdapter.swapSnapshot(data);
                 updateEmptyViewVisibility();
+                if (!mListLoaded) {
+                    mListLoaded = true;
+                    onListLoaded(data.size());
+                }
                 break;
             /*case LIST_FOR_EMAIL_LOADER_ID:
                 sendByEmail(data);
                 getLoaderManager().destroyLoader(LIST_FOR_EMAIL_LOADER_ID);
                 break;*/
-            case LIST_PRODUCT_FOR_EDITION_LOADER_ID:
-                showEditionDialog(data);
-                break;
-            case LIST_PRODUCT_FOR_DELETION_LOADER_ID:
-                deleteProductWithMessage(data);
         }
 
     }
 
+    /* Displays the snapshot of the list written by the loader the last time it loaded the list,
+     * if any, so that the list is displayed without waiting for the database. */
+    private void showSnapshotFile() {
+        TraceCompat.beginSection("ListActivity.showSnapshotFile");
+        try {
+            ProductSnapshot snapshot = ListSnapshotFile.read(this, AppSettings.get(this).isSortedByPriority());
+            if (snapshot == null) return;
+            mProgressBar.setVisibility(View.GONE);
+            mAdapter.swapSnapshot(snapshot);
+            updateEmptyViewVisibility();
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Displayed " + snapshot.size() + " products from the snapshot file "
+                        + (SystemClock.uptimeMillis() - mCreateTime) + " ms after onCreate");
+            }
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /* Called when the list is first loaded from the database. The activity is then fully drawn,
+     * which is reported to the system so that cold starts can be measured, e.g. with
+     * 'adb shell am start -W' or in the 'Fully drawn' lines of logcat. */
+    private void onListLoaded(int nbOfProducts) {
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Loaded " + nbOfProducts + " products from the database "
+                    + (SystemClock.uptimeMillis() - mCreateTime) + " ms after onCreate");
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) reportFullyDrawn();
+    }
+
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
+    public void onLoaderReset(Loader<ProductSnapshot> loader) {
         int id = loader.getId();
         if (id == LIST_LOADER_ID) {
             mProgressBar.setVisibility(View.VISIBLE);
-            mAdapter.swapCursor(null);
+            mAdapter.swapSnapshot(ProductSnapshot.EMPTY);
             updateEmptyViewVisibility();
         }
     }
@@ -352,31 +376,36 @@ public class ListActivity extends AppCompatActivity
     }
 
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String s) {
+    public void onSettingsChanged(AppSettings previous, AppSettings current) {
         // If a preference has been modified, makes the necessary calls in order to update the display
-        if (s.equals(getString(R.string.pref_list_layout_key))) {
-            mLayoutManager = PreferenceUtils.getListLayoutManager(this, mSharedPreferences);
+        if (previous.getListLayout() != current.getListLayout()) {
+            mLayoutManager = PreferenceUtils.getListLayoutManager(this, current);
             mRecyclerView.setLayoutManager(mLayoutManager);
             mAdapter.reloadLayout();
-        } else if (s.equals(getString(R.string.pref_sort_order_key))) {
-            getLoaderManager().restartLoader(LIST_LOADER_ID, null, this);
-        } else if (s.equals(getString(R.string.list_reminder_alarm_on))) {
+        }
+        if (previous.getSortOrder() != current.getSortOrder()) {
+            // The loaded list is sorted again in memory, the database is not queried
+            Loader<ProductSnapshot> loader = getLoaderManager().getLoader(LIST_LOADER_ID);
+            if (loader != null) ((ListSnapshotLoader) loader).setSortedByPriority(current.isSortedByPriority());
+        }
+        if (previous.isAlarmOn() != current.isAlarmOn()) {
             invalidateOptionsMenu();
-        } else if (s.equals(getString(R.string.pref_font_key))) {
-            requestFont();
+        }
+        if (!previous.getFontName().equals(current.getFontName())) {
+            loadListFont();
         }
     }
 
     @Override
-    public void onClick(int id) {
+    public void onClick(long id, String product, int priority, String annotation) {
         //mRecyclerView.performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
-        editProduct(id);
+        showEditionDialog(id, product, priority, annotation);
     }
 
     /* This method makes sure that when a notification is scheduled, an informative menu item appears on
      * the AppBar and that the menu entry for settings up a notification does not appear anymore.  */
     private void setupNotificationButtons(Menu menu) {
-        boolean isAlarmSet = PreferenceUtils.isAlarmOn(this, mSharedPreferences);
+        boolean isAlarmSet = AppSettings.get(this).isAlarmOn();
         MenuItem alarmSettingButton = menu.findItem(R.id.action_remind);
         alarmSettingButton.setVisible(!isAlarmSet);
         MenuItem alarmCancelButton = menu.findItem(R.id.action_reminder_info);
@@ -455,8 +484,7 @@ public class ListActivity extends AppCompatActivity
             public boolean onEditorAction(TextView textView, int i, KeyEvent keyEvent) {
                 String text = mAutoCompleteTextView.getText().toString();
                 if (!text.equals("")) {
-                    DatabaseUtils.insertProductIntoListTable(mListQueryHandler, text);
-                    DatabaseUtils.insertProductIntoHistoryTable(mListQueryHandler, text);
+                    DatabaseUtils.insertProductIntoListAndHistoryTables(ListActivity.this, text);
                     mAutoCompleteTextView.setText("");
                 }
                 return true;
@@ -475,138 +503,110 @@ public class ListActivity extends AppCompatActivity
     }
 
     /* Helper method to get a Cursor that points to elements of the history table
-     * that match the string passed as parameter. Used by the Adapter of the ActionView. */
+     * with a word starting with the string passed as parameter. Suggestions are served from memory
+     * by HistorySuggestionCache. Used by the Adapter of the ActionView. */
     private Cursor getCursor(CharSequence str) {
-        String select = ListContract.HistoryEntry.COLUMN_PRODUCT + " LIKE ? ";
-        String[]  selectArgs = { "%" + str + "%"};
-        String[] projection = new String[] {
-                ListContract.HistoryEntry._ID,
-                ListContract.HistoryEntry.COLUMN_PRODUCT};
-        return getContentResolver().query(ListContract.HistoryEntry.CONTENT_URI, projection, select, selectArgs, null);
-    }
-
-    /* Initializes the edition process of a product
-     * @param id the _ID of the product to edit */
-    private void editProduct(int id) {
-        String stringId = Integer.toString(id);
-        Bundle bundle = new Bundle();
-        bundle.putString("id", stringId);
-        getLoaderManager().restartLoader(LIST_PRODUCT_FOR_EDITION_LOADER_ID, bundle, this);
+        if (str == null || str.toString().trim().isEmpty()) return null;
+        return HistorySuggestionCache.getInstance().suggest(getContentResolver(), str, SUGGESTIONS_LIMIT);
     }
 
     /* Shows a popup dialog that allows to add or edit an annotation to a product of the list,
      * as well as changing the priority setting for that product.
-     * @param cursor the Cursor pointing to the product to edit.
+     * @param id the _ID of the product to edit
+     * @param product the name of the product
+     * @param priority the current priority of the product
+     * @param annotation the current annotation of the product, can be null
      */
-    private void showEditionDialog(Cursor cursor) {
-
-        if (cursor != null && cursor.moveToFirst()) {
-
-            final AlertDialog alertDialog;
-
-            String id = cursor.getString(cursor.getColumnIndex(ListContract.ListEntry._ID));
-            String product = cursor.getString(cursor.getColumnIndex(ListContract.ListEntry.COLUMN_PRODUCT));
-            int priority = cursor.getInt(cursor.getColumnIndex(ListContract.ListEntry.COLUMN_PRIORITY));
-            String annotation = cursor.getString(cursor.getColumnIndex(ListContract.ListEntry.COLUMN_ANNOTATION));
-
-            Uri contentUri = ListContract.ListEntry.CONTENT_URI;
-            final Uri uri = contentUri.buildUpon().appendPath(id).build();
-
-            LayoutInflater inflater = getLayoutInflater();
-            @SuppressLint("InflateParams") View view = inflater.inflate(R.layout.dialog_edition, null);
-            final RadioButton radioButton1 = view.findViewById(R.id.button_1);
-            final RadioButton radioButton2 = view.findViewById(R.id.button_2);
-            final RadioButton radioButton3 = view.findViewById(R.id.button_3);
-            switch(priority) {
-                case ListContract.ListEntry.HIGH_PRIORITY_PRODUCT:
-                    radioButton1.setChecked(true);
-                    break;
-                case ListContract.ListEntry.LOW_PRIORITY_PRODUCT:
-                    radioButton3.setChecked(true);
-                    break;
-                default:
-                    radioButton2.setChecked(true);
-            }
-            final EditText editText = view.findViewById(R.id.dialog_edit_text);
-            if (annotation != null) editText.setText(annotation);
-            else editText.setText("");
-
-            alertDialog = new AlertDialog.Builder(ListActivity.this)
-                    .setMessage(product)
-                    .setView(view)
-                    .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
-                        @Override
-                        public void onClick(DialogInterface dialogInterface, int i) {
+    private void showEditionDialog(long id, String product, int priority, String annotation) {
 
-                            int newPriority;
-                            if (radioButton1.isChecked())
-                                newPriority = ListContract.ListEntry.HIGH_PRIORITY_PRODUCT;
-                            else if (radioButton3.isChecked())
-                                newPriority = ListContract.ListEntry.LOW_PRIORITY_PRODUCT;
-                            else newPriority = ListContract.ListEntry.DEFAULT_PRIORITY_PRODUCT;
+        final AlertDialog alertDialog;
 
-                            String newAnnotation = editText.getText().toString().trim();
+        final Uri uri = ContentUris.withAppendedId(ListContract.ListEntry.CONTENT_URI, id);
 
-                            DatabaseUtils.updateProductPriorityAndAnnotation(mListQueryHandler, uri, newPriority, newAnnotation);
-                        }
-                    })
-                    .setNegativeButton(android.R.string.cancel, null)
-                    .create();
-
-            /*alertDialog.setOnShowListener(new DialogInterface.OnShowListener() {
-                @Override
-                public void onShow(DialogInterface dialog) {
-                    final InputMethodManager inputMethodManager
-                            = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
-                    if (inputMethodManager != null)
-                        inputMethodManager.showSoftInput(editText, InputMethodManager.SHOW_IMPLICIT);
-                }
-            });*/
-
-            /*alertDialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
-                @Override
-                public void onDismiss(DialogInterface dialog) {
-                    final InputMethodManager inputMethodManager
-                            = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
-                    if (inputMethodManager != null)
-                        inputMethodManager.hideSoftInputFromWindow(findViewById(R.id.main).getWindowToken(), 0);
-                }
-            });*/
+        LayoutInflater inflater = getLayoutInflater();
+        @SuppressLint("InflateParams") View view = inflater.inflate(R.layout.dialog_edition, null);
+        final RadioButton radioButton1 = view.findViewById(R.id.button_1);
+        final RadioButton radioButton2 = view.findViewById(R.id.button_2);
+        final RadioButton radioButton3 = view.findViewById(R.id.button_3);
+        switch(priority) {
+            case ListContract.ListEntry.HIGH_PRIORITY_PRODUCT:
+                radioButton1.setChecked(true);
+                break;
+            case ListContract.ListEntry.LOW_PRIORITY_PRODUCT:
+                radioButton3.setChecked(true);
+                break;
+            default:
+                radioButton2.setChecked(true);
+        }
+        final EditText editText = view.findViewById(R.id.dialog_edit_text);
+        if (annotation != null) editText.setText(annotation);
+        else editText.setText("");
+
+        alertDialog = new AlertDialog.Builder(ListActivity.this)
+                .setMessage(product)
+                .setView(view)
+                .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialogInterface, int i) {
 
-            alertDialog.show();
+                        int newPriority;
+                        if (radioButton1.isChecked())
+                            newPriority = ListContract.ListEntry.HIGH_PRIORITY_PRODUCT;
+                        else if (radioButton3.isChecked())
+                            newPriority = ListContract.ListEntry.LOW_PRIORITY_PRODUCT;
+                        else newPriority = ListContract.ListEntry.DEFAULT_PRIORITY_PRODUCT;
 
-            editText.setOnEditorActionListener(new TextView.OnEditorActionListener() {
-                @Override
-                public boolean onEditorAction(TextView textView, int i, KeyEvent keyEvent) {
-                    alertDialog.getButton(DialogInterface.BUTTON_POSITIVE).performClick();
-                    return true;
-                }
-            });
+                        String newAnnotation = editText.getText().toString().trim();
 
-            cursor.close();
-        }
-    }
+                        DatabaseUtils.updateProductPriorityAndAnnotation(ListActivity.this, uri, newPriority, newAnnotation);
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .create();
 
-    /* Initiate deletion of a single product from the list based on its id in the table */
-    private void deleteSingleProduct(int id) {
-        String stringId = Integer.toString(id);
-        Bundle bundle = new Bundle();
-        bundle.putString("id", stringId);
-        getLoaderManager().restartLoader(LIST_PRODUCT_FOR_DELETION_LOADER_ID, bundle, this);
-    }
+        /*alertDialog.setOnShowListener(new DialogInterface.OnShowListener() {
+            @Override
+            public void onShow(DialogInterface dialog) {
+                final InputMethodManager inputMethodManager
+                        = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
+                if (inputMethodManager != null)
+                    inputMethodManager.showSoftInput(editText, InputMethodManager.SHOW_IMPLICIT);
+            }
+        });*/
 
-    /* Deletes the product pointed by the cursor. Also shows a message that allows to reverse the deletion */
-    private void deleteProductWithMessage(Cursor cursor) {
+        /*alertDialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
+            @Override
+            public void onDismiss(DialogInterface dialog) {
+                final InputMethodManager inputMethodManager
+                        = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
+                if (inputMethodManager != null)
+                    inputMethodManager.hideSoftInputFromWindow(findViewById(R.id.main).getWindowToken(), 0);
+            }
+        });*/
 
-        ArrayList<String> deletedValues =
-                DatabaseUtils.deleteProductFromListTable(mListQueryHandler, cursor);
+        alertDialog.show();
 
-        if (deletedValues != null)
+        editText.setOnEditorActionListener(new TextView.OnEditorActionListener() {
+            @Override
+            public boolean onEditorAction(TextView textView, int i, KeyEvent keyEvent) {
+                alertDialog.getButton(DialogInterface.BUTTON_POSITIVE).performClick();
+                return true;
+            }
+        });
+    }
+
+    /* Deletes a single product from the list based on its id in the table. Also shows a message
+     * that allows to reverse the deletion, using the values of the product that were displayed. */
+    private void deleteSingleProduct(long id, String product, int priority, String annotation) {
+        TraceCompat.beginSection("ListActivity.deleteSingleProduct");
+        try {
+            DatabaseUtils.deleteProductFromListTable(this, id);
             showMessageWithUndoAction(
-                    getResources().getString(R.string.list_removed_product_message, deletedValues.get(0)),
-                    deletedValues.get(0),
-                    Integer.valueOf(deletedValues.get(1)),
-                    deletedValues.get(2));
+                    getResources().getString(R.string.list_removed_product_message, product),
+                    product, priority, annotation);
+        } finally {
+            TraceCompat.endSection();
+        }
     }
 
     /* Shows a confirmation dialog to delete all entries from the list. */
@@ -618,8 +618,7 @@ public class ListActivity extends AppCompatActivity
                         @Override
                         public void onClick(DialogInterface dialogInterface, int i) {
                             // The 'yes' button has been clicked, call for actual deletion
-                            mListQueryHandler.startDelete(ListQueryHandler.DELETION_LIST, null,
-                                    ListContract.ListEntry.CONTENT_URI, null, null);
+                            DatabaseUtils.deleteAllProductsFromListTable(ListActivity.this);
                         }
                     })
                     .setNegativeButton(android.R.string.no, null)
@@ -745,7 +744,7 @@ public class ListActivity extends AppCompatActivity
     /* Shows a dialog with the time and date of the scheduled reminder, as well as an option
      * to cancel this reminder. */
     private void showScheduledReminderInformationDialog() {
-        String time = PreferenceUtils.getAlarmTime(this, mSharedPreferences);
+        String time = AppSettings.get(this).getAlarmTime();
         new AlertDialog.Builder(ListActivity.this)
                 .setMessage(getResources().getString(R.string.list_reminder_information_dialog_message, time))
                 .setPositiveButton(android.R.string.ok, null)
@@ -841,48 +840,35 @@ public class ListActivity extends AppCompatActivity
                     public void onClick(View view) {
                         // When the 'undo' button is clicked, add the item whose attributes
                         // are passed as parameter to the list.
-                        ContentValues cv = new ContentValues();
-                        cv.put(ListContract.ListEntry.COLUMN_PRODUCT, product);
-                        cv.put(ListContract.ListEntry.COLUMN_PRIORITY, priority);
-                        if (annotation != null)
-                            cv.put(ListContract.ListEntry.COLUMN_ANNOTATION, annotation);
-                        mListQueryHandler.startInsert(ListQueryHandler.INSERTION_LIST,
-                                null, ListContract.ListEntry.CONTENT_URI, cv);
+                        DatabaseUtils.insertProductIntoListTable(ListActivity.this, product, priority, annotation);
                     }
                 })
                 .show();
     }
 
 
-    private Handler getFontHandlerThread() {
-        if (fontHandler == null) {
-            HandlerThread handlerThread = new HandlerThread("fonts");
-            handlerThread.start();
-            fontHandler = new Handler(handlerThread.getLooper());
-        }
-        return fontHandler;
-    }
-
-    private void requestFont() {
-        String font = PreferenceUtils.getFontName(this, mSharedPreferences);
-        FontRequest fontRequest = new FontRequest("com.google.android.gms.fonts",
-                "com.google.android.gms",
-                "name="+font,
-                R.array.com_google_android_gms_fonts_certs);
-        FontsContractCompat.FontRequestCallback toolbarFontCallback =
-                new FontsContractCompat.FontRequestCallback() {
-                    @Override public void onTypefaceRetrieved(Typeface typeface) {
-                        // If we got our font apply it to the toolbar
-                        mAdapter.reloadFont(typeface);
-                    }
-                    @Override public void onTypefaceRequestFailed(int reason) {
-                        Log.w(TAG, "Failed to fetch Toolbar font: " + reason);
-                    }
-                };
-
-        // Start async fetch on the handler thread
-        FontsContractCompat.requestFont(this, fontRequest, toolbarFontCallback,
-                getFontHandlerThread());
+    /* Applies the font of the toolbar once it is loaded, immediately if it is in memory, or the
+     * default font if it cannot be loaded. */
+    private void styleToolbar(final Toolbar toolbar) {
+        FontCache.getInstance(this).load(FontCache.TOOLBAR_FONT_QUERY, new FontCache.Callback() {
+            @Override
+            public void onTypefaceLoaded(Typeface typeface) {
+                Utils.styleToolbar(toolbar, typeface);
+            }
+        });
+    }
 
+    /* Applies the font in the preferences to the list once it is loaded, immediately if it is in
+     * memory, or the default font if it cannot be loaded. A font loaded after the preference has
+     * changed again is ignored. */
+    private void loadListFont() {
+        final String query = FontCache.buildQuery(AppSettings.get(this).getFontName());
+        FontCache.getInstance(this).load(query, new FontCache.Callback() {
+            @Override
+            public void onTypefaceLoaded(Typeface typeface) {
+                String current = FontCache.buildQuery(AppSettings.get(ListActivity.this).getFontName());
+                if (query.equals(current)) mAdapter.reloadFont(typeface);
+            }
+        });
     }
 }
\ No newline at end of file
@@ -1,20 +1,17 @@
 package com.athebapps.android.list;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.database.Cursor;
 import android.graphics.Typeface;
 import android.support.annotation.NonNull;
-import android.support.v7.preference.PreferenceManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.GestureDetector;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.TextView;
 
 import com.athebapps.android.list.database.ListContract;
+import com.athebapps.android.list.utils.AppSettings;
 
 
 /**
@@ -29,25 +26,28 @@ class ListAdapter extends RecyclerView.Adapter<ListAdapter.ViewHolder> {
     private static final int TWO_COLUMNS_LAYOUT = 2;
 
     /* Context object needed for using PreferenceUtils methods and Context.getString() as well as
-     * getting a reference to SharedPreferences */
+     * reading the settings */
     final private Context mContext;
 
-    /* SharedPreferences object for using PreferenceUtils methods that get Preferences
-     * for font and layout */
-    final private SharedPreferences mSharedPreferences;
-
     /* Reference to an implementation of the interface that handles click on a ViewHolder */
     final private ListAdapterOnClickHandler mListAdapterOnClickHandler;
 
-    /* The Cursor that references the actual data that populates the RecyclerView.
-     * Can be null before data has been loaded. */
-    private Cursor mCursor;
+    /* Holds a copy of the rows of the Cursor that references the actual data that populates the
+     * RecyclerView, and dispatches granular updates when it is replaced. */
+    private final SnapshotDiffer mDiffer = new SnapshotDiffer(this);
+
+    /* Text layouts of the rows, kept across bindings of the same rows */
+    private final ListItemView.LayoutCache mLayoutCache = new ListItemView.LayoutCache();
+
+    /* Priority markers, resolved once instead of for every binding */
+    private final String mHighPriorityMark;
+    private final String mLowPriorityMark;
 
     /* Type of Layout for the RecyclerView. Used to adjust the layout of a ViewHolder.
      * Possible values: PreferenceUtils.NORMAL_LAYOUT_ITEM or PreferenceUtils.COMPACT_LAYOUT_ITEM */
     private int mCurrentLayout;
 
-    /* Font used for TextViews in a ViewHolder. */
+    /* Font used for the text of a ViewHolder. */
     private Typeface mTypeface;
 
     /** @param context  needed for PreferenceUtils methods and other operations.
@@ -55,15 +55,10 @@ class ListAdapter extends RecyclerView.Adapter<ListAdapter.ViewHolder> {
     ListAdapter(Context context, ListAdapterOnClickHandler clickHandler) {
         mContext = context;
         mListAdapterOnClickHandler = clickHandler;
-        mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mCurrentLayout = getLayout(AppSettings.get(mContext));
 
-        String layoutType = mSharedPreferences.getString(
-                mContext.getString(R.string.pref_list_layout_key),
-                mContext.getString(R.string.pref_list_layout_two_columns_value));
-        if (layoutType.equals(mContext.getString(R.string.pref_list_layout_two_columns_value)))
-            mCurrentLayout = TWO_COLUMNS_LAYOUT;
-        else
-            mCurrentLayout = ONE_COLUMN_LAYOUT;
+        mHighPriorityMark = mContext.getString(R.string.list_high_priority_mark);
+        mLowPriorityMark = mContext.getString(R.string.list_low_priority_mark);
 
         // Optimization
         setHasStableIds(true);
@@ -87,124 +82,100 @@ class ListAdapter extends RecyclerView.Adapter<ListAdapter.ViewHolder> {
             v = LayoutInflater.from(parent.getContext())
                     .inflate(R.layout.item_list_compact, parent, false);
         }
-        return new ViewHolder(v);
+        ViewHolder holder = new ViewHolder(v);
+        holder.mItemView.setLayoutCache(mLayoutCache);
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull ListAdapter.ViewHolder holder, int position) {
         // Gets element at 'position' and replaces the content of the view with that element
-        if (mCursor.moveToPosition(position)) {
-
-            String product = mCursor.getString(mCursor.getColumnIndex(ListContract.ListEntry.COLUMN_PRODUCT));
-            String annotation = mCursor.getString(mCursor.getColumnIndex(ListContract.ListEntry.COLUMN_ANNOTATION));
-            int priority = mCursor.getInt(mCursor.getColumnIndex(ListContract.ListEntry.COLUMN_PRIORITY));
-
-            holder.mAnnotationTextView.setVisibility(View.GONE);
-            if (annotation != null && !annotation.equals("")) {
-                holder.mAnnotationTextView.setVisibility(View.VISIBLE);
-                holder.mAnnotationTextView.setText(annotation);
-            }
-
-            holder.mProductTextView.setText(product);
-
-            if (mTypeface != null) {
-                holder.mProductTextView.setTypeface(mTypeface);
-                holder.mAnnotationTextView.setTypeface(mTypeface);
-                holder.mPriorityView.setTypeface(mTypeface);
-            }
-
-            switch (priority) {
-                case ListContract.ListEntry.HIGH_PRIORITY_PRODUCT:
-                    holder.mPriorityView.setText(mContext.getString(R.string.list_high_priority_mark));
-                    holder.mPriorityView.setVisibility(View.VISIBLE);
-                    break;
-                case ListContract.ListEntry.LOW_PRIORITY_PRODUCT:
-                    holder.mPriorityView.setText(mContext.getString(R.string.list_low_priority_mark));
-                    holder.mPriorityView.setVisibility(View.VISIBLE);
-                    break;
-                default: // Default priority : no mark.
-                    // For compact layout, we save space by using View.GONE when the priority marker is
-                    // not visible. For normal layout, View.INVISIBLE gives a better alignment.
-                    if (mCurrentLayout == ONE_COLUMN_LAYOUT)
-                        holder.mPriorityView.setVisibility(View.INVISIBLE);
-                    else
-                        holder.mPriorityView.setVisibility(View.GONE);
-                    break;
-            }
-
-            // A tag containing the Id of the element in the table is needed
-            // to handle delete-on-swipe from the List activity.
-            holder.id = mCursor.getInt(mCursor.getColumnIndex(ListContract.ListEntry._ID));
-            holder.itemView.setTag(holder.id);
+        ProductSnapshot snapshot = mDiffer.getSnapshot();
+
+        String priorityMark;
+        switch (snapshot.getPriority(position)) {
+            case ListContract.ListEntry.HIGH_PRIORITY_PRODUCT:
+                priorityMark = mHighPriorityMark;
+                break;
+            case ListContract.ListEntry.LOW_PRIORITY_PRODUCT:
+                priorityMark = mLowPriorityMark;
+                break;
+            default: // Default priority : no mark.
+                // For normal layout, the space of the mark is kept for a better alignment, see
+                // the reservePriorityWidth attribute of the layouts.
+                priorityMark = null;
+                break;
         }
+
+        holder.mItemView.bind(snapshot.getId(position), snapshot.getProduct(position),
+                snapshot.getAnnotation(position), priorityMark, mTypeface);
     }
 
     @Override
     public int getItemCount() {
-        if (null == mCursor) return 0;
-        return mCursor.getCount();
+        return mDiffer.getSnapshot().size();
     }
 
     @Override
     public long getItemId(int position) {
-        mCursor.moveToPosition(position);
-        return mCursor.getLong(mCursor.getColumnIndex(ListContract.ListEntry._ID));
+        return mDiffer.getSnapshot().getId(position);
     }
 
-    /** Updates the value of the cursor that points to data to be displayed in the RecyclerView */
-    void swapCursor(Cursor cursor) {
-        mCursor = cursor;
-        notifyDataSetChanged();
+    /** @return the rows currently displayed, which can be read at the adapter position of a
+     *  ViewHolder to get the values of its product without querying the database. */
+    ProductSnapshot getSnapshot() {
+        return mDiffer.getSnapshot();
+    }
+
+    /** Updates the data to be displayed in the RecyclerView with the rows of the snapshot.
+     *  Only the rows that differ from the displayed ones are updated, asynchronously unless the
+     *  snapshot has been edited from the displayed one. */
+    void swapSnapshot(ProductSnapshot snapshot) {
+        mDiffer.submit(snapshot);
     }
 
-    /** Updates the font value for TextViews to the most recent value from the user's preferences */
+    /** Updates the font of the rows to the most recent value from the user's preferences, the
+     *  default font if null */
     void reloadFont(Typeface typeface) {
         mTypeface = typeface;
+        mLayoutCache.clear();
         notifyDataSetChanged();
     }
 
     /** Updates the layout of the RecyclerView to the most recent value from the user's preferences */
     void reloadLayout() {
-        String layoutType = mSharedPreferences.getString(
-                mContext.getString(R.string.pref_list_layout_key),
-                mContext.getString(R.string.pref_list_layout_two_columns_value));
-        if (layoutType.equals(mContext.getString(R.string.pref_list_layout_two_columns_value)))
-            mCurrentLayout = TWO_COLUMNS_LAYOUT;
-        else
-            mCurrentLayout = ONE_COLUMN_LAYOUT;
+        mCurrentLayout = getLayout(AppSettings.get(mContext));
+        mLayoutCache.clear();
         notifyDataSetChanged();
     }
 
+    /* Type of layout of the ViewHolders for the layout of the list in the settings */
+    private static int getLayout(AppSettings settings) {
+        return settings.getListLayout() == AppSettings.ListLayout.TWO_COLUMNS ? TWO_COLUMNS_LAYOUT : ONE_COLUMN_LAYOUT;
+    }
+
     /** The following interface declares the 'onClick' method that should be overridden
      * by classes using a ListAdapter to provide an implementation of the set of actions
      * performed when an item of the RecyclerView is clicked. */
     interface ListAdapterOnClickHandler {
         /**
          * @param id the _id in the list SQL table of the clicked item
+         * @param product the name of the clicked product
+         * @param priority the priority of the clicked product
+         * @param annotation the annotation of the clicked product, can be null
          * */
-        void onClick(int id);
+        void onClick(long id, String product, int priority, String annotation);
     }
 
     /** Our ViewHolder for Recycling purpose */
     class ViewHolder extends RecyclerView.ViewHolder {
 
-        /* Name of the product */
-        final TextView mProductTextView;
-
-        /* Annotation for the product */
-        final TextView mAnnotationTextView;
-
-        /* Priority marker for the product */
-        final TextView mPriorityView;
-
-        /* id in the table (_ID column) of the item to be displayed */
-        int id;
+        /* Product, annotation and priority marker of the row */
+        final ListItemView mItemView;
 
         ViewHolder(View itemView) {
             super(itemView);
-            mProductTextView = itemView.findViewById(R.id.item_product);
-            mAnnotationTextView = itemView.findViewById(R.id.item_annotation);
-            mPriorityView = itemView.findViewById(R.id.item_priority);
+            mItemView = itemView.findViewById(R.id.item_list_layout);
 
             itemView.setOnTouchListener(new View.OnTouchListener() {
 
@@ -221,8 +192,17 @@ class ListAdapter extends RecyclerView.Adapter<ListAdapter.ViewHolder> {
 
                                             @Override
                                             public boolean onSingleTapConfirmed(MotionEvent e) {
-                                                if (id > 0)
-                                                    mListAdapterOnClickHandler.onClick(id);
+                                                // The row is read from the displayed snapshot, so
+                                                // that no query is needed to edit the product
+                                                int position = getAdapterPosition();
+                                                if (position != RecyclerView.NO_POSITION) {
+                                                    ProductSnapshot snapshot = mDiffer.getSnapshot();
+                                                    mListAdapterOnClickHandler.onClick(
+                                                            snapshot.getId(position),
+                                                            snapshot.getProduct(position),
+                                                            snapshot.getPriority(position),
+                                                            snapshot.getAnnotation(position));
+                                                }
                                                 return super.onSingleTapConfirmed(e);
                                             }
                                         });
@@ -0,0 +1,19 @@
+package com.athebapps.android.list;
+
+import android.app.Application;
+
+import com.athebapps.android.list.utils.AppSettings;
+import com.athebapps.android.list.utils.FontCache;
+
+/**
+ * Application of the app, which reads the settings and starts loading the fonts as soon as the
+ * process starts, so that they are usually in memory by the time the first activity is created.
+ */
+public class ListApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        FontCache.getInstance(this).prefetch(AppSettings.get(this).getFontName());
+    }
+}
@@ -0,0 +1,274 @@
+package com.athebapps.android.list;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+import android.support.v4.view.ViewCompat;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+/**
+ * Row of the list, drawing the product, its annotation below it and its priority mark at the end
+ * of the row, as the nested LinearLayouts and TextViews it replaces did. The row is measured in a
+ * single pass, without the second measure of a weighted LinearLayout, and its text is drawn from
+ * StaticLayouts built when the row is measured and kept in a LayoutCache shared by the rows, so
+ * that a row bound again with the same product, e.g. when scrolling back, is not laid out again.
+ * The padding of the view is the padding of the row.
+ */
+public class ListItemView extends View {
+
+    /* Maximum number of rows whose layouts are cached, a few screens of the list */
+    private static final int MAX_CACHED_ROWS = 200;
+
+    private final TextPaint mProductPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+    private final TextPaint mAnnotationPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+
+    /* Space around the priority mark */
+    private final int mPriorityMarginStart;
+    private final int mPriorityMarginEnd;
+
+    /* Whether the space of the priority mark is kept for the rows without a mark */
+    private final boolean mReservePriorityWidth;
+
+    /* Cache of the layouts of the rows, may be null */
+    private LayoutCache mLayoutCache;
+
+    /* The bound row */
+    private long mId;
+    private String mProduct;
+    private String mAnnotation;
+    private String mPriorityMark;
+    private Typeface mTypeface;
+
+    /* Width of the widest priority mark for the current typeface, -1 when to be measured again */
+    private float mReservedPriorityWidth = -1;
+
+    /* Layouts of the bound row, built when the row is measured */
+    private RowLayouts mLayouts;
+
+    public ListItemView(Context context) {
+        this(context, null);
+    }
+
+    public ListItemView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.ListItemView);
+        try {
+            mProductPaint.setTextSize(a.getDimension(R.styleable.ListItemView_productTextSize,
+                    TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 18, getResources().getDisplayMetrics())));
+            mAnnotationPaint.setTextSize(a.getDimension(R.styleable.ListItemView_annotationTextSize,
+                    TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 16, getResources().getDisplayMetrics())));
+            mPriorityMarginStart = a.getDimensionPixelSize(R.styleable.ListItemView_priorityMarginStart, 0);
+            mPriorityMarginEnd = a.getDimensionPixelSize(R.styleable.ListItemView_priorityMarginEnd, 0);
+            mReservePriorityWidth = a.getBoolean(R.styleable.ListItemView_reservePriorityWidth, false);
+        } finally {
+            a.recycle();
+        }
+
+        // Same colors as ?android:textAppearance and ?android:textAppearanceSmall
+        TypedArray colors = context.obtainStyledAttributes(
+                new int[] {android.R.attr.textColorPrimary, android.R.attr.textColorSecondary});
+        try {
+            mProductPaint.setColor(colors.getColor(0, 0xde000000));
+            mAnnotationPaint.setColor(colors.getColor(1, 0x8a000000));
+        } finally {
+            colors.recycle();
+        }
+    }
+
+    /** Sets the cache of the layouts of the rows, shared by the rows of a RecyclerView */
+    void setLayoutCache(LayoutCache layoutCache) {
+        mLayoutCache = layoutCache;
+    }
+
+    /**
+     * Displays a row of the list.
+     * @param id the _ID of the row, identifying its layouts in the cache
+     * @param annotation the annotation of the product, null or empty if none
+     * @param priorityMark the mark of the priority of the product, null if none
+     * @param typeface the font of the row, null for the default one
+     */
+    void bind(long id, String product, @Nullable String annotation, @Nullable String priorityMark,
+              @Nullable Typeface typeface) {
+        if (TextUtils.isEmpty(annotation)) annotation = null;
+        if (id == mId && TextUtils.equals(product, mProduct) && TextUtils.equals(annotation, mAnnotation)
+                && TextUtils.equals(priorityMark, mPriorityMark) && typeface == mTypeface) {
+            return;
+        }
+        mId = id;
+        mProduct = product;
+        mAnnotation = annotation;
+        mPriorityMark = priorityMark;
+        if (typeface != mTypeface) {
+            mTypeface = typeface;
+            mProductPaint.setTypeface(typeface);
+            mAnnotationPaint.setTypeface(typeface);
+            mReservedPriorityWidth = -1;
+        }
+        mLayouts = null;
+        setContentDescription(annotation != null ? product + ", " + annotation : product);
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int textWidth = width - getPaddingLeft() - getPaddingRight() - getPriorityAreaWidth();
+        mLayouts = obtainLayouts(Math.max(0, textWidth));
+
+        int height = getPaddingTop() + mLayouts.getHeight() + getPaddingBottom();
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        RowLayouts layouts = mLayouts;
+        if (layouts == null) return;
+        boolean rtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+        int top = getPaddingTop();
+        int height = layouts.getHeight();
+
+        int textHeight = layouts.product.getHeight() + (layouts.annotation != null ? layouts.annotation.getHeight() : 0);
+        int textLeft = rtl ? getPaddingLeft() + getPriorityAreaWidth() : getPaddingLeft();
+        canvas.save();
+        canvas.translate(textLeft, top + (height - textHeight) / 2);
+        layouts.product.draw(canvas);
+        if (layouts.annotation != null) {
+            canvas.translate(0, layouts.product.getHeight());
+            layouts.annotation.draw(canvas);
+        }
+        canvas.restore();
+
+        if (layouts.priority != null) {
+            int priorityWidth = layouts.priority.getWidth();
+            int priorityLeft = rtl ? getPaddingLeft() + mPriorityMarginEnd
+                    : getWidth() - getPaddingRight() - mPriorityMarginEnd - priorityWidth;
+            canvas.save();
+            canvas.translate(priorityLeft, top + (height - layouts.priority.getHeight()) / 2);
+            layouts.priority.draw(canvas);
+            canvas.restore();
+        }
+    }
+
+    /* Width taken by the priority mark and its margins, nothing if there is no mark to display
+     * and no space to keep for it */
+    private int getPriorityAreaWidth() {
+        float markWidth;
+        if (mReservePriorityWidth) {
+            if (mReservedPriorityWidth < 0) {
+                mReservedPriorityWidth = Math.max(
+                        mProductPaint.measureText(getContext().getString(R.string.list_high_priority_mark)),
+                        mProductPaint.measureText(getContext().getString(R.string.list_low_priority_mark)));
+            }
+            markWidth = mReservedPriorityWidth;
+        } else if (mPriorityMark != null) {
+            markWidth = mProductPaint.measureText(mPriorityMark);
+        } else {
+            return 0;
+        }
+        return (int) Math.ceil(markWidth) + mPriorityMarginStart + mPriorityMarginEnd;
+    }
+
+    /* Layouts of the bound row for the given width of its text, from the cache if they have
+     * already been built for the same text, font and width */
+    private RowLayouts obtainLayouts(int textWidth) {
+        RowLayouts layouts = mLayouts;
+        if (layouts != null && layouts.matches(this, textWidth)) return layouts;
+        layouts = mLayoutCache != null ? mLayoutCache.get(mId) : null;
+        if (layouts != null && layouts.matches(this, textWidth)) return layouts;
+
+        layouts = new RowLayouts(this, textWidth);
+        if (mLayoutCache != null) mLayoutCache.put(mId, layouts);
+        return layouts;
+    }
+
+    private static StaticLayout buildLayout(String text, TextPaint paint, int width) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width).build();
+        }
+        //noinspection deprecation
+        return new StaticLayout(text, paint, width, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, true);
+    }
+
+    /** Layouts of the rows of the list, by _ID, shared by the ListItemViews of a RecyclerView */
+    static final class LayoutCache {
+
+        private final LruCache<Long, RowLayouts> mLayouts = new LruCache<>(MAX_CACHED_ROWS);
+
+        /** Removes all the layouts, e.g. when the text size of the rows changes */
+        void clear() {
+            mLayouts.evictAll();
+        }
+
+        private RowLayouts get(long id) {
+            return mLayouts.get(id);
+        }
+
+        private void put(long id, RowLayouts layouts) {
+            mLayouts.put(id, layouts);
+        }
+    }
+
+    /* The layouts of a row, with the values they were built from */
+    private static final class RowLayouts {
+
+        final String productText;
+        final String annotationText;
+        final String priorityText;
+        final Typeface typeface;
+        final float productTextSize;
+        final float annotationTextSize;
+        final int textWidth;
+
+        final StaticLayout product;
+        final StaticLayout annotation;
+        final StaticLayout priority;
+
+        RowLayouts(ListItemView view, int textWidth) {
+            productText = view.mProduct != null ? view.mProduct : "";
+            annotationText = view.mAnnotation;
+            priorityText = view.mPriorityMark;
+            typeface = view.mTypeface;
+            productTextSize = view.mProductPaint.getTextSize();
+            annotationTextSize = view.mAnnotationPaint.getTextSize();
+            this.textWidth = textWidth;
+
+            // A StaticLayout draws with the paint it was built with: the layouts, shared by the
+            // rows through LayoutCache, must not use the paints of a view, changed when it is bound
+            TextPaint productPaint = new TextPaint(view.mProductPaint);
+            product = buildLayout(productText, productPaint, textWidth);
+            annotation = annotationText != null
+                    ? buildLayout(annotationText, new TextPaint(view.mAnnotationPaint), textWidth) : null;
+            priority = priorityText != null ? buildLayout(priorityText, productPaint,
+                    (int) Math.ceil(productPaint.measureText(priorityText))) : null;
+        }
+
+        /* Whether the layouts display the row bound to the view with the given width */
+        boolean matches(ListItemView view, int textWidth) {
+            return this.textWidth == textWidth
+                    && typeface == view.mTypeface
+                    && productTextSize == view.mProductPaint.getTextSize()
+                    && annotationTextSize == view.mAnnotationPaint.getTextSize()
+                    && TextUtils.equals(productText, view.mProduct != null ? view.mProduct : "")
+                    && TextUtils.equals(annotationText, view.mAnnotation)
+                    && TextUtils.equals(priorityText, view.mPriorityMark);
+        }
+
+        /* Height of the row without its padding */
+        int getHeight() {
+            int height = product.getHeight() + (annotation != null ? annotation.getHeight() : 0);
+            return priority != null ? Math.max(height, priority.getHeight()) : height;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.athebapps.android.list;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Binary copy of the last loaded list, so that ListActivity can display it as soon as it is
+ * created on a cold start, before the database is opened and queried. The list loaded afterwards
+ * replaces it, and only the rows that changed in the meantime are updated.
+ * The file holds the rows in display order, with their _ID, product, annotation and priority:
+ *
+ *   int MAGIC, int VERSION, byte sortedByPriority, int count,
+ *   count times: long id, byte priority, int length, UTF-8 bytes of the product,
+ *                int length (-1 if none), UTF-8 bytes of the annotation
+ *
+ * It is written to a temporary file renamed over the previous one, so that an interrupted write
+ * leaves the previous file intact, and memory-mapped when read.
+ */
+final class ListSnapshotFile {
+
+    private static final String TAG = ListSnapshotFile.class.getSimpleName();
+
+    /** Name of the file, in the cache directory: the list is loaded normally if it is deleted */
+    static final String FILE_NAME = "list_snapshot.bin";
+
+    /** Maximum number of rows written. Larger lists are not worth reading on the main thread. */
+    static final int MAX_ROWS = 2000;
+
+    /* Identifies the file */
+    private static final int MAGIC = 0x4c495354;
+
+    /* Incremented when the format changes, older files being ignored */
+    private static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ListSnapshotFile() {}
+
+    /** Writes a snapshot of the list, replacing the previous one. Must not be called from the
+     *  main thread. Lists of more than MAX_ROWS rows delete the file instead.
+     *  @param sortedByPriority the order of the snapshot, which must be the same when it is read */
+    static void write(Context context, ProductSnapshot snapshot, boolean sortedByPriority) {
+        File file = getFile(context);
+        if (snapshot.size() > MAX_ROWS) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return;
+        }
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeByte(sortedByPriority ? 1 : 0);
+                out.writeInt(snapshot.size());
+                for (int i = 0; i < snapshot.size(); i++) {
+                    out.writeLong(snapshot.getId(i));
+                    out.writeByte(snapshot.getPriority(i));
+                    writeString(out, snapshot.getProduct(i));
+                    writeString(out, snapshot.getAnnotation(i));
+                }
+            } finally {
+                out.close();
+            }
+            if (!temporaryFile.renameTo(file)) throw new IOException("Cannot rename " + temporaryFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write the snapshot of the list", e);
+            //noinspection ResultOfMethodCallIgnored
+            temporaryFile.delete();
+        }
+    }
+
+    /** Reads the last written snapshot of the list.
+     *  @param sortedByPriority the order in which the list is displayed
+     *  @return the snapshot, without sort keys, or null if there is none in this order */
+    @Nullable
+    static ProductSnapshot read(Context context, boolean sortedByPriority) {
+        File file = getFile(context);
+        if (!file.exists()) return null;
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = randomAccessFile.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return read(buffer, sortedByPriority);
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            // A truncated or corrupted file is ignored and replaced by the next write
+            Log.w(TAG, "Failed to read the snapshot of the list", e);
+            return null;
+        }
+    }
+
+    /* Decodes the rows of the mapped file */
+    @Nullable
+    private static ProductSnapshot read(ByteBuffer buffer, boolean sortedByPriority) {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+        if ((buffer.get() != 0) != sortedByPriority) return null;
+        int count = buffer.getInt();
+        if (count < 0 || count > MAX_ROWS) throw new IllegalArgumentException("Invalid count " + count);
+
+        long[] ids = new long[count];
+        String[] products = new String[count];
+        String[] annotations = new String[count];
+        byte[] priorities = new byte[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = buffer.getLong();
+            priorities[i] = buffer.get();
+            products[i] = readString(buffer);
+            annotations[i] = readString(buffer);
+        }
+        return ProductSnapshot.fromColumns(ids, products, annotations, priorities);
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) return null;
+        if (length < 0 || length > buffer.remaining()) throw new IllegalArgumentException("Invalid length " + length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getCacheDir(), FILE_NAME);
+    }
+}
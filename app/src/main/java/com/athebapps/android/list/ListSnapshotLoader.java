@@ -0,0 +1,256 @@
+package com.athebapps.android.list;
+
+import android.content.AsyncTaskLoader;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+
+import com.athebapps.android.list.database.DataExecutor;
+import com.athebapps.android.list.database.ListContract;
+import com.athebapps.android.list.utils.PreferenceUtils;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads the list as a ProductSnapshot and reloads it whenever the list table changes, as a
+ * CursorLoader would. Instead of querying the whole table again, a reload reads the journal of
+ * the changes made since the previous load (see ListContract.ListChangeEntry) and edits the
+ * previous snapshot with the changed rows only. The whole table is queried again for the first
+ * load, when too many rows have changed, or when the journal no longer holds all the changes.
+ * The snapshot loaded last is also written to ListSnapshotFile, to be displayed on the next cold
+ * start. It is written once the loader stops, i.e. when the activity is stopped, rather than after
+ * every load, so that a burst of changes does not write the whole list again each time.
+ * When the sort order changes, see setSortedByPriority(), the previous snapshot is sorted again
+ * with its sort keys, without querying the database.
+ */
+class ListSnapshotLoader extends AsyncTaskLoader<ProductSnapshot> {
+
+    /* Maximum number of changes applied to the previous snapshot. Above it, querying the whole
+     * table and computing the differences is cheaper than editing the snapshot row by row. */
+    private static final int MAX_EDITED_CHANGES = 100;
+
+    /* Columns of the list, the sort keys being used to place changed rows */
+    private static final String[] LIST_PROJECTION = {
+            ListContract.ListEntry._ID,
+            ListContract.ListEntry.COLUMN_PRODUCT,
+            ListContract.ListEntry.COLUMN_ANNOTATION,
+            ListContract.ListEntry.COLUMN_PRIORITY,
+            ListContract.ListEntry.COLUMN_SORT_KEY};
+
+    /* Columns of the journal, with the current values of the changed rows */
+    private static final String[] CHANGES_PROJECTION = {
+            ListContract.ListChangeEntry._ID,
+            ListContract.ListChangeEntry.COLUMN_ROW_ID,
+            ListContract.ListEntry.COLUMN_PRODUCT,
+            ListContract.ListEntry.COLUMN_ANNOTATION,
+            ListContract.ListEntry.COLUMN_PRIORITY,
+            ListContract.ListEntry.COLUMN_SORT_KEY,
+            ListContract.ListChangeEntry.COLUMN_OPERATION};
+
+    /* Column of the journal returning the sequence number of its last change */
+    private static final String[] LAST_CHANGE_PROJECTION = {"max(" + ListContract.ListChangeEntry._ID + ")"};
+
+    /* Guards ListSnapshotFile, whose writes must not overlap, and the unsaved snapshot */
+    private static final Object sSaveLock = new Object();
+
+    /* Whether the list is to be sorted by priority then name, or by name only */
+    private volatile boolean mSortedByPriority;
+
+    /* Whether the sort order, and the list table, have changed since the start of the last load,
+     * so that a load only sorting the list again does not read the journal */
+    private final AtomicBoolean mSortOrderChanged = new AtomicBoolean();
+    private final AtomicBoolean mListChanged = new AtomicBoolean();
+
+    /* Forces a reload when the list table changes */
+    private final ContentObserver mObserver = new ContentObserver(new Handler()) {
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onListChanged();
+        }
+    };
+
+    private boolean mObserverRegistered;
+
+    /* The snapshot delivered to the callbacks */
+    private ProductSnapshot mSnapshot;
+
+    /* The snapshot loaded last and the sequence number of the last change it includes. Only
+     * accessed from loadInBackground(), loads never overlapping. */
+    private ProductSnapshot mLoadedSnapshot;
+    private long mLastChange;
+
+    /* The order of mLoadedSnapshot. Only accessed from loadInBackground(). */
+    private boolean mLoadedSortedByPriority;
+
+    /* The snapshot loaded last and its order, if it has not been written to ListSnapshotFile yet.
+     * Guarded by sSaveLock. */
+    private ProductSnapshot mUnsavedSnapshot;
+    private boolean mUnsavedSortedByPriority;
+
+    /** @param sortedByPriority true to sort the list by priority then name, false by name only */
+    ListSnapshotLoader(Context context, boolean sortedByPriority) {
+        super(context);
+        mSortedByPriority = sortedByPriority;
+    }
+
+    /** Sorts the list in another order. The snapshot loaded last is sorted again and delivered
+     *  with the moves of its rows, the database is only queried if the list has changed. Must be
+     *  called from the main thread. */
+    void setSortedByPriority(boolean sortedByPriority) {
+        if (mSortedByPriority == sortedByPriority) return;
+        mSortedByPriority = sortedByPriority;
+        mSortOrderChanged.set(true);
+        onContentChanged();
+    }
+
+    @Override
+    public ProductSnapshot loadInBackground() {
+        boolean sortedByPriority = mSortedByPriority;
+        boolean listChanged = mListChanged.getAndSet(false);
+        boolean sortOnly = mSortOrderChanged.getAndSet(false) && !listChanged;
+        ProductSnapshot previous = mLoadedSnapshot;
+        ProductSnapshot snapshot = previous;
+        ProductSnapshot sorted = null;
+        if (snapshot != null && mLoadedSortedByPriority != sortedByPriority) {
+            snapshot = sorted = snapshot.sortedBy(sortedByPriority);
+        }
+        if (snapshot != null && !sortOnly) {
+            snapshot = applyChanges(snapshot, sortedByPriority);
+            // The moves of the sort are dispatched along with the changes
+            if (sorted != null && sorted != previous && snapshot != null) snapshot = sorted.thenEdited(snapshot);
+        }
+        if (snapshot == null) snapshot = loadAll(sortedByPriority);
+        if (snapshot != previous) {
+            synchronized (sSaveLock) {
+                mUnsavedSnapshot = snapshot;
+                mUnsavedSortedByPriority = sortedByPriority;
+            }
+        }
+        mLoadedSnapshot = snapshot;
+        mLoadedSortedByPriority = sortedByPriority;
+        return snapshot;
+    }
+
+    /** Reloads the list after a change of the list table. Called by the observer of the table. */
+    void onListChanged() {
+        mListChanged.set(true);
+        onContentChanged();
+    }
+
+    @Override
+    public void deliverResult(ProductSnapshot snapshot) {
+        if (isReset()) return;
+        mSnapshot = snapshot;
+        if (isStarted()) super.deliverResult(snapshot);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mSnapshot != null) deliverResult(mSnapshot);
+        if (!mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(
+                    ListContract.ListEntry.CONTENT_URI, true, mObserver);
+            mObserverRegistered = true;
+        }
+        if (takeContentChanged() || mSnapshot == null) forceLoad();
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+        DataExecutor.getInstance().startRead(DataExecutor.SAVE_LIST_SNAPSHOT, DataExecutor.PRIORITY_BACKGROUND,
+                new DataExecutor.Operation<Void>() {
+                    @Override
+                    public Void run() {
+                        saveSnapshot();
+                        return null;
+                    }
+                }, null);
+    }
+
+    /** Writes the snapshot loaded last to ListSnapshotFile, unless it has already been written.
+     *  Must not be called from the main thread. */
+    void saveSnapshot() {
+        synchronized (sSaveLock) {
+            if (mUnsavedSnapshot == null) return;
+            ListSnapshotFile.write(getContext(), mUnsavedSnapshot, mUnsavedSortedByPriority);
+            mUnsavedSnapshot = null;
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+        mSnapshot = null;
+    }
+
+    /* Queries the whole list. The last change is read first: changes made in between are then
+     * applied again by the next load, which leaves the snapshot unchanged. The list is read from
+     * the database, a cached result could be older than the last change. */
+    private ProductSnapshot loadAll(boolean sortedByPriority) {
+        ContentResolver resolver = getContext().getContentResolver();
+        long lastChange = 0;
+        Cursor cursor = resolver.query(ListContract.ListChangeEntry.CONTENT_URI,
+                LAST_CHANGE_PROJECTION, null, null, null);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) lastChange = cursor.getLong(0);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        cursor = resolver.query(ListContract.ListEntry.UNCACHED_CONTENT_URI, LIST_PROJECTION, null, null,
+                PreferenceUtils.getSortOrder(sortedByPriority));
+        try {
+            ProductSnapshot snapshot = ProductSnapshot.fromCursor(cursor);
+            mLastChange = lastChange;
+            return snapshot;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /* Edits a snapshot with the changes made since it was loaded.
+     * Returns null if the whole list must be queried instead. */
+    private ProductSnapshot applyChanges(ProductSnapshot snapshot, boolean sortedByPriority) {
+        Cursor cursor = getContext().getContentResolver().query(ListContract.ListChangeEntry.CONTENT_URI,
+                CHANGES_PROJECTION, ListContract.ListChangeEntry._ID + " > ?",
+                new String[] {String.valueOf(mLastChange)}, ListContract.ListChangeEntry._ID + " ASC");
+        if (cursor == null) return null;
+        try {
+            if (cursor.getCount() > MAX_EDITED_CHANGES) return null;
+            // A gap in the sequence means that older changes have been removed from the journal
+            if (cursor.moveToFirst() && cursor.getLong(0) != mLastChange + 1) return null;
+
+            ProductSnapshot.Editor editor = new ProductSnapshot.Editor(snapshot, sortedByPriority);
+            long lastChange = mLastChange;
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                // All the rows have changed, e.g. their sort keys for a new locale
+                if (cursor.getInt(6) == ListContract.ListChangeEntry.OPERATION_RELOAD) return null;
+                // Each change is applied with the current values of its row, so that applying
+                // several changes of the same row, or a change twice, gives the same result
+                editor.apply(cursor.getLong(1), cursor.getString(2), cursor.getString(3),
+                        cursor.getInt(4), cursor.getBlob(5));
+                lastChange = cursor.getLong(0);
+            }
+            mLastChange = lastChange;
+            return editor.build();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -1,10 +1,11 @@
 package com.athebapps.android.list;
 
+import android.graphics.Typeface;
 import android.os.Bundle;
-import android.support.v4.content.res.ResourcesCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 
+import com.athebapps.android.list.utils.FontCache;
 import com.athebapps.android.list.utils.Utils;
 
 
@@ -18,14 +19,20 @@ public class PreferencesActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_preferences);
 
-        Toolbar toolbar = findViewById(R.id.toolbar);
+        final Toolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
         if (getSupportActionBar() != null)
             getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         getSupportActionBar().setDisplayShowHomeEnabled(true);
 
-        Utils.styleToolbar(toolbar, ResourcesCompat.getFont(this, R.font.montserrat_bold));
+        // The font is usually in memory, loaded by ListActivity or when the process started
+        FontCache.getInstance(this).load(FontCache.TOOLBAR_FONT_QUERY, new FontCache.Callback() {
+            @Override
+            public void onTypefaceLoaded(Typeface typeface) {
+                Utils.styleToolbar(toolbar, typeface);
+            }
+        });
     }
 
     @Override
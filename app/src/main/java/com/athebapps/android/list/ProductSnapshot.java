@@ -0,0 +1,498 @@
+package com.athebapps.android.list;
+
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+import android.support.v7.util.ListUpdateCallback;
+import android.text.TextUtils;
+
+import com.athebapps.android.list.database.ListContract;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+/**
+ * Immutable copy of the rows of a Cursor pointing to the list table (or the history table), in the
+ * order of the Cursor.
+ * Each column is stored in its own array, so that binding a ViewHolder or getting the stable id of
+ * an item is a simple array read, without moving a shared Cursor or looking up columns by name.
+ * A snapshot of the list can be edited with the changes of some rows, see Editor, instead of
+ * being copied again from a query of the whole table. An edited snapshot records the updates
+ * that turned the snapshot it was edited from into it.
+ */
+final class ProductSnapshot {
+
+    /** A snapshot without any row */
+    static final ProductSnapshot EMPTY =
+            new ProductSnapshot(new long[0], new String[0], new String[0], new byte[0], new byte[0][], null, null);
+
+    /* Types of the updates recorded by an edited snapshot */
+    private static final int UPDATE_INSERTED = 1;
+    private static final int UPDATE_REMOVED = 2;
+    private static final int UPDATE_MOVED = 3;
+    private static final int UPDATE_CHANGED = 4;
+
+    /* Maximum number of moves recorded by sortedBy(). Above it, dispatching the moves one by one
+     * costs more than comparing the snapshots or reloading the views. */
+    private static final int MAX_RECORDED_MOVES = 200;
+
+    /* _ID column */
+    private final long[] mIds;
+
+    /* Product column */
+    private final String[] mProducts;
+
+    /* Annotation column, null if the table has no such column */
+    private final String[] mAnnotations;
+
+    /* Priority column, null if the table has no such column */
+    private final byte[] mPriorities;
+
+    /* Sort key column, null if the cursor had no such column */
+    private final byte[][] mSortKeys;
+
+    /* The snapshot this one was edited from, null if it was copied from a Cursor. Weak, so that
+     * successive snapshots do not keep each other in memory. */
+    private final WeakReference<ProductSnapshot> mEditedFrom;
+
+    /* Updates turning mEditedFrom into this snapshot, as (type, position, position) triples */
+    private final int[] mUpdates;
+
+    private ProductSnapshot(long[] ids, String[] products, String[] annotations, byte[] priorities,
+                            byte[][] sortKeys, ProductSnapshot editedFrom, int[] updates) {
+        mIds = ids;
+        mProducts = products;
+        mAnnotations = annotations;
+        mPriorities = priorities;
+        mSortKeys = sortKeys;
+        mEditedFrom = editedFrom != null ? new WeakReference<>(editedFrom) : null;
+        mUpdates = updates;
+    }
+
+    /** Copies all the rows of the Cursor. Column indices are only resolved once.
+     *  @param cursor a Cursor on the list or history table, can be null
+     *  @return the snapshot of the rows of the cursor, EMPTY if the cursor is null */
+    static ProductSnapshot fromCursor(@Nullable Cursor cursor) {
+        if (cursor == null || cursor.getCount() == 0) return EMPTY;
+
+        int idIndex = cursor.getColumnIndex(ListContract.ListEntry._ID);
+        int productIndex = cursor.getColumnIndex(ListContract.ListEntry.COLUMN_PRODUCT);
+        int annotationIndex = cursor.getColumnIndex(ListContract.ListEntry.COLUMN_ANNOTATION);
+        int priorityIndex = cursor.getColumnIndex(ListContract.ListEntry.COLUMN_PRIORITY);
+        int sortKeyIndex = cursor.getColumnIndex(ListContract.ListEntry.COLUMN_SORT_KEY);
+
+        int count = cursor.getCount();
+        long[] ids = new long[count];
+        String[] products = new String[count];
+        String[] annotations = annotationIndex != -1 ? new String[count] : null;
+        byte[] priorities = priorityIndex != -1 ? new byte[count] : null;
+        byte[][] sortKeys = sortKeyIndex != -1 ? new byte[count][] : null;
+
+        int i = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext() && i < count) {
+            ids[i] = cursor.getLong(idIndex);
+            products[i] = cursor.getString(productIndex);
+            if (annotations != null) annotations[i] = cursor.getString(annotationIndex);
+            if (priorities != null) priorities[i] = (byte) cursor.getInt(priorityIndex);
+            if (sortKeys != null) sortKeys[i] = cursor.getBlob(sortKeyIndex);
+            i++;
+        }
+        return new ProductSnapshot(ids, products, annotations, priorities, sortKeys, null, null);
+    }
+
+    /** Creates a snapshot of the list without sort keys, e.g. read from ListSnapshotFile. Such a
+     *  snapshot can be displayed but not edited. The arrays are not copied. */
+    static ProductSnapshot fromColumns(long[] ids, String[] products, String[] annotations, byte[] priorities) {
+        if (ids.length == 0) return EMPTY;
+        return new ProductSnapshot(ids, products, annotations, priorities, null, null, null);
+    }
+
+    /** @return the number of rows */
+    int size() {
+        return mIds.length;
+    }
+
+    /** @return the _ID of the row at the given position */
+    long getId(int position) {
+        return mIds[position];
+    }
+
+    /** @return the name of the product of the row at the given position */
+    String getProduct(int position) {
+        return mProducts[position];
+    }
+
+    /** @return the annotation of the row at the given position, null if there is none */
+    @Nullable
+    String getAnnotation(int position) {
+        return mAnnotations != null ? mAnnotations[position] : null;
+    }
+
+    /** @return the priority of the row at the given position, the default priority if the table
+     *  has no priority */
+    int getPriority(int position) {
+        return mPriorities != null ? mPriorities[position] : ListContract.ListEntry.DEFAULT_PRIORITY_PRODUCT;
+    }
+
+    /** @return true if this snapshot has been edited from the given one, see Editor */
+    boolean isEditedFrom(ProductSnapshot snapshot) {
+        return mEditedFrom != null && mEditedFrom.get() == snapshot;
+    }
+
+    /** Dispatches the updates turning the snapshot this one was edited from into this one.
+     *  Nothing is dispatched if this snapshot was copied from a Cursor. */
+    void dispatchUpdatesTo(ListUpdateCallback callback) {
+        if (mUpdates == null) return;
+        for (int i = 0; i < mUpdates.length; i += 3) {
+            switch (mUpdates[i]) {
+                case UPDATE_INSERTED:
+                    callback.onInserted(mUpdates[i + 1], 1);
+                    break;
+                case UPDATE_REMOVED:
+                    callback.onRemoved(mUpdates[i + 1], 1);
+                    break;
+                case UPDATE_MOVED:
+                    callback.onMoved(mUpdates[i + 1], mUpdates[i + 2]);
+                    break;
+                default:
+                    callback.onChanged(mUpdates[i + 1], 1, null);
+            }
+        }
+    }
+
+    /**
+     * Joins the edits of this snapshot and of a snapshot edited from it, e.g. a sort then changes
+     * of rows, so that both are dispatched at once to the views displaying the snapshot this one
+     * was edited from.
+     * @param edited a snapshot edited from this one
+     * @return the rows of edited, edited from the snapshot this one was edited from with the
+     *         updates of both edits in order, or edited itself if the edits cannot be joined
+     */
+    ProductSnapshot thenEdited(ProductSnapshot edited) {
+        if (edited == this) return this;
+        ProductSnapshot original = mEditedFrom != null ? mEditedFrom.get() : null;
+        if (original == null || !edited.isEditedFrom(this)) return edited;
+        int[] updates = Arrays.copyOf(mUpdates, mUpdates.length + edited.mUpdates.length);
+        System.arraycopy(edited.mUpdates, 0, updates, mUpdates.length, edited.mUpdates.length);
+        return new ProductSnapshot(edited.mIds, edited.mProducts, edited.mAnnotations, edited.mPriorities,
+                edited.mSortKeys, original, updates);
+    }
+
+    /**
+     * Sorts the rows of a snapshot of the list in another order, with the sort keys it was copied
+     * with, instead of querying the table again. The sorted snapshot records the moves turning
+     * this snapshot into it, so that the rows are animated to their new positions. Only the rows
+     * out of a longest sequence of rows already in order relative to each other are moved. If more than MAX_RECORDED_MOVES
+     * rows would move, the sorted snapshot records nothing and is not edited from this one.
+     * @param sortedByPriority true to sort the rows by priority then sort key, false by sort key
+     *                         only. Rows sorted the same keep their order.
+     * @return the sorted snapshot, this one if the rows are already in that order
+     */
+    ProductSnapshot sortedBy(final boolean sortedByPriority) {
+        if (mSortKeys == null || mPriorities == null || mAnnotations == null) {
+            throw new IllegalStateException("Not a snapshot of the list with sort keys");
+        }
+        int size = size();
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        // Arrays.sort() is stable on objects, so rows sorted the same keep their order
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer position1, Integer position2) {
+                int priority1 = mPriorities[position1];
+                int priority2 = mPriorities[position2];
+                if (sortedByPriority && priority1 != priority2) return priority1 < priority2 ? -1 : 1;
+                return compareSortKeys(mSortKeys[position1], mSortKeys[position2]);
+            }
+        });
+
+        // The rows of the longest increasing subsequence of the original positions stay in place
+        boolean[] staying = longestIncreasingSubsequence(order);
+        int nbOfMoves = 0;
+        for (boolean stays : staying) if (!stays) nbOfMoves++;
+        if (nbOfMoves == 0) return this;
+        int[] updates = nbOfMoves <= MAX_RECORDED_MOVES ? recordMoves(order, staying, nbOfMoves) : null;
+
+        long[] ids = new long[size];
+        String[] products = new String[size];
+        String[] annotations = new String[size];
+        byte[] priorities = new byte[size];
+        byte[][] sortKeys = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            int row = order[i];
+            ids[i] = mIds[row];
+            products[i] = mProducts[row];
+            annotations[i] = mAnnotations[row];
+            priorities[i] = mPriorities[row];
+            sortKeys[i] = mSortKeys[row];
+        }
+        return new ProductSnapshot(ids, products, annotations, priorities, sortKeys,
+                updates != null ? this : null, updates);
+    }
+
+    /* Returns the moves turning the rows in their original order into the given order. The rows
+     * that do not stay are moved in the order of their new positions, each one right after the row
+     * preceding it in the new order, which is either staying or already moved: the rows staying
+     * or moved are then always in their new order relative to each other. current holds the
+     * original positions of the rows once the previous moves have been applied. */
+    private static int[] recordMoves(Integer[] order, boolean[] staying, int nbOfMoves) {
+        int size = order.length;
+        int[] current = new int[size];
+        for (int i = 0; i < size; i++) current[i] = i;
+        int[] updates = new int[nbOfMoves * 3];
+        int nbOfUpdates = 0;
+        for (int i = 0; i < size; i++) {
+            if (staying[i]) continue;
+            int row = order[i];
+            int from = indexOf(current, row);
+            int previous = i > 0 ? indexOf(current, order[i - 1]) : -1;
+            int to;
+            if (from > previous) {
+                to = previous + 1;
+                if (from == to) continue;
+                System.arraycopy(current, to, current, to + 1, from - to);
+            } else {
+                to = previous;
+                System.arraycopy(current, from + 1, current, from, to - from);
+            }
+            current[to] = row;
+            updates[nbOfUpdates++] = UPDATE_MOVED;
+            updates[nbOfUpdates++] = from;
+            updates[nbOfUpdates++] = to;
+        }
+        return Arrays.copyOf(updates, nbOfUpdates);
+    }
+
+    /* Returns, for each index, whether its value belongs to a longest strictly increasing
+     * subsequence of the values, in O(n log n) */
+    private static boolean[] longestIncreasingSubsequence(Integer[] values) {
+        int size = values.length;
+        // tails[k] is the index of the smallest last value of an increasing subsequence of
+        // length k + 1, previous[i] the index preceding i in the subsequence ending at i
+        int[] tails = new int[size];
+        int[] previous = new int[size];
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[tails[middle]] < values[i]) low = middle + 1;
+                else high = middle;
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) length++;
+        }
+        boolean[] inSubsequence = new boolean[size];
+        for (int i = length > 0 ? tails[length - 1] : -1; i != -1; i = previous[i]) inSubsequence[i] = true;
+        return inSubsequence;
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Edits a snapshot of the list with the current values of changed rows, keeping the order of
+     * the snapshot, and records the resulting updates. Each edit costs a copy of the arrays at
+     * most, instead of a query of the whole table. The snapshot must have been copied with the
+     * sort key column, and must be sorted as given to the constructor.
+     */
+    static final class Editor {
+
+        private final ProductSnapshot mSnapshot;
+
+        /* Whether the rows are sorted by priority first, or only by sort key */
+        private final boolean mSortedByPriority;
+
+        /* Columns being edited, copied on the first edit */
+        private long[] mIds;
+        private String[] mProducts;
+        private String[] mAnnotations;
+        private byte[] mPriorities;
+        private byte[][] mSortKeys;
+        private int mSize;
+
+        /* Recorded updates, as (type, position, position) triples */
+        private int[] mUpdates = new int[0];
+        private int mNbOfUpdates;
+
+        /** @param snapshot the snapshot to edit, which is not modified
+         *  @param sortedByPriority true if the rows are sorted by priority then sort key, false if
+         *                          they are sorted by sort key only */
+        Editor(ProductSnapshot snapshot, boolean sortedByPriority) {
+            if (snapshot.mSortKeys == null || snapshot.mPriorities == null || snapshot.mAnnotations == null) {
+                throw new IllegalArgumentException("Not a snapshot of the list with sort keys");
+            }
+            mSnapshot = snapshot;
+            mSortedByPriority = sortedByPriority;
+            mSize = snapshot.size();
+        }
+
+        /** Applies the current values of a row of the list.
+         *  @param product the product of the row, null if the row has been deleted */
+        void apply(long id, @Nullable String product, @Nullable String annotation, int priority,
+                   @Nullable byte[] sortKey) {
+            int position = indexOf(id);
+            if (product == null) {
+                if (position != -1) {
+                    remove(position);
+                    record(UPDATE_REMOVED, position, 0);
+                }
+                return;
+            }
+            if (position == -1) {
+                position = insertionPoint(priority, sortKey);
+                insert(position, id, product, annotation, priority, sortKey);
+                record(UPDATE_INSERTED, position, 0);
+                return;
+            }
+
+            if (priorityAt(position) == priority && Arrays.equals(sortKeyAt(position), sortKey)) {
+                // Same place in the list, only the displayed values may have changed
+                if (!TextUtils.equals(productAt(position), product)
+                        || !TextUtils.equals(annotationAt(position), annotation)) {
+                    copyOnWrite(0);
+                    mProducts[position] = product;
+                    mAnnotations[position] = annotation;
+                    record(UPDATE_CHANGED, position, 0);
+                }
+                return;
+            }
+            remove(position);
+            int newPosition = insertionPoint(priority, sortKey);
+            insert(newPosition, id, product, annotation, priority, sortKey);
+            if (newPosition != position) record(UPDATE_MOVED, position, newPosition);
+            record(UPDATE_CHANGED, newPosition, 0);
+        }
+
+        /** @return the edited snapshot, the original one if no update was recorded */
+        ProductSnapshot build() {
+            if (mNbOfUpdates == 0) return mSnapshot;
+            return new ProductSnapshot(Arrays.copyOf(mIds, mSize), Arrays.copyOf(mProducts, mSize),
+                    Arrays.copyOf(mAnnotations, mSize), Arrays.copyOf(mPriorities, mSize),
+                    Arrays.copyOf(mSortKeys, mSize), mSnapshot, Arrays.copyOf(mUpdates, mNbOfUpdates));
+        }
+
+        /* Copies the columns of the snapshot before their first modification, with room for
+         * extra rows */
+        private void copyOnWrite(int extra) {
+            if (mIds != null && mIds.length >= mSize + extra) return;
+            int capacity = Math.max(mSize + extra, mSize + mSize / 8 + 1);
+            if (mIds == null) {
+                mIds = Arrays.copyOf(mSnapshot.mIds, capacity);
+                mProducts = Arrays.copyOf(mSnapshot.mProducts, capacity);
+                mAnnotations = Arrays.copyOf(mSnapshot.mAnnotations, capacity);
+                mPriorities = Arrays.copyOf(mSnapshot.mPriorities, capacity);
+                mSortKeys = Arrays.copyOf(mSnapshot.mSortKeys, capacity);
+            } else {
+                mIds = Arrays.copyOf(mIds, capacity);
+                mProducts = Arrays.copyOf(mProducts, capacity);
+                mAnnotations = Arrays.copyOf(mAnnotations, capacity);
+                mPriorities = Arrays.copyOf(mPriorities, capacity);
+                mSortKeys = Arrays.copyOf(mSortKeys, capacity);
+            }
+        }
+
+        private void remove(int position) {
+            copyOnWrite(0);
+            int moved = mSize - position - 1;
+            System.arraycopy(mIds, position + 1, mIds, position, moved);
+            System.arraycopy(mProducts, position + 1, mProducts, position, moved);
+            System.arraycopy(mAnnotations, position + 1, mAnnotations, position, moved);
+            System.arraycopy(mPriorities, position + 1, mPriorities, position, moved);
+            System.arraycopy(mSortKeys, position + 1, mSortKeys, position, moved);
+            mSize--;
+            mProducts[mSize] = null;
+            mAnnotations[mSize] = null;
+            mSortKeys[mSize] = null;
+        }
+
+        private void insert(int position, long id, String product, String annotation, int priority, byte[] sortKey) {
+            copyOnWrite(1);
+            int moved = mSize - position;
+            System.arraycopy(mIds, position, mIds, position + 1, moved);
+            System.arraycopy(mProducts, position, mProducts, position + 1, moved);
+            System.arraycopy(mAnnotations, position, mAnnotations, position + 1, moved);
+            System.arraycopy(mPriorities, position, mPriorities, position + 1, moved);
+            System.arraycopy(mSortKeys, position, mSortKeys, position + 1, moved);
+            mIds[position] = id;
+            mProducts[position] = product;
+            mAnnotations[position] = annotation;
+            mPriorities[position] = (byte) priority;
+            mSortKeys[position] = sortKey;
+            mSize++;
+        }
+
+        private void record(int type, int position, int toPosition) {
+            if (mNbOfUpdates + 3 > mUpdates.length) {
+                mUpdates = Arrays.copyOf(mUpdates, Math.max(12, mUpdates.length * 2));
+            }
+            mUpdates[mNbOfUpdates++] = type;
+            mUpdates[mNbOfUpdates++] = position;
+            mUpdates[mNbOfUpdates++] = toPosition;
+        }
+
+        /* Position of a row, -1 if it is not in the list */
+        private int indexOf(long id) {
+            long[] ids = mIds != null ? mIds : mSnapshot.mIds;
+            for (int i = 0; i < mSize; i++) {
+                if (ids[i] == id) return i;
+            }
+            return -1;
+        }
+
+        /* Position at which a row is to be inserted to keep the order of the list: after the rows
+         * that are not sorted after it, as SQLite does not sort equal rows in any given order */
+        private int insertionPoint(int priority, byte[] sortKey) {
+            int low = 0;
+            int high = mSize;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compare(priorityAt(middle), sortKeyAt(middle), priority, sortKey) <= 0) low = middle + 1;
+                else high = middle;
+            }
+            return low;
+        }
+
+        /* Compares two rows as the sort order of the query of the list */
+        private int compare(int priority1, byte[] sortKey1, int priority2, byte[] sortKey2) {
+            if (mSortedByPriority && priority1 != priority2) return priority1 < priority2 ? -1 : 1;
+            return compareSortKeys(sortKey1, sortKey2);
+        }
+
+        private String productAt(int position) {
+            return mProducts != null ? mProducts[position] : mSnapshot.mProducts[position];
+        }
+
+        private String annotationAt(int position) {
+            return mAnnotations != null ? mAnnotations[position] : mSnapshot.mAnnotations[position];
+        }
+
+        private int priorityAt(int position) {
+            return mPriorities != null ? mPriorities[position] : mSnapshot.mPriorities[position];
+        }
+
+        private byte[] sortKeyAt(int position) {
+            return mSortKeys != null ? mSortKeys[position] : mSnapshot.mSortKeys[position];
+        }
+    }
+
+    /* Compares sort keys as SQLite compares BLOBs: unsigned bytes first, then length. A null key
+     * comes first, as NULL does in SQLite. */
+    private static int compareSortKeys(byte[] key1, byte[] key2) {
+        if (key1 == null || key2 == null) return key1 == null ? (key2 == null ? 0 : -1) : 1;
+        int length = Math.min(key1.length, key2.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (key1[i] & 0xff) - (key2[i] & 0xff);
+            if (difference != 0) return difference;
+        }
+        return key1.length - key2.length;
+    }
+}
@@ -0,0 +1,124 @@
+package com.athebapps.android.list;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.AdapterListUpdateCallback;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Holds the ProductSnapshot displayed by an adapter. When a new snapshot is submitted, the
+ * differences with the displayed one are computed on a background thread, matching rows by _ID,
+ * and only the resulting insertions, removals, moves and changes are dispatched to the adapter.
+ * Only a few ViewHolders are rebound when a single product is added or removed, and changes are
+ * animated. A snapshot edited from the displayed one dispatches its recorded updates directly,
+ * without computing any difference.
+ * Must be used from the main thread.
+ */
+final class SnapshotDiffer {
+
+    /* Single background thread shared by all the differs to compute differences */
+    private static final Executor sDiffExecutor = Executors.newSingleThreadExecutor();
+
+    /* Used to dispatch the updates on the main thread */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* The adapter notified of the updates */
+    private final RecyclerView.Adapter<?> mAdapter;
+
+    /* The snapshot currently displayed by the adapter */
+    private ProductSnapshot mSnapshot = ProductSnapshot.EMPTY;
+
+    /* Incremented for each submitted snapshot, so that the differences computed for a snapshot
+     * that has been replaced by a newer one in the meantime are ignored */
+    private int mGeneration;
+
+    /** @param adapter the adapter displaying the snapshots, to be notified of the updates */
+    SnapshotDiffer(RecyclerView.Adapter<?> adapter) {
+        mAdapter = adapter;
+    }
+
+    /** @return the snapshot currently displayed by the adapter */
+    ProductSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /** Replaces the displayed snapshot with a new one. The adapter is updated immediately if one
+     *  of the snapshots is empty or if the new one has been edited from the displayed one,
+     *  otherwise once the differences have been computed. */
+    void submit(final ProductSnapshot snapshot) {
+        if (snapshot == mSnapshot) return;
+        final int generation = ++mGeneration;
+        final ProductSnapshot oldSnapshot = mSnapshot;
+
+        if (snapshot.isEditedFrom(oldSnapshot)) {
+            // The updates are already known, e.g. a single product has been added
+            mSnapshot = snapshot;
+            snapshot.dispatchUpdatesTo(new AdapterListUpdateCallback(mAdapter));
+            return;
+        }
+
+        if (oldSnapshot.size() == 0 || snapshot.size() == 0) {
+            // Nothing to compare, e.g. the first time the data is loaded
+            mSnapshot = snapshot;
+            mAdapter.notifyDataSetChanged();
+            return;
+        }
+
+        sDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult result =
+                        DiffUtil.calculateDiff(new Callback(oldSnapshot, snapshot), false);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) return;
+                        mSnapshot = snapshot;
+                        result.dispatchUpdatesTo(mAdapter);
+                    }
+                });
+            }
+        });
+    }
+
+    /* Compares two snapshots: rows are the same items if they have the same _ID, and the same
+     * contents if all the displayed columns are equal. */
+    private static class Callback extends DiffUtil.Callback {
+
+        private final ProductSnapshot mOld;
+        private final ProductSnapshot mNew;
+
+        Callback(ProductSnapshot oldSnapshot, ProductSnapshot newSnapshot) {
+            mOld = oldSnapshot;
+            mNew = newSnapshot;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.getId(oldItemPosition) == mNew.getId(newItemPosition);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.getPriority(oldItemPosition) == mNew.getPriority(newItemPosition)
+                    && TextUtils.equals(mOld.getProduct(oldItemPosition), mNew.getProduct(newItemPosition))
+                    && TextUtils.equals(mOld.getAnnotation(oldItemPosition), mNew.getAnnotation(newItemPosition));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.athebapps.android.list.database;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Coalesces the change notifications of ListContentProvider, so that rapid modifications of a
+ * table (swipes, undos, typed products) do not requery its loaders once per modification.
+ * The first notification of a Uri is dispatched immediately. The following ones within
+ * WINDOW_MS are merged into a single notification dispatched at the end of the window.
+ * During a batch, notifications are held until the end of the outermost batch of the thread.
+ * The number of requested and dispatched notifications is kept to measure how many were collapsed.
+ */
+final class ChangeNotifier {
+
+    private static final String TAG = ChangeNotifier.class.getSimpleName();
+
+    /** Minimum interval between two notifications of the same Uri, in milliseconds */
+    static final long WINDOW_MS = 100;
+
+    private final ContentResolver mResolver;
+
+    /* Handler dispatching the notifications deferred to the end of their window */
+    private final Handler mHandler;
+
+    /* Uris waiting for the end of their window, guarded by this */
+    private final Set<Uri> mDeferred = new HashSet<>();
+
+    /* Uptime of the last dispatch of each Uri, guarded by this */
+    private final Map<Uri, Long> mLastDispatches = new HashMap<>();
+
+    /* Uris to be notified at the end of the batch of the current thread, null outside batches */
+    private final ThreadLocal<Set<Uri>> mBatchNotifications = new ThreadLocal<>();
+
+    /* Depth of the nested batches of the current thread */
+    private final ThreadLocal<int[]> mBatchDepth = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    /* Metrics, guarded by this */
+    private int mNbOfRequests;
+    private int mNbOfDispatches;
+
+    /** Creates a ChangeNotifier dispatching deferred notifications from a background thread. */
+    ChangeNotifier(ContentResolver resolver) {
+        this(resolver, createBackgroundHandler());
+    }
+
+    /** @param handler the Handler dispatching the notifications deferred to the end of their window */
+    ChangeNotifier(ContentResolver resolver, Handler handler) {
+        mResolver = resolver;
+        mHandler = handler;
+    }
+
+    /** Notifies the observers of a Uri, now or at the end of its window or of the current batch. */
+    void notifyChange(final Uri uri) {
+        Set<Uri> batch = mBatchNotifications.get();
+        synchronized (this) {
+            mNbOfRequests++;
+            if (batch != null) {
+                batch.add(uri);
+                return;
+            }
+        }
+        request(uri);
+    }
+
+    /** Holds the notifications of the current thread until the matching call to endBatch().
+     *  Batches can be nested, notifications being held until the end of the outermost one. */
+    void beginBatch() {
+        if (mBatchDepth.get()[0]++ == 0) mBatchNotifications.set(new HashSet<Uri>());
+    }
+
+    /** Ends a batch started by beginBatch().
+     *  @param dispatch whether the held notifications are dispatched at the end of the outermost
+     *                  batch, false when its modifications have been rolled back */
+    void endBatch(boolean dispatch) {
+        if (--mBatchDepth.get()[0] > 0) return;
+        Set<Uri> batch = mBatchNotifications.get();
+        mBatchNotifications.remove();
+        if (dispatch) {
+            for (Uri uri : batch) request(uri);
+        }
+    }
+
+    /** @return the number of notifications requested since the creation of the ChangeNotifier */
+    synchronized int getNbOfRequests() {
+        return mNbOfRequests;
+    }
+
+    /** @return the number of notifications dispatched to the observers */
+    synchronized int getNbOfDispatches() {
+        return mNbOfDispatches;
+    }
+
+    /** @return the number of notifications merged into other ones, or dropped with their batch */
+    synchronized int getNbOfCollapsed() {
+        return mNbOfRequests - mNbOfDispatches - mDeferred.size();
+    }
+
+    /* Dispatches a notification now if the window of its Uri is over, or at the end of the window */
+    private void request(final Uri uri) {
+        long now = SystemClock.uptimeMillis();
+        synchronized (this) {
+            if (mDeferred.contains(uri)) return;
+            Long lastDispatch = mLastDispatches.get(uri);
+            if (lastDispatch != null && now - lastDispatch < WINDOW_MS) {
+                mDeferred.add(uri);
+                mHandler.postAtTime(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (ChangeNotifier.this) {
+                            mDeferred.remove(uri);
+                            onDispatch(uri, SystemClock.uptimeMillis());
+                        }
+                        mResolver.notifyChange(uri, null);
+                        if (Log.isLoggable(TAG, Log.DEBUG)) {
+                            Log.d(TAG, "Notified " + uri + ", " + getNbOfCollapsed() + " of "
+                                    + getNbOfRequests() + " notifications collapsed");
+                        }
+                    }
+                }, lastDispatch + WINDOW_MS);
+                return;
+            }
+            onDispatch(uri, now);
+        }
+        mResolver.notifyChange(uri, null);
+    }
+
+    /* Records a dispatch, called with the lock held */
+    private void onDispatch(Uri uri, long now) {
+        mLastDispatches.put(uri, now);
+        mNbOfDispatches++;
+    }
+
+    /* Notifications are binder calls, they are dispatched away from the main thread */
+    private static Handler createBackgroundHandler() {
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        return new Handler(thread.getLooper());
+    }
+}
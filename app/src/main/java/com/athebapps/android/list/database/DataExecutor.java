@@ -0,0 +1,247 @@
+package com.athebapps.android.list.database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide executor of the operations on the database, used instead of AsyncQueryHandler and
+ * AsyncTask so that all the database work of the app is coordinated.
+ * Writes are run one at a time by a single writer thread, as SQLite only allows one writer anyway.
+ * Reads are run by a bounded pool of reader threads, which write-ahead logging lets read while
+ * the writer writes, so that reads never wait behind writes.
+ * Each queue is ordered by priority, then by submission: operations the user is waiting for
+ * (PRIORITY_UI) run before background ones, and operations of the same priority run in order.
+ * Operations are identified by a token, one of the constants of this class, passed back with their
+ * result. Each started operation returns a Handle, with which this operation alone can be
+ * cancelled, so that an owner never cancels the operations of another one with the same token.
+ * Results are delivered on the main thread.
+ * The time each operation waited in its queue and ran is logged when debugging is enabled.
+ */
+public final class DataExecutor {
+
+    private static final String TAG = DataExecutor.class.getSimpleName();
+
+    /** Identifies the insertion of a product in the list table */
+    public static final int INSERTION_LIST = 1;
+
+    /** Identifies the deletion of products from the list table */
+    public static final int DELETION_LIST = 3;
+
+    /** Identifies the update of a product of the list table*/
+    public static final int UPDATE_LIST = 4;
+
+    /** Identifies the insertion of a product in both the list and the history tables */
+    public static final int INSERTION_LIST_AND_HISTORY = 5;
+
+    /** Identifies the deletion of products from the history table */
+    public static final int DELETION_HISTORY = 6;
+
+    /** Identifies the insertion of products of the history table in the list table */
+    public static final int INSERTION_HISTORY_TO_LIST = 7;
+
+    /** Identifies the query of a page of the history table */
+    public static final int QUERY_HISTORY_PAGE = 8;
+
+    /** Identifies the update of the sort keys of the tables for a new locale */
+    public static final int UPDATE_SORT_KEYS = 9;
+
+    /** Identifies the writing of the list to the file read on cold starts, outside the database */
+    public static final int SAVE_LIST_SNAPSHOT = 10;
+
+    /** Priority of the operations whose result is awaited by the user */
+    public static final int PRIORITY_UI = 0;
+
+    /** Priority of the operations nobody is waiting for */
+    public static final int PRIORITY_BACKGROUND = 10;
+
+    /* Maximum number of reader threads */
+    private static final int MAX_READERS = 4;
+
+    /* Time after which idle threads are stopped, in seconds */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final DataExecutor sInstance =
+            new DataExecutor(Math.max(2, Math.min(MAX_READERS, Runtime.getRuntime().availableProcessors() - 1)),
+                    new Handler(Looper.getMainLooper()));
+
+    private final ThreadPoolExecutor mWriter;
+
+    private final ThreadPoolExecutor mReaders;
+
+    /* Handler delivering the results */
+    private final Handler mResultHandler;
+
+    /* Orders the operations of the same priority by submission */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /**
+     * An operation on the database, run on a background thread.
+     * @param <T> the type of its result
+     */
+    public interface Operation<T> {
+        T run();
+    }
+
+    /**
+     * Receives the result of an operation on the main thread, unless the operation is cancelled.
+     * @param <T> the type of the result
+     */
+    public interface Callback<T> {
+        void onComplete(int token, T result);
+    }
+
+    /** A started operation */
+    public interface Handle {
+        /** Cancels the operation if it has not started yet, and drops its result if it is
+         *  running. A running operation is not interrupted. */
+        void cancel();
+    }
+
+    /** @param nbOfReaders the maximum number of reads run at the same time
+     *  @param resultHandler the Handler delivering the results */
+    DataExecutor(int nbOfReaders, Handler resultHandler) {
+        mResultHandler = resultHandler;
+        mWriter = createExecutor(1, "writer");
+        mReaders = createExecutor(nbOfReaders, "reader");
+    }
+
+    /** @return the single instance of the executor */
+    public static DataExecutor getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Starts a read of the database. Reads may run at the same time as other reads and as writes.
+     * @param token the token identifying the operation, passed to the callback
+     * @param priority PRIORITY_UI or PRIORITY_BACKGROUND
+     * @param operation the read, which must not write
+     * @param callback receives the result, may be null
+     * @return the handle with which the read can be cancelled
+     */
+    public <T> Handle startRead(int token, int priority, @NonNull Operation<T> operation,
+                                @Nullable Callback<T> callback) {
+        return start(mReaders, token, priority, operation, callback);
+    }
+
+    /**
+     * Starts a write of the database. Writes run one at a time, those of the same priority in the
+     * order in which they were started.
+     * @param token the token identifying the operation, passed to the callback
+     * @param priority PRIORITY_UI or PRIORITY_BACKGROUND
+     * @param operation the write
+     * @param callback receives the result, may be null
+     * @return the handle with which the write can be cancelled
+     */
+    public <T> Handle startWrite(int token, int priority, @NonNull Operation<T> operation,
+                                 @Nullable Callback<T> callback) {
+        return start(mWriter, token, priority, operation, callback);
+    }
+
+    private <T> Handle start(ThreadPoolExecutor executor, int token, int priority,
+                             Operation<T> operation, @Nullable Callback<T> callback) {
+        Task<T> task = new Task<>(executor, token, priority, mSequence.getAndIncrement(), operation, callback);
+        executor.execute(task);
+        return task;
+    }
+
+    /* Threads are created on demand and stopped after KEEP_ALIVE_SECONDS of inactivity. The queue
+     * is unbounded, so the pool never grows beyond its core size and never rejects a task. */
+    private static ThreadPoolExecutor createExecutor(int nbOfThreads, final String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(nbOfThreads, nbOfThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(@NonNull final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, TAG + "-" + name + "-" + mCount.incrementAndGet());
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /* An operation in the queue of an executor, ordered by priority then by submission. Executed
+     * with execute() rather than submit(), which would wrap it in a FutureTask that the
+     * PriorityBlockingQueue could not order. */
+    private final class Task<T> implements Runnable, Comparable<Task<?>>, Handle {
+
+        final ThreadPoolExecutor mExecutor;
+        final int mToken;
+        final int mPriority;
+        final long mSequence;
+        final Operation<T> mOperation;
+        final Callback<T> mCallback;
+        final long mSubmitTime = SystemClock.uptimeMillis();
+
+        /* Set from any thread by cancel() */
+        volatile boolean mCancelled;
+
+        Task(ThreadPoolExecutor executor, int token, int priority, long sequence,
+             Operation<T> operation, @Nullable Callback<T> callback) {
+            mExecutor = executor;
+            mToken = token;
+            mPriority = priority;
+            mSequence = sequence;
+            mOperation = operation;
+            mCallback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) return;
+            long start = SystemClock.uptimeMillis();
+            final T result;
+            TraceCompat.beginSection(mExecutor == mWriter ? "DataExecutor.write" : "DataExecutor.read");
+            try {
+                result = mOperation.run();
+            } finally {
+                TraceCompat.endSection();
+            }
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, (mExecutor == mWriter ? "Write " : "Read ") + mToken + " (priority "
+                        + mPriority + ") waited " + (start - mSubmitTime) + " ms, ran "
+                        + (SystemClock.uptimeMillis() - start) + " ms");
+            }
+            if (mCallback == null || mCancelled) return;
+            mResultHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCancelled) mCallback.onComplete(mToken, result);
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+            // Removed from the queue if it has not started yet
+            mExecutor.remove(this);
+        }
+
+        @Override
+        public int compareTo(@NonNull Task<?> other) {
+            if (mPriority != other.mPriority) return mPriority < other.mPriority ? -1 : 1;
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.athebapps.android.list.database;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LongSparseArray;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+
+/**
+ * Process-wide, in-memory cache of the products of the history table, used to suggest products
+ * while the user is typing.
+ * Products are indexed by the start of each of their words: an entry is a product with the offset
+ * of a word in its normalized form, and entries are sorted by the normalized product from this
+ * offset, which is searched by binary search without building a string for each word. The cache is
+ * built the first time it is used, then kept up to date by ListContentProvider when products are
+ * inserted into or deleted from the history table. Inserted products go to a small sorted array
+ * merged into the main one when it is full, and deleted products are only marked as such until
+ * the next merge, so that a modification does not move the whole index.
+ */
+public class HistorySuggestionCache {
+
+    private static final HistorySuggestionCache sInstance = new HistorySuggestionCache();
+
+    /* Columns of the Cursors of suggestions */
+    private static final String[] COLUMNS = {
+            ListContract.HistoryEntry._ID,
+            ListContract.HistoryEntry.COLUMN_PRODUCT};
+
+    /* Matches the diacritical marks left by the decomposition of accented characters */
+    private static final Pattern DIACRITICAL_MARKS = Pattern.compile("\\p{M}+");
+
+    /* Maximum number of entries of the inserted products kept apart from the main index */
+    private static final int MAX_RECENT_ENTRIES = 64;
+
+    /* Products of the history by id. Null until the cache is loaded or after an invalidation. */
+    private LongSparseArray<Product> mProducts;
+
+    /* One entry for each word of each product, sorted by key */
+    private ArrayList<Entry> mEntries = new ArrayList<>();
+
+    /* Entries of the products inserted since the last merge, sorted by key */
+    private ArrayList<Entry> mRecentEntries = new ArrayList<>();
+
+    /* Number of entries of deleted products still in the index */
+    private int mNbOfDeletedEntries;
+
+    /* Incremented by every modification, so that a load concurrent to a modification of the
+     * history table is discarded */
+    private int mGeneration;
+
+    private HistorySuggestionCache() {}
+
+    /** @return the single instance of the cache */
+    public static HistorySuggestionCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns the products of the history with a word starting with the given text, ignoring case
+     * and accents. Products starting with the text come first, then shorter products.
+     * Loads the cache on first use, so this should not be called from the main thread.
+     * @param resolver used to load the history table
+     * @param text the text typed by the user
+     * @param limit the maximum number of suggestions
+     * @return a Cursor with the _ID and product columns of the suggestions
+     */
+    @Nullable
+    public Cursor suggest(ContentResolver resolver, @NonNull CharSequence text, int limit) {
+        String key = normalize(text.toString().trim());
+        if (key.isEmpty() || limit <= 0) return new MatrixCursor(COLUMNS, 0);
+
+        load(resolver);
+
+        Selection selection = new Selection(limit);
+        synchronized (this) {
+            if (mProducts == null) {
+                // The history changed while loading: search the database this time
+                return resolver.query(ListContract.HistoryEntry.buildSearchUri(text, limit),
+                        null, null, null, null);
+            }
+            select(mEntries, key, selection);
+            select(mRecentEntries, key, selection);
+        }
+
+        MatrixCursor cursor = new MatrixCursor(COLUMNS, selection.size);
+        for (int i = 0; i < selection.size; i++) {
+            Product product = selection.products[i];
+            cursor.addRow(new Object[] {product.id, product.product});
+        }
+        return cursor;
+    }
+
+    /** Adds a product that has just been inserted in the history table. */
+    synchronized void onInserted(long id, String product) {
+        mGeneration++;
+        if (mProducts == null || product == null) return;
+        Product previous = mProducts.get(id);
+        if (previous != null) markDeleted(previous);
+
+        Product inserted = new Product(id, product);
+        mProducts.put(id, inserted);
+        for (Entry entry : createEntries(inserted)) {
+            mRecentEntries.add(lowerBound(mRecentEntries, entry.product.normalized, entry.offset, id), entry);
+        }
+        if (mRecentEntries.size() > MAX_RECENT_ENTRIES) merge();
+    }
+
+    /** Removes a product that has just been deleted from the history table. */
+    synchronized void onDeleted(long id) {
+        mGeneration++;
+        if (mProducts == null) return;
+        Product product = mProducts.get(id);
+        if (product == null) return;
+        mProducts.remove(id);
+        markDeleted(product);
+        // Drop the deleted entries once they make a significant part of the index
+        if (mNbOfDeletedEntries > MAX_RECENT_ENTRIES + mEntries.size() / 4) merge();
+    }
+
+    /** Empties the cache, which will be loaded again on next use. Used when it is not known which
+     *  products have been modified. */
+    synchronized void invalidate() {
+        mGeneration++;
+        mProducts = null;
+        mEntries = new ArrayList<>();
+        mRecentEntries = new ArrayList<>();
+        mNbOfDeletedEntries = 0;
+    }
+
+    /* Loads the whole history table into the cache, unless it is already loaded. The database is
+     * queried without holding the lock, so that the provider is never blocked by a load. */
+    private void load(ContentResolver resolver) {
+        int generation;
+        synchronized (this) {
+            if (mProducts != null) return;
+            generation = mGeneration;
+        }
+
+        Cursor cursor = resolver.query(ListContract.HistoryEntry.CONTENT_URI, COLUMNS, null, null, null);
+        if (cursor == null) return;
+        LongSparseArray<Product> products = new LongSparseArray<>(cursor.getCount());
+        ArrayList<Entry> entries = new ArrayList<>(cursor.getCount() * 2);
+        try {
+            while (cursor.moveToNext()) {
+                String product = cursor.getString(1);
+                if (product == null) continue;
+                Product loaded = new Product(cursor.getLong(0), product);
+                products.put(loaded.id, loaded);
+                entries.addAll(createEntries(loaded));
+            }
+        } finally {
+            cursor.close();
+        }
+        Collections.sort(entries);
+
+        synchronized (this) {
+            if (mProducts == null && generation == mGeneration) {
+                mProducts = products;
+                mEntries = entries;
+            }
+        }
+    }
+
+    /* Offers to the selection the products of the given entries with a word starting with key */
+    private static void select(ArrayList<Entry> entries, String key, Selection selection) {
+        for (int i = lowerBound(entries, key, 0, Long.MIN_VALUE); i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (!entry.product.normalized.startsWith(key, entry.offset)) break;
+            if (!entry.product.deleted) selection.offer(entry.product, entry.offset == 0);
+        }
+    }
+
+    /* Marks the entries of a product as deleted, they are skipped until the next merge */
+    private void markDeleted(Product product) {
+        product.deleted = true;
+        mNbOfDeletedEntries += product.nbOfEntries;
+    }
+
+    /* Merges the recent entries into the main index, dropping the entries of deleted products */
+    private void merge() {
+        ArrayList<Entry> merged = new ArrayList<>(mEntries.size() + mRecentEntries.size() - mNbOfDeletedEntries);
+        int i = 0;
+        int j = 0;
+        while (i < mEntries.size() || j < mRecentEntries.size()) {
+            Entry entry;
+            if (j == mRecentEntries.size()
+                    || (i < mEntries.size() && mEntries.get(i).compareTo(mRecentEntries.get(j)) <= 0)) {
+                entry = mEntries.get(i++);
+            } else {
+                entry = mRecentEntries.get(j++);
+            }
+            if (!entry.product.deleted) merged.add(entry);
+        }
+        mEntries = merged;
+        mRecentEntries = new ArrayList<>();
+        mNbOfDeletedEntries = 0;
+    }
+
+    /* Returns the index of the first entry greater than or equal to (the key from offset, id). */
+    private static int lowerBound(ArrayList<Entry> entries, String key, int offset, long id) {
+        int low = 0;
+        int high = entries.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries.get(middle).compareTo(key, offset, id) < 0) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /* Compares s1 from offset1 to s2 from offset2, as String.compareTo would compare the
+     * substrings */
+    private static int compareFrom(String s1, int offset1, String s2, int offset2) {
+        int length1 = s1.length() - offset1;
+        int length2 = s2.length() - offset2;
+        int length = Math.min(length1, length2);
+        for (int i = 0; i < length; i++) {
+            char c1 = s1.charAt(offset1 + i);
+            char c2 = s2.charAt(offset2 + i);
+            if (c1 != c2) return c1 - c2;
+        }
+        return length1 - length2;
+    }
+
+    /* Creates one entry for each word of the product, at the offset of this word in the
+     * normalized product. */
+    private static ArrayList<Entry> createEntries(Product product) {
+        String normalized = product.normalized;
+        ArrayList<Entry> entries = new ArrayList<>(2);
+        for (int i = 0; i < normalized.length(); i++) {
+            boolean wordStart = Character.isLetterOrDigit(normalized.charAt(i))
+                    && (i == 0 || !Character.isLetterOrDigit(normalized.charAt(i - 1)));
+            if (wordStart) entries.add(new Entry(product, i));
+        }
+        product.nbOfEntries = entries.size();
+        return entries;
+    }
+
+    /* Lower case and without accents, so that 'creme' suggests 'Crème fraîche' */
+    private static String normalize(String s) {
+        String decomposed = Normalizer.normalize(s, Normalizer.Form.NFD);
+        return DIACRITICAL_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.getDefault());
+    }
+
+    /* A product of the history */
+    private static class Product {
+
+        /* _ID of the product in the history table */
+        final long id;
+
+        /* The product as displayed */
+        final String product;
+
+        /* The product lower case and without accents, the text the entries point into */
+        final String normalized;
+
+        /* Number of entries of the product in the index */
+        int nbOfEntries;
+
+        /* True once the product has been removed from the history, until its entries are dropped */
+        boolean deleted;
+
+        Product(long id, String product) {
+            this.id = id;
+            this.product = product;
+            this.normalized = normalize(product);
+        }
+    }
+
+    /* A word of a product in the index */
+    private static class Entry implements Comparable<Entry> {
+
+        final Product product;
+
+        /* Offset of the word in the normalized product, 0 for the first word */
+        final int offset;
+
+        Entry(Product product, int offset) {
+            this.product = product;
+            this.offset = offset;
+        }
+
+        int compareTo(String otherKey, int otherOffset, long otherId) {
+            int c = compareFrom(product.normalized, offset, otherKey, otherOffset);
+            if (c != 0) return c;
+            long id = product.id;
+            return id < otherId ? -1 : (id == otherId ? 0 : 1);
+        }
+
+        @Override
+        public int compareTo(@NonNull Entry other) {
+            return compareTo(other.product.normalized, other.offset, other.product.id);
+        }
+    }
+
+    /* The best suggestions found so far, at most limit of them, best first. A product offered
+     * several times, once for each of its matching words, is kept once with its best rank. */
+    private static class Selection {
+
+        final Product[] products;
+
+        /* Whether each product matched by its first word */
+        final boolean[] heads;
+
+        int size;
+
+        Selection(int limit) {
+            products = new Product[limit];
+            heads = new boolean[limit];
+        }
+
+        void offer(Product product, boolean head) {
+            int limit = products.length;
+            if (size == limit && compare(product, head, products[size - 1], heads[size - 1]) >= 0) return;
+
+            int end = size;
+            for (int i = 0; i < size; i++) {
+                if (products[i] != product) continue;
+                if (compare(product, head, products[i], heads[i]) >= 0) return;
+                // Removed, to be inserted again at its better rank
+                end = i;
+                break;
+            }
+            if (end == size && size < limit) size++;
+
+            // Shifts down the worse suggestions, dropping the last one if the selection is full
+            int i = Math.min(end, limit - 1);
+            while (i > 0 && compare(product, head, products[i - 1], heads[i - 1]) < 0) {
+                products[i] = products[i - 1];
+                heads[i] = heads[i - 1];
+                i--;
+            }
+            products[i] = product;
+            heads[i] = head;
+        }
+
+        /* Products starting with the text first, then shorter products, then in alphabetical
+         * order */
+        private static int compare(Product p1, boolean head1, Product p2, boolean head2) {
+            if (head1 != head2) return head1 ? -1 : 1;
+            int c = p1.product.length() - p2.product.length();
+            if (c != 0) return c;
+            c = p1.normalized.compareTo(p2.normalized);
+            if (c != 0) return c;
+            return p1.id < p2.id ? -1 : (p1.id == p2.id ? 0 : 1);
+        }
+    }
+}
@@ -1,16 +1,28 @@
 package com.athebapps.android.list.database;
 
+import android.content.BroadcastReceiver;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.util.ArrayList;
+
 /** ListContentProvider handles database related operations in the application. */
 public class ListContentProvider extends ContentProvider {
 
@@ -26,21 +38,81 @@ public class ListContentProvider extends ContentProvider {
     /* UriMatcher code for history table item match */
     private static final int HISTORY_ID = 400;
 
+    /* UriMatcher code for a search in the history table */
+    private static final int HISTORY_SEARCH = 500;
+
+    /* UriMatcher code for the journal of the changes of the list table */
+    private static final int LIST_CHANGES = 600;
+
     /* UriMatcher will match a given Uri with these templates and return a code to identify
      * the table and the specificity of the Uri (single row or full table). */
     final private static UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
     static {
         sUriMatcher.addURI(ListContract.CONTENT_AUTHORITY, ListContract.PATH_LIST, LIST);
         sUriMatcher.addURI(ListContract.CONTENT_AUTHORITY, ListContract.PATH_LIST + "/#", LIST_ID);
+        sUriMatcher.addURI(ListContract.CONTENT_AUTHORITY,
+                ListContract.PATH_LIST + "/" + ListContract.PATH_CHANGES, LIST_CHANGES);
         sUriMatcher.addURI(ListContract.CONTENT_AUTHORITY, ListContract.PATH_HISTORY, HISTORY);
         sUriMatcher.addURI(ListContract.CONTENT_AUTHORITY, ListContract.PATH_HISTORY + "/#", HISTORY_ID);
+        sUriMatcher.addURI(ListContract.CONTENT_AUTHORITY,
+                ListContract.PATH_HISTORY + "/" + ListContract.PATH_SEARCH + "/*", HISTORY_SEARCH);
     }
 
+    /* Maximum number of products returned by a search in history, unless specified in the Uri */
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+
+    /* SQL query searching the full-text index of history for products matching the words of the
+     * search. Products starting with the searched text come first, then shorter products. */
+    private static final String SQL_SEARCH_HISTORY =
+            "SELECT h." + ListContract.HistoryEntry._ID + ", h." + ListContract.HistoryEntry.COLUMN_PRODUCT
+                    + " FROM " + ListContract.HistoryEntry.TABLE_NAME + " h JOIN "
+                    + ListContract.HistoryEntry.FTS_TABLE_NAME + " ON " + ListContract.HistoryEntry.FTS_TABLE_NAME
+                    + ".docid = h." + ListContract.HistoryEntry._ID
+                    + " WHERE " + ListContract.HistoryEntry.FTS_TABLE_NAME + " MATCH ?"
+                    + " ORDER BY h." + ListContract.HistoryEntry.COLUMN_PRODUCT + " LIKE ? ESCAPE '\\' DESC,"
+                    + " length(h." + ListContract.HistoryEntry.COLUMN_PRODUCT + "),"
+                    + " h." + ListContract.HistoryEntry.COLUMN_PRODUCT + " COLLATE NOCASE"
+                    + " LIMIT ";
+
+    /* SQL statement copying products of the history to the list with the default priority, the
+     * selection of the history rows is to be appended */
+    private static final String SQL_ADD_HISTORY_TO_LIST =
+            "INSERT OR IGNORE INTO " + ListContract.ListEntry.TABLE_NAME
+                    + " (" + ListContract.ListEntry.COLUMN_PRODUCT + ", " + ListContract.ListEntry.COLUMN_PRIORITY
+                    + ", " + ListContract.ListEntry.COLUMN_SORT_KEY + ")"
+                    + " SELECT " + ListContract.HistoryEntry.COLUMN_PRODUCT + ", " + ListContract.ListEntry.DEFAULT_PRIORITY_PRODUCT
+                    + ", " + ListContract.HistoryEntry.COLUMN_SORT_KEY
+                    + " FROM " + ListContract.HistoryEntry.TABLE_NAME
+                    + " WHERE ";
+
+    /* Number of operations of a batch after which the transaction may yield to other threads */
+    private static final int MAX_OPERATIONS_PER_YIELD_POINT = 100;
+
     private ListDbHelper mListDbHelper;
 
+    /* Coalesces the notifications of changes of the tables */
+    private ChangeNotifier mChangeNotifier;
+
+    /* Compiled statements of the most frequent writes, see getStatements() */
+    private StatementCache mStatements;
+
+    /* Results of the most recent queries of the tables, invalidated by the writes */
+    private final QueryCache mQueryCache = new QueryCache();
+
     @Override
     public boolean onCreate() {
         mListDbHelper = new ListDbHelper(getContext());
+        mChangeNotifier = new ChangeNotifier(getContext().getContentResolver());
+
+        // Both tables are sorted by their sort keys, which must match the current locale. They
+        // are checked when the app starts and when the locale changes, instead of before queries.
+        getContext().registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                updateSortKeys();
+            }
+        }, new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+        updateSortKeys();
         return true;
     }
 
@@ -58,6 +130,24 @@ public class ListContentProvider extends ContentProvider {
         SQLiteDatabase db = mListDbHelper.getReadableDatabase();
         Cursor cursor;
         int match = sUriMatcher.match(uri);
+
+        // The whole list, a product of the list, and pages of the history are queried again and
+        // again by loaders and services. Searches and the journal of changes are not, nor the
+        // list read after the journal, which must not be older than the changes read.
+        boolean cached = (match == LIST || match == LIST_ID || match == HISTORY)
+                && !uri.getBooleanQueryParameter(ListContract.ListEntry.QUERY_PARAMETER_UNCACHED, false);
+        String key = null;
+        long generation = 0;
+        if (cached) {
+            key = QueryCache.key(uri, strings, s, strings1, s1);
+            cursor = mQueryCache.get(key);
+            if (cursor != null) {
+                if (getContext() != null) cursor.setNotificationUri(getContext().getContentResolver(), uri);
+                return cursor;
+            }
+            generation = mQueryCache.getGeneration(QueryCache.table(uri));
+        }
+
         switch (match) {
             case LIST:
                 cursor = db.query(ListContract.ListEntry.TABLE_NAME,
@@ -79,6 +169,16 @@ public class ListContentProvider extends ContentProvider {
                         null,
                         s1);
                 break;
+            case LIST_CHANGES:
+                // The changes are read along with the current values of the products
+                cursor = db.query(ListContract.ListChangeEntry.VIEW_NAME,
+                        strings,
+                        s,
+                        strings1,
+                        null,
+                        null,
+                        s1);
+                break;
             case HISTORY:
                 cursor = db.query(ListContract.HistoryEntry.TABLE_NAME,
                         strings,
@@ -86,13 +186,20 @@ public class ListContentProvider extends ContentProvider {
                         strings1,
                         null,
                         null,
-                        s1);
+                        s1,
+                        buildLimitClause(uri));
+                break;
+            case HISTORY_SEARCH:
+                // Projection, selection and sort order are imposed by the search
+                cursor = searchHistory(db, uri);
                 break;
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
 
+        if (cached) cursor = mQueryCache.put(QueryCache.table(uri), key, generation, cursor);
+
         // Set a notification URI on the Cursor and return that Cursor
         // The Notification Uri allows the cursor to be notified of changes
         // by the other methods (delete, insert, update) that call notifyChange(uri)
@@ -114,7 +221,17 @@ public class ListContentProvider extends ContentProvider {
         switch (match) {
             case LIST:
                 try {
-                    id = db.insertWithOnConflict(ListContract.ListEntry.TABLE_NAME, null, contentValues, SQLiteDatabase.CONFLICT_IGNORE);
+                    if (isSimpleListInsertion(contentValues)) {
+                        String product = contentValues.getAsString(ListContract.ListEntry.COLUMN_PRODUCT);
+                        id = getStatements(db).insertIntoList(product,
+                                contentValues.getAsInteger(ListContract.ListEntry.COLUMN_PRIORITY),
+                                contentValues.getAsString(ListContract.ListEntry.COLUMN_ANNOTATION),
+                                SortKeys.compute(product));
+                    } else {
+                        id = db.insertWithOnConflict(ListContract.ListEntry.TABLE_NAME, null,
+                                SortKeys.withSortKey(contentValues, ListContract.ListEntry.COLUMN_PRODUCT),
+                                SQLiteDatabase.CONFLICT_IGNORE);
+                    }
                     if (id != -1) {
                         // If id == -1, don't update the value of returnUri from Uri.EMPTY
                         // in order to notify of a duplication (and no insertion).
@@ -127,9 +244,18 @@ public class ListContentProvider extends ContentProvider {
                 break;
             case HISTORY:
                 try {
-                    id = db.insertWithOnConflict(ListContract.HistoryEntry.TABLE_NAME, null, contentValues, SQLiteDatabase.CONFLICT_IGNORE);
+                    if (isSimpleHistoryInsertion(contentValues)) {
+                        String product = contentValues.getAsString(ListContract.HistoryEntry.COLUMN_PRODUCT);
+                        id = getStatements(db).insertIntoHistory(product, SortKeys.compute(product));
+                    } else {
+                        id = db.insertWithOnConflict(ListContract.HistoryEntry.TABLE_NAME, null,
+                                SortKeys.withSortKey(contentValues, ListContract.HistoryEntry.COLUMN_PRODUCT),
+                                SQLiteDatabase.CONFLICT_IGNORE);
+                    }
                     if (id != -1) {
                         returnUri = ContentUris.withAppendedId(ListContract.HistoryEntry.CONTENT_URI, id);
+                        HistorySuggestionCache.getInstance().onInserted(id,
+                                contentValues.getAsString(ListContract.HistoryEntry.COLUMN_PRODUCT));
                     }
                 }
                 catch (SQLiteConstraintException exception) {
@@ -140,7 +266,7 @@ public class ListContentProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (id > 0) {
-            if (getContext() != null) getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return returnUri;
     }
@@ -158,23 +284,22 @@ public class ListContentProvider extends ContentProvider {
                 rowsDeleted = db.delete(ListContract.ListEntry.TABLE_NAME, s, strings);
                 break;
             case LIST_ID:
-                String selection = ListContract.ListEntry._ID + "=?";
-                String [] selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                rowsDeleted = db.delete(ListContract.ListEntry.TABLE_NAME, selection, selectionArgs);
+                rowsDeleted = getStatements(db).deleteFromList(ContentUris.parseId(uri));
                 break;
             case HISTORY:
                 rowsDeleted = db.delete(ListContract.HistoryEntry.TABLE_NAME, s, strings);
+                if (rowsDeleted != 0) HistorySuggestionCache.getInstance().invalidate();
                 break;
             case HISTORY_ID:
-                String selection2 = ListContract.HistoryEntry._ID + "=?";
-                String [] selectionArgs2 = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                rowsDeleted = db.delete(ListContract.HistoryEntry.TABLE_NAME, selection2, selectionArgs2);
+                long id = ContentUris.parseId(uri);
+                rowsDeleted = getStatements(db).deleteFromHistory(id);
+                if (rowsDeleted != 0) HistorySuggestionCache.getInstance().onDeleted(id);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsDeleted != 0) {
-            if (getContext() != null) getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
@@ -187,29 +312,335 @@ public class ListContentProvider extends ContentProvider {
         int match = sUriMatcher.match(uri);
         switch(match) {
             case LIST_ID:
-                String selection = ListContract.ListEntry._ID + "=?";
-                String [] selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                rowsUpdated = db.update(ListContract.ListEntry.TABLE_NAME, contentValues, selection, selectionArgs);
+                if (isPriorityAndAnnotationUpdate(contentValues)) {
+                    // The update of DatabaseUtils.updateProductPriorityAndAnnotation()
+                    rowsUpdated = getStatements(db).updateListPriorityAndAnnotation(ContentUris.parseId(uri),
+                            contentValues.getAsInteger(ListContract.ListEntry.COLUMN_PRIORITY),
+                            contentValues.getAsString(ListContract.ListEntry.COLUMN_ANNOTATION));
+                } else {
+                    String selection = ListContract.ListEntry._ID + "=?";
+                    String [] selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
+                    rowsUpdated = db.update(ListContract.ListEntry.TABLE_NAME,
+                            SortKeys.withSortKey(contentValues, ListContract.ListEntry.COLUMN_PRODUCT),
+                            selection, selectionArgs);
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            if (getContext() != null) getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
 
-    // Returns the number of new rows
+    // Used by HistoryActivity to add several products to the list at once.
+    // All rows are inserted in a single transaction through one precompiled statement, and observers
+    // are notified only once at the end. Returns the number of new rows (duplicates are ignored).
     @Override
     public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        String table;
+        String productColumn;
+        int match = sUriMatcher.match(uri);
+        switch (match) {
+            case LIST:
+                table = ListContract.ListEntry.TABLE_NAME;
+                productColumn = ListContract.ListEntry.COLUMN_PRODUCT;
+                break;
+            case HISTORY:
+                table = ListContract.HistoryEntry.TABLE_NAME;
+                productColumn = ListContract.HistoryEntry.COLUMN_PRODUCT;
+                break;
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+        if (values.length == 0) return 0;
 
-        Uri newUri;
+        SQLiteDatabase db = mListDbHelper.getWritableDatabase();
         int nb = 0;
-        for (ContentValues cv : values) {
-            newUri = insert(uri, cv);
-            if (newUri != null && !newUri.equals(Uri.EMPTY)) nb++;
+        // A statement is compiled for the columns of the first values and only recompiled if
+        // following values have different columns, which does not happen in practice.
+        ArrayList<SQLiteStatement> statements = new ArrayList<>();
+        SQLiteStatement statement = null;
+        String[] columns = null;
+        // Ids of the inserted rows (-1 for duplicates), used to update suggestions once committed
+        long[] ids = new long[values.length];
+        db.beginTransaction();
+        try {
+            for (int k = 0; k < values.length; k++) {
+                ContentValues cv = SortKeys.withSortKey(values[k], productColumn);
+                if (columns == null || !hasColumns(cv, columns)) {
+                    columns = cv.keySet().toArray(new String[cv.size()]);
+                    statement = compileInsertStatement(db, table, columns);
+                    statements.add(statement);
+                }
+                statement.clearBindings();
+                for (int i = 0; i < columns.length; i++) {
+                    DatabaseUtils.bindObjectToProgram(statement, i + 1, cv.get(columns[i]));
+                }
+                // executeInsert() returns -1 when the row is ignored because of a duplication
+                ids[k] = statement.executeInsert();
+                if (ids[k] != -1) nb++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            for (SQLiteStatement s : statements) s.close();
+        }
+        if (match == HISTORY) {
+            for (int k = 0; k < values.length; k++) {
+                if (ids[k] != -1) HistorySuggestionCache.getInstance().onInserted(ids[k],
+                        values[k].getAsString(ListContract.HistoryEntry.COLUMN_PRODUCT));
+            }
+        }
+        if (nb > 0) {
+            notifyChange(uri);
         }
         return nb;
     }
+
+    // Used by HistoryActivity to delete several products from history at once.
+    // All operations are applied in a single transaction and each Uri is notified only once,
+    // after the transaction has been committed.
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = mListDbHelper.getWritableDatabase();
+        ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+        boolean successful = false;
+        mChangeNotifier.beginBatch();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < results.length; i++) {
+                ContentProviderOperation operation = operations.get(i);
+                // Let other threads access the database during very large batches
+                if (i > 0 && (operation.isYieldAllowed() || i % MAX_OPERATIONS_PER_YIELD_POINT == 0)) {
+                    db.yieldIfContendedSafely();
+                }
+                results[i] = operation.apply(this, results, i);
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            db.endTransaction();
+            // Results read during the batch, before it was committed, are outdated
+            mQueryCache.invalidate(ListContract.PATH_LIST);
+            mQueryCache.invalidate(ListContract.PATH_HISTORY);
+            mChangeNotifier.endBatch(successful);
+            // Suggestions were updated by operations that have been rolled back
+            if (!successful) HistorySuggestionCache.getInstance().invalidate();
+        }
+        return results;
+    }
+
+    // Used by ListActivity to add a typed product to both tables, and by HistoryActivity to add the
+    // selected products of the history to the list.
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        switch (method) {
+            case ListContract.METHOD_ADD_PRODUCT:
+                if (arg == null) throw new IllegalArgumentException("No product to add");
+                return addProduct(arg);
+            case ListContract.METHOD_ADD_HISTORY_TO_LIST:
+                long[] ids = extras != null ? extras.getLongArray(ListContract.EXTRA_IDS) : null;
+                Bundle result = new Bundle();
+                result.putInt(ListContract.EXTRA_COUNT, addHistoryToList(ids));
+                return result;
+            case ListContract.METHOD_GET_QUERY_CACHE_STATS:
+                Bundle stats = new Bundle();
+                stats.putInt(ListContract.EXTRA_HITS, mQueryCache.getNbOfHits());
+                stats.putInt(ListContract.EXTRA_MISSES, mQueryCache.getNbOfMisses());
+                return stats;
+            default:
+                return super.call(method, arg, extras);
+        }
+    }
+
+    /* Inserts a product into both tables in a single transaction, then notifies each modified
+     * table once. Returns the _IDs of the new rows, -1 for a table that already had the product. */
+    private Bundle addProduct(String product) {
+        byte[] sortKey = SortKeys.compute(product);
+        SQLiteDatabase db = mListDbHelper.getWritableDatabase();
+        StatementCache statements = getStatements(db);
+        long listId;
+        long historyId;
+        db.beginTransaction();
+        try {
+            listId = statements.insertIntoList(product, ListContract.ListEntry.DEFAULT_PRIORITY_PRODUCT, null, sortKey);
+            historyId = statements.insertIntoHistory(product, sortKey);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (listId != -1) {
+            notifyChange(ListContract.ListEntry.CONTENT_URI);
+        }
+        if (historyId != -1) {
+            HistorySuggestionCache.getInstance().onInserted(historyId, product);
+            notifyChange(ListContract.HistoryEntry.CONTENT_URI);
+        }
+        Bundle result = new Bundle();
+        result.putLong(ListContract.EXTRA_LIST_ID, listId);
+        result.putLong(ListContract.EXTRA_HISTORY_ID, historyId);
+        return result;
+    }
+
+    /* Copies the products of the history with the given ids to the list, ignoring those already
+     * in the list. Returns the number of products added. */
+    private int addHistoryToList(@Nullable long[] ids) {
+        if (ids == null || ids.length == 0) return 0;
+        SQLiteDatabase db = mListDbHelper.getWritableDatabase();
+        SQLiteStatement statement =
+                db.compileStatement(SQL_ADD_HISTORY_TO_LIST + ListContract.buildIdSelection(ids));
+        int nb;
+        try {
+            // Counts the inserted rows, ignored duplicates are not counted
+            nb = statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+        if (nb > 0) {
+            notifyChange(ListContract.ListEntry.CONTENT_URI);
+        }
+        return nb;
+    }
+
+    /* Recomputes the sort keys of both tables if the locale has changed, as a write of
+     * DataExecutor, and notifies both tables so that they are queried again in the new order. */
+    private void updateSortKeys() {
+        DataExecutor.getInstance().startWrite(DataExecutor.UPDATE_SORT_KEYS, DataExecutor.PRIORITY_BACKGROUND,
+                new DataExecutor.Operation<Void>() {
+                    @Override
+                    public Void run() {
+                        if (mListDbHelper.updateSortKeysIfLocaleChanged(mListDbHelper.getWritableDatabase())) {
+                            notifyChange(ListContract.ListEntry.CONTENT_URI);
+                            notifyChange(ListContract.HistoryEntry.CONTENT_URI);
+                        }
+                        return null;
+                    }
+                }, null);
+    }
+
+    /* Notifies observers of a change of the given Uri. Single row Uris are merged into the Uri of
+     * their table, which also notifies the observers of the rows, and notifications of a table are
+     * coalesced by ChangeNotifier: each table is notified at most once per batch and per window. */
+    private void notifyChange(Uri uri) {
+        mQueryCache.invalidate(QueryCache.table(uri));
+        switch (sUriMatcher.match(uri)) {
+            case LIST_ID:
+                mChangeNotifier.notifyChange(ListContract.ListEntry.CONTENT_URI);
+                break;
+            case HISTORY_ID:
+                mChangeNotifier.notifyChange(ListContract.HistoryEntry.CONTENT_URI);
+                break;
+            default:
+                mChangeNotifier.notifyChange(uri);
+        }
+    }
+
+    /* Searches the history for products with words starting with the words of the searched text,
+     * which is the last segment of the Uri. This is a lookup of the full-text index of history
+     * instead of a scan of the whole table. */
+    private static Cursor searchHistory(SQLiteDatabase db, Uri uri) {
+        String text = uri.getLastPathSegment();
+        int limit = getIntParameter(uri, ListContract.HistoryEntry.QUERY_PARAMETER_LIMIT, DEFAULT_SEARCH_LIMIT);
+
+        // Each word is searched as a prefix: "gre app" becomes "gre*" AND "app*"
+        StringBuilder match = new StringBuilder();
+        for (String word : text.split("\\s+")) {
+            word = word.replace("\"", "");
+            if (word.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append('"').append(word).append("*\"");
+        }
+        if (match.length() == 0) {
+            // Nothing to search for, return an empty Cursor
+            return db.query(ListContract.HistoryEntry.TABLE_NAME,
+                    new String[] {ListContract.HistoryEntry._ID, ListContract.HistoryEntry.COLUMN_PRODUCT},
+                    "0", null, null, null, null);
+        }
+
+        String prefix = text.trim().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return db.rawQuery(SQL_SEARCH_HISTORY + limit, new String[] {match.toString(), prefix});
+    }
+
+    /* Builds the LIMIT clause of a query from the limit and offset parameters of the Uri.
+     * Returns null, meaning no limit, if the Uri has no limit parameter. */
+    @Nullable
+    private static String buildLimitClause(Uri uri) {
+        int limit = getIntParameter(uri, ListContract.HistoryEntry.QUERY_PARAMETER_LIMIT, -1);
+        if (limit < 0) return null;
+        int offset = getIntParameter(uri, ListContract.HistoryEntry.QUERY_PARAMETER_OFFSET, 0);
+        return offset > 0 ? offset + "," + limit : String.valueOf(limit);
+    }
+
+    /* Returns the value of an integer query parameter of the Uri, or the default value if the Uri
+     * has no such parameter or if it is not an integer. */
+    private static int getIntParameter(Uri uri, String name, int defaultValue) {
+        String parameter = uri.getQueryParameter(name);
+        if (parameter == null) return defaultValue;
+        try {
+            return Integer.parseInt(parameter);
+        } catch (NumberFormatException exception) {
+            return defaultValue;
+        }
+    }
+
+    /* Compiles an 'INSERT OR IGNORE' statement for the given table and columns. Values are to be
+     * bound in the order of the columns array. */
+    private static SQLiteStatement compileInsertStatement(SQLiteDatabase db, String table, String[] columns) {
+        StringBuilder sql = new StringBuilder("INSERT OR IGNORE INTO ").append(table).append(" (");
+        StringBuilder bindings = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(',');
+                bindings.append(',');
+            }
+            sql.append(columns[i]);
+            bindings.append('?');
+        }
+        sql.append(") VALUES (").append(bindings).append(')');
+        return db.compileStatement(sql.toString());
+    }
+
+    /* Returns the compiled statements of the most frequent writes to the database */
+    private synchronized StatementCache getStatements(SQLiteDatabase db) {
+        if (mStatements == null || !mStatements.isFor(db)) {
+            if (mStatements != null) mStatements.close();
+            mStatements = new StatementCache(db);
+        }
+        return mStatements;
+    }
+
+    /* Returns true if the values of an insertion into the list can be written by StatementCache:
+     * a product and a priority, and optionally an annotation. */
+    private static boolean isSimpleListInsertion(@Nullable ContentValues cv) {
+        if (cv == null || cv.getAsString(ListContract.ListEntry.COLUMN_PRODUCT) == null
+                || cv.getAsInteger(ListContract.ListEntry.COLUMN_PRIORITY) == null) return false;
+        return cv.size() == (cv.containsKey(ListContract.ListEntry.COLUMN_ANNOTATION) ? 3 : 2);
+    }
+
+    /* Returns true if the values of an insertion into the history can be written by StatementCache:
+     * a product only. */
+    private static boolean isSimpleHistoryInsertion(@Nullable ContentValues cv) {
+        return cv != null && cv.size() == 1 && cv.getAsString(ListContract.HistoryEntry.COLUMN_PRODUCT) != null;
+    }
+
+    /* Returns true if the values of an update of the list are a priority and an annotation */
+    private static boolean isPriorityAndAnnotationUpdate(@Nullable ContentValues cv) {
+        return cv != null && cv.size() == 2 && cv.containsKey(ListContract.ListEntry.COLUMN_ANNOTATION)
+                && cv.getAsInteger(ListContract.ListEntry.COLUMN_PRIORITY) != null;
+    }
+
+    /* Returns true if the ContentValues contain exactly the given columns. */
+    private static boolean hasColumns(ContentValues cv, String[] columns) {
+        if (cv.size() != columns.length) return false;
+        for (String column : columns) {
+            if (!cv.containsKey(column)) return false;
+        }
+        return true;
+    }
 }
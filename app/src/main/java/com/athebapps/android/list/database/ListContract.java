@@ -15,23 +15,76 @@ public class ListContract {
     static final String PATH_LIST = "list";
     /** Identifier of the history table (to append to the base Uri) */
     static final String PATH_HISTORY = "history";
+    /** Identifier of a search in the history table (to append to the history Uri) */
+    static final String PATH_SEARCH = "search";
+    /** Identifier of the journal of the changes of the list table (to append to the list Uri) */
+    static final String PATH_CHANGES = "changes";
+    /** Method of the Content Provider adding products of the history to the list, see
+     *  ListContentProvider.call(). The _IDs of the products in the history table are passed
+     *  in EXTRA_IDS, the number of products added to the list is returned in EXTRA_COUNT. */
+    public static final String METHOD_ADD_HISTORY_TO_LIST = "add_history_to_list";
+    /** Method of the Content Provider adding a product to both the list and the history in a
+     *  single transaction, see ListContentProvider.call(). The product is passed as the argument
+     *  of the call, the _IDs of the new rows are returned in EXTRA_LIST_ID and EXTRA_HISTORY_ID. */
+    public static final String METHOD_ADD_PRODUCT = "add_product";
+    /** Extra of the result of a call to the Content Provider: the _ID of the row inserted in the
+     *  list table, -1 if the product was already in the list */
+    public static final String EXTRA_LIST_ID = "list_id";
+    /** Extra of the result of a call to the Content Provider: the _ID of the row inserted in the
+     *  history table, -1 if the product was already in the history */
+    public static final String EXTRA_HISTORY_ID = "history_id";
+    /** Method of the Content Provider returning the counters of its cache of query results, the
+     *  number of queries answered from the cache in EXTRA_HITS and of the others in EXTRA_MISSES */
+    public static final String METHOD_GET_QUERY_CACHE_STATS = "get_query_cache_stats";
+    /** Extra of the result of a call to the Content Provider: a number of cache hits */
+    public static final String EXTRA_HITS = "hits";
+    /** Extra of the result of a call to the Content Provider: a number of cache misses */
+    public static final String EXTRA_MISSES = "misses";
+    /** Extra of a call to the Content Provider: the _IDs (long array) of the rows concerned */
+    public static final String EXTRA_IDS = "ids";
+    /** Extra of the result of a call to the Content Provider: the number of rows affected */
+    public static final String EXTRA_COUNT = "count";
     /** All Uris will be formed using this base */
     private static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
 
     private ListContract() {}
 
+    /** Builds a selection matching the rows with the given _IDs, such as "_id IN (1,2,3)".
+     *  The ids are written in the selection, so that there is no limit on their number as there
+     *  is for selection arguments. */
+    public static String buildIdSelection(long[] ids) {
+        StringBuilder selection = new StringBuilder(BaseColumns._ID).append(" IN (");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) selection.append(',');
+            selection.append(ids[i]);
+        }
+        return selection.append(')').toString();
+    }
+
     /** Defines the table contents storing the current grocery list.
      *  BaseColumns adds the unique _ID column name. */
     public static class ListEntry implements BaseColumns {
 
         /** The Uri identifying this table in the Content Provider. */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_LIST);
+        /** Query parameter of the Uri of the table which, set to true, reads the table from the
+         *  database rather than from the cache of the Content Provider, which is only invalidated
+         *  once a write has been committed. Used to read the table after the journal of its
+         *  changes, so that it includes at least the changes read from the journal. */
+        public static final String QUERY_PARAMETER_UNCACHED = "uncached";
+        /** The Uri of the table read from the database, see QUERY_PARAMETER_UNCACHED. */
+        public static final Uri UNCACHED_CONTENT_URI = CONTENT_URI.buildUpon()
+                .appendQueryParameter(QUERY_PARAMETER_UNCACHED, "true")
+                .build();
         /** Column corresponding to the name of the product */
         public static final String COLUMN_PRODUCT = "product";
         /** Column corresponding to the annotation of the product */
         public static final String COLUMN_ANNOTATION = "annotation";
         /** Column corresponding to the priority of the product */
         public static final String COLUMN_PRIORITY = "priority";
+        /** Column storing the collation key of the product for the current locale, used to sort
+         *  products by name. Maintained by the Content Provider. */
+        public static final String COLUMN_SORT_KEY = "sort_key";
         /** COLUMN_PRIORITY value for high priority */
         public static final int HIGH_PRIORITY_PRODUCT = 1;
         /** COLUMN_PRIORITY value for default priority */
@@ -42,6 +95,50 @@ public class ListContract {
         static final String TABLE_NAME = "list";
     }
 
+    /** Defines the journal of the changes of the list table, one row per inserted, updated or
+     *  deleted product in the order of the changes. The journal is maintained by triggers and only
+     *  keeps the most recent changes: a reader that has fallen too far behind must reload the
+     *  whole list. Each change is returned along with the current values of the product,
+     *  null if it has been deleted since. */
+    public static class ListChangeEntry implements BaseColumns {
+
+        /** The Uri identifying the journal in the Content Provider, notified along with the list.
+         *  _ID is the sequence number of the change. */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(ListEntry.CONTENT_URI, PATH_CHANGES);
+        /** Column corresponding to the _ID of the changed product in the list table */
+        public static final String COLUMN_ROW_ID = "row_id";
+        /** Column corresponding to the operation, one of the OPERATION_ values */
+        public static final String COLUMN_OPERATION = "operation";
+        /** Column corresponding to the changed columns, a combination of the CHANGED_ flags */
+        public static final String COLUMN_CHANGED_COLUMNS = "changed_columns";
+        /** COLUMN_OPERATION value for an insertion */
+        public static final int OPERATION_INSERT = 1;
+        /** COLUMN_OPERATION value for an update */
+        public static final int OPERATION_UPDATE = 2;
+        /** COLUMN_OPERATION value for a deletion */
+        public static final int OPERATION_DELETE = 3;
+        /** COLUMN_OPERATION value of a change of all the rows at once, such as the sort keys
+         *  recomputed for a new locale, after which the whole list must be queried again.
+         *  Its COLUMN_ROW_ID is 0. */
+        public static final int OPERATION_RELOAD = 4;
+        /** COLUMN_CHANGED_COLUMNS flag for ListEntry.COLUMN_PRODUCT */
+        public static final int CHANGED_PRODUCT = 1;
+        /** COLUMN_CHANGED_COLUMNS flag for ListEntry.COLUMN_ANNOTATION */
+        public static final int CHANGED_ANNOTATION = 2;
+        /** COLUMN_CHANGED_COLUMNS flag for ListEntry.COLUMN_PRIORITY */
+        public static final int CHANGED_PRIORITY = 4;
+        /** COLUMN_CHANGED_COLUMNS flag for ListEntry.COLUMN_SORT_KEY */
+        public static final int CHANGED_SORT_KEY = 8;
+        /** COLUMN_CHANGED_COLUMNS value of an insertion or a deletion */
+        public static final int CHANGED_ALL = 15;
+        /** Internal name for the table. */
+        static final String TABLE_NAME = "list_changes";
+        /** Internal name for the view joining the changes with the current values of the products */
+        static final String VIEW_NAME = "list_changes_view";
+        /** Maximum number of changes kept in the journal */
+        static final int MAX_CHANGES = 1000;
+    }
+
     /** Defines the table contents storing the history of previously entered items. */
     public static class HistoryEntry implements BaseColumns {
 
@@ -52,7 +149,40 @@ public class ListContract {
          *  repeated in both tables. The reason is it is possible to have a product in one of the
          *  tables and not in the other. */
         public static final String COLUMN_PRODUCT = "product";
+        /** Column storing the collation key of the product for the current locale, used to sort
+         *  products by name. Maintained by the Content Provider. */
+        public static final String COLUMN_SORT_KEY = "sort_key";
+        /** Query parameter of a search Uri, or of the Uri of the table, setting the maximum number
+         *  of products returned. */
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+        /** Query parameter of the Uri of the table setting the number of products skipped before
+         *  the first one returned. Only used along with QUERY_PARAMETER_LIMIT. */
+        public static final String QUERY_PARAMETER_OFFSET = "offset";
         /** Internal name for the table. */
         static final String TABLE_NAME = "history";
+        /** Internal name for the full-text index of the table, used to search products. */
+        static final String FTS_TABLE_NAME = "history_fts";
+
+        /** Builds the Uri used to query a page of the history table.
+         *  @param limit the maximum number of products returned
+         *  @param offset the number of products skipped, in the sort order of the query */
+        public static Uri buildPageUri(int limit, int offset) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .appendQueryParameter(QUERY_PARAMETER_OFFSET, String.valueOf(offset))
+                    .build();
+        }
+
+        /** Builds the Uri used to search for products of the history with words starting with
+         *  the words of the given text.
+         *  @param text the text to search for, must not be empty
+         *  @param limit the maximum number of products returned */
+        public static Uri buildSearchUri(CharSequence text, int limit) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_SEARCH)
+                    .appendPath(text.toString())
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
     }
 }
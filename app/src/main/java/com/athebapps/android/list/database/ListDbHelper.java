@@ -1,8 +1,11 @@
 package com.athebapps.android.list.database;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
 import java.util.Locale;
 
@@ -13,7 +16,7 @@ import java.util.Locale;
 class ListDbHelper extends SQLiteOpenHelper {
 
     /* The database version number. To be incremented every time the database schema is changed. */
-    private static final int DATABASE_VERSION = 5;
+    private static final int DATABASE_VERSION = 9;
 
     /* The name of the file for the database */
     private static final String DATABASE_NAME = "list.db";
@@ -25,6 +28,7 @@ class ListDbHelper extends SQLiteOpenHelper {
                     + ListContract.ListEntry.COLUMN_PRODUCT + " TEXT NOT NULL, "
                     + ListContract.ListEntry.COLUMN_ANNOTATION + " TEXT, "
                     + ListContract.ListEntry.COLUMN_PRIORITY + " INTEGER NOT NULL, "
+                    + ListContract.ListEntry.COLUMN_SORT_KEY + " BLOB, "
                     + " UNIQUE (" + ListContract.ListEntry.COLUMN_PRODUCT + ") ON CONFLICT IGNORE);";
 
     /* SQL query corresponding to the deletion of the list table */
@@ -36,14 +40,215 @@ class ListDbHelper extends SQLiteOpenHelper {
             "CREATE TABLE " + ListContract.HistoryEntry.TABLE_NAME + " ("
                     + ListContract.HistoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
                     + ListContract.HistoryEntry.COLUMN_PRODUCT + " TEXT NOT NULL, "
+                    + ListContract.HistoryEntry.COLUMN_SORT_KEY + " BLOB, "
                     + " UNIQUE (" + ListContract.HistoryEntry.COLUMN_PRODUCT + ") ON CONFLICT IGNORE);";
 
     /* SQL query corresponding to the deletion of the history table */
     private static final String SQL_DELETE_HISTORY_ENTRIES =
             "DROP TABLE IF EXISTS " + ListContract.HistoryEntry.TABLE_NAME;
 
+    /* SQL query corresponding to the creation of the full-text index of the history table.
+     * The docid of a row of the index is the _ID of the indexed product in the history table. */
+    private static final String SQL_CREATE_HISTORY_FTS =
+            "CREATE VIRTUAL TABLE " + ListContract.HistoryEntry.FTS_TABLE_NAME + " USING fts4("
+                    + ListContract.HistoryEntry.COLUMN_PRODUCT + ");";
+
+    /* SQL query filling the full-text index with the products already in the history table */
+    private static final String SQL_POPULATE_HISTORY_FTS =
+            "INSERT INTO " + ListContract.HistoryEntry.FTS_TABLE_NAME
+                    + " (docid, " + ListContract.HistoryEntry.COLUMN_PRODUCT + ") SELECT "
+                    + ListContract.HistoryEntry._ID + ", " + ListContract.HistoryEntry.COLUMN_PRODUCT
+                    + " FROM " + ListContract.HistoryEntry.TABLE_NAME + ";";
+
+    /* SQL queries corresponding to the creation of the triggers keeping the full-text index
+     * in sync with the history table */
+    private static final String[] SQL_CREATE_HISTORY_FTS_TRIGGERS = {
+            "CREATE TRIGGER history_fts_insert AFTER INSERT ON " + ListContract.HistoryEntry.TABLE_NAME
+                    + " BEGIN INSERT INTO " + ListContract.HistoryEntry.FTS_TABLE_NAME
+                    + " (docid, " + ListContract.HistoryEntry.COLUMN_PRODUCT + ") VALUES (new."
+                    + ListContract.HistoryEntry._ID + ", new." + ListContract.HistoryEntry.COLUMN_PRODUCT
+                    + "); END;",
+            "CREATE TRIGGER history_fts_update AFTER UPDATE OF " + ListContract.HistoryEntry.COLUMN_PRODUCT
+                    + " ON " + ListContract.HistoryEntry.TABLE_NAME
+                    + " BEGIN UPDATE " + ListContract.HistoryEntry.FTS_TABLE_NAME
+                    + " SET docid = new." + ListContract.HistoryEntry._ID + ", "
+                    + ListContract.HistoryEntry.COLUMN_PRODUCT + " = new." + ListContract.HistoryEntry.COLUMN_PRODUCT
+                    + " WHERE docid = old." + ListContract.HistoryEntry._ID + "; END;",
+            "CREATE TRIGGER history_fts_delete AFTER DELETE ON " + ListContract.HistoryEntry.TABLE_NAME
+                    + " BEGIN DELETE FROM " + ListContract.HistoryEntry.FTS_TABLE_NAME
+                    + " WHERE docid = old." + ListContract.HistoryEntry._ID + "; END;"
+    };
+
+    /* SQL query corresponding to the deletion of the full-text index of the history table.
+     * Its triggers are dropped along with the history table. */
+    private static final String SQL_DELETE_HISTORY_FTS =
+            "DROP TABLE IF EXISTS " + ListContract.HistoryEntry.FTS_TABLE_NAME;
+
+    /* SQL queries corresponding to the creation of the indexes on the sort key columns. The list is
+     * sorted either by priority then name, or by name only; the history is sorted by name. */
+    private static final String[] SQL_CREATE_SORT_KEY_INDEXES = {
+            "CREATE INDEX list_priority_sort_key ON " + ListContract.ListEntry.TABLE_NAME + " ("
+                    + ListContract.ListEntry.COLUMN_PRIORITY + ", " + ListContract.ListEntry.COLUMN_SORT_KEY + ");",
+            "CREATE INDEX list_sort_key ON " + ListContract.ListEntry.TABLE_NAME + " ("
+                    + ListContract.ListEntry.COLUMN_SORT_KEY + ");",
+            "CREATE INDEX history_sort_key ON " + ListContract.HistoryEntry.TABLE_NAME + " ("
+                    + ListContract.HistoryEntry.COLUMN_SORT_KEY + ");"
+    };
+
+    /* SQL query corresponding to the creation of the journal of the changes of the list table */
+    private static final String SQL_CREATE_LIST_CHANGES =
+            "CREATE TABLE " + ListContract.ListChangeEntry.TABLE_NAME + " ("
+                    + ListContract.ListChangeEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + ListContract.ListChangeEntry.COLUMN_ROW_ID + " INTEGER NOT NULL, "
+                    + ListContract.ListChangeEntry.COLUMN_OPERATION + " INTEGER NOT NULL, "
+                    + ListContract.ListChangeEntry.COLUMN_CHANGED_COLUMNS + " INTEGER NOT NULL);";
+
+    /* SQL query corresponding to the creation of the view returning the changes along with the
+     * current values of the products, null for the products deleted since */
+    private static final String SQL_CREATE_LIST_CHANGES_VIEW =
+            "CREATE VIEW " + ListContract.ListChangeEntry.VIEW_NAME + " AS SELECT"
+                    + " c." + ListContract.ListChangeEntry._ID + " AS " + ListContract.ListChangeEntry._ID
+                    + ", c." + ListContract.ListChangeEntry.COLUMN_ROW_ID + " AS " + ListContract.ListChangeEntry.COLUMN_ROW_ID
+                    + ", c." + ListContract.ListChangeEntry.COLUMN_OPERATION + " AS " + ListContract.ListChangeEntry.COLUMN_OPERATION
+                    + ", c." + ListContract.ListChangeEntry.COLUMN_CHANGED_COLUMNS + " AS " + ListContract.ListChangeEntry.COLUMN_CHANGED_COLUMNS
+                    + ", l." + ListContract.ListEntry.COLUMN_PRODUCT + " AS " + ListContract.ListEntry.COLUMN_PRODUCT
+                    + ", l." + ListContract.ListEntry.COLUMN_ANNOTATION + " AS " + ListContract.ListEntry.COLUMN_ANNOTATION
+                    + ", l." + ListContract.ListEntry.COLUMN_PRIORITY + " AS " + ListContract.ListEntry.COLUMN_PRIORITY
+                    + ", l." + ListContract.ListEntry.COLUMN_SORT_KEY + " AS " + ListContract.ListEntry.COLUMN_SORT_KEY
+                    + " FROM " + ListContract.ListChangeEntry.TABLE_NAME + " c LEFT JOIN "
+                    + ListContract.ListEntry.TABLE_NAME + " l ON l." + ListContract.ListEntry._ID
+                    + " = c." + ListContract.ListChangeEntry.COLUMN_ROW_ID + ";";
+
+    /* SQL queries corresponding to the creation of the triggers writing the changes of the list
+     * table to the journal, and of the trigger keeping only the most recent changes. Updates of
+     * the sort keys alone, which only happen when all of them are recomputed, are not journaled:
+     * a single OPERATION_RELOAD change is written instead, see updateSortKeysIfLocaleChanged(). */
+    private static final String[] SQL_CREATE_LIST_CHANGES_TRIGGERS = {
+            "CREATE TRIGGER list_changes_insert AFTER INSERT ON " + ListContract.ListEntry.TABLE_NAME
+                    + " BEGIN " + insertChange("new", ListContract.ListChangeEntry.OPERATION_INSERT,
+                    String.valueOf(ListContract.ListChangeEntry.CHANGED_ALL)) + " END;",
+            "CREATE TRIGGER list_changes_update AFTER UPDATE ON " + ListContract.ListEntry.TABLE_NAME
+                    + " WHEN old." + ListContract.ListEntry.COLUMN_PRODUCT + " IS NOT new." + ListContract.ListEntry.COLUMN_PRODUCT
+                    + " OR old." + ListContract.ListEntry.COLUMN_ANNOTATION + " IS NOT new." + ListContract.ListEntry.COLUMN_ANNOTATION
+                    + " OR old." + ListContract.ListEntry.COLUMN_PRIORITY + " IS NOT new." + ListContract.ListEntry.COLUMN_PRIORITY
+                    + " BEGIN " + insertChange("new", ListContract.ListChangeEntry.OPERATION_UPDATE,
+                    changedColumn(ListContract.ListEntry.COLUMN_PRODUCT, ListContract.ListChangeEntry.CHANGED_PRODUCT)
+                            + " + " + changedColumn(ListContract.ListEntry.COLUMN_ANNOTATION, ListContract.ListChangeEntry.CHANGED_ANNOTATION)
+                            + " + " + changedColumn(ListContract.ListEntry.COLUMN_PRIORITY, ListContract.ListChangeEntry.CHANGED_PRIORITY)
+                            + " + " + changedColumn(ListContract.ListEntry.COLUMN_SORT_KEY, ListContract.ListChangeEntry.CHANGED_SORT_KEY))
+                    + " END;",
+            "CREATE TRIGGER list_changes_delete AFTER DELETE ON " + ListContract.ListEntry.TABLE_NAME
+                    + " BEGIN " + insertChange("old", ListContract.ListChangeEntry.OPERATION_DELETE,
+                    String.valueOf(ListContract.ListChangeEntry.CHANGED_ALL)) + " END;",
+            "CREATE TRIGGER list_changes_trim AFTER INSERT ON " + ListContract.ListChangeEntry.TABLE_NAME
+                    + " BEGIN DELETE FROM " + ListContract.ListChangeEntry.TABLE_NAME
+                    + " WHERE " + ListContract.ListChangeEntry._ID + " <= new." + ListContract.ListChangeEntry._ID
+                    + " - " + ListContract.ListChangeEntry.MAX_CHANGES + "; END;"
+    };
+
+    /* SQL query writing to the journal that all the rows of the list table have changed */
+    private static final String SQL_INSERT_RELOAD_CHANGE =
+            "INSERT INTO " + ListContract.ListChangeEntry.TABLE_NAME + " ("
+                    + ListContract.ListChangeEntry.COLUMN_ROW_ID + ", " + ListContract.ListChangeEntry.COLUMN_OPERATION
+                    + ", " + ListContract.ListChangeEntry.COLUMN_CHANGED_COLUMNS + ") VALUES (0, "
+                    + ListContract.ListChangeEntry.OPERATION_RELOAD + ", "
+                    + ListContract.ListChangeEntry.CHANGED_SORT_KEY + ");";
+
+    /* SQL queries corresponding to the deletion of the journal of the changes of the list table.
+     * Its triggers are dropped along with the tables. */
+    private static final String SQL_DELETE_LIST_CHANGES_VIEW =
+            "DROP VIEW IF EXISTS " + ListContract.ListChangeEntry.VIEW_NAME;
+    private static final String SQL_DELETE_LIST_CHANGES =
+            "DROP TABLE IF EXISTS " + ListContract.ListChangeEntry.TABLE_NAME;
+
+    /* Name of the table storing information about the database as (name, value) pairs */
+    private static final String METADATA_TABLE_NAME = "metadata";
+
+    /* Name of the metadata holding the locale of the sort keys */
+    private static final String METADATA_SORT_KEY_LOCALE = "sort_key_locale";
+
+    /* SQL query corresponding to the creation of the metadata table */
+    private static final String SQL_CREATE_METADATA =
+            "CREATE TABLE " + METADATA_TABLE_NAME + " (name TEXT PRIMARY KEY, value TEXT);";
+
+    /* SQL query corresponding to the deletion of the metadata table */
+    private static final String SQL_DELETE_METADATA = "DROP TABLE IF EXISTS " + METADATA_TABLE_NAME;
+
+    /* Pragmas tuning the connection to the database, see onConfigure() */
+    private static final String SQL_PRAGMA_SYNCHRONOUS = "PRAGMA synchronous = NORMAL";
+    private static final String SQL_PRAGMA_CACHE_SIZE = "PRAGMA cache_size = 1000";
+    private static final String SQL_PRAGMA_TEMP_STORE = "PRAGMA temp_store = MEMORY";
+
+    /* The oldest version of the database that can be migrated. Older databases are recreated. */
+    private static final int OLDEST_MIGRATED_VERSION = 5;
+
+    /* The steps of migration of the database, in order: MIGRATIONS[i] upgrades the database from
+     * version OLDEST_MIGRATED_VERSION + i to the next version. A new step must be appended every
+     * time DATABASE_VERSION is incremented, and it must never drop user data. */
+    private static final Migration[] MIGRATIONS = {
+            // 5 -> 6: adds the full-text index of the history table
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase sqLiteDatabase) {
+                    createHistoryFts(sqLiteDatabase);
+                    sqLiteDatabase.execSQL(SQL_POPULATE_HISTORY_FTS);
+                }
+            },
+            // 6 -> 7: adds the sort key columns and their indexes
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase sqLiteDatabase) {
+                    sqLiteDatabase.execSQL("ALTER TABLE " + ListContract.ListEntry.TABLE_NAME
+                            + " ADD COLUMN " + ListContract.ListEntry.COLUMN_SORT_KEY + " BLOB");
+                    sqLiteDatabase.execSQL("ALTER TABLE " + ListContract.HistoryEntry.TABLE_NAME
+                            + " ADD COLUMN " + ListContract.HistoryEntry.COLUMN_SORT_KEY + " BLOB");
+                    // The full-text index must not be updated along with the sort keys
+                    sqLiteDatabase.execSQL("DROP TRIGGER IF EXISTS history_fts_update");
+                    sqLiteDatabase.execSQL(SQL_CREATE_HISTORY_FTS_TRIGGERS[1]);
+                    createSortKeys(sqLiteDatabase);
+                }
+            },
+            // 7 -> 8: adds the journal of the changes of the list table
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase sqLiteDatabase) {
+                    createListChanges(sqLiteDatabase);
+                }
+            },
+            // 8 -> 9: stops journaling the updates of the sort keys alone
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase sqLiteDatabase) {
+                    sqLiteDatabase.execSQL("DROP TRIGGER IF EXISTS list_changes_update");
+                    sqLiteDatabase.execSQL(SQL_CREATE_LIST_CHANGES_TRIGGERS[1]);
+                }
+            }
+    };
+
+    /* The locale of the sort keys of the database, null until it is checked */
+    private volatile String mSortKeyLocale;
+
     ListDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /* Used by tests to work on a database other than the one of the application. */
+    ListDbHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        // With write-ahead logging, the database keeps a pool of connections: the loaders reading
+        // the tables are not blocked by writes in progress on other threads, and vice versa.
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /* Called when the connection to the database is being configured, before creation or upgrade. */
+    @Override
+    public void onConfigure(SQLiteDatabase sqLiteDatabase) {
+        super.onConfigure(sqLiteDatabase);
+        // In WAL mode, NORMAL only syncs the log at checkpoints and is still safe from corruption.
+        sqLiteDatabase.execSQL(SQL_PRAGMA_SYNCHRONOUS);
+        // Both tables easily fit in the page cache, and temporary sort trees are kept in memory.
+        sqLiteDatabase.execSQL(SQL_PRAGMA_CACHE_SIZE);
+        sqLiteDatabase.execSQL(SQL_PRAGMA_TEMP_STORE);
     }
 
     /* Called when the database is created for the first time. */
@@ -52,13 +257,145 @@ class ListDbHelper extends SQLiteOpenHelper {
         sqLiteDatabase.setLocale(Locale.getDefault());
         sqLiteDatabase.execSQL(SQL_CREATE_LIST_ENTRIES);
         sqLiteDatabase.execSQL(SQL_CREATE_HISTORY_ENTRIES);
+        createHistoryFts(sqLiteDatabase);
+        createSortKeys(sqLiteDatabase);
+        createListChanges(sqLiteDatabase);
     }
 
-    /* Called whenever DATABASE_VERSION changes */
+    /* Called whenever DATABASE_VERSION changes. Applies the migration steps from the current version
+     * of the database to the new one, each of them in its own transaction. */
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int i, int i1) {
-        sqLiteDatabase.execSQL(SQL_DELETE_LIST_ENTRIES);
-        sqLiteDatabase.execSQL(SQL_DELETE_HISTORY_ENTRIES);
-        onCreate(sqLiteDatabase);
+        if (i < OLDEST_MIGRATED_VERSION) {
+            sqLiteDatabase.execSQL(SQL_DELETE_LIST_ENTRIES);
+            sqLiteDatabase.execSQL(SQL_DELETE_HISTORY_ENTRIES);
+            sqLiteDatabase.execSQL(SQL_DELETE_HISTORY_FTS);
+            sqLiteDatabase.execSQL(SQL_DELETE_METADATA);
+            sqLiteDatabase.execSQL(SQL_DELETE_LIST_CHANGES_VIEW);
+            sqLiteDatabase.execSQL(SQL_DELETE_LIST_CHANGES);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        for (int version = i; version < i1; version++) {
+            sqLiteDatabase.beginTransaction();
+            try {
+                MIGRATIONS[version - OLDEST_MIGRATED_VERSION].migrate(sqLiteDatabase);
+                sqLiteDatabase.setTransactionSuccessful();
+            } finally {
+                sqLiteDatabase.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * Recomputes the sort keys of both tables if the locale has changed since they were computed,
+     * so that products are always sorted in the order of the current locale. Cheap when the
+     * locale has not changed. Rewrites every row otherwise, so it is run as a write of
+     * DataExecutor when the app starts and when the locale changes, not before the queries.
+     * A single OPERATION_RELOAD change is written to the journal of the list.
+     * @return true if the sort keys have been recomputed
+     */
+    boolean updateSortKeysIfLocaleChanged(SQLiteDatabase sqLiteDatabase) {
+        String locale = SortKeys.currentLocale();
+        if (locale.equals(mSortKeyLocale)) return false;
+        synchronized (this) {
+            if (locale.equals(mSortKeyLocale)) return false;
+            boolean updated = false;
+            if (!locale.equals(getMetadata(sqLiteDatabase, METADATA_SORT_KEY_LOCALE))) {
+                sqLiteDatabase.beginTransaction();
+                try {
+                    computeSortKeys(sqLiteDatabase);
+                    sqLiteDatabase.execSQL(SQL_INSERT_RELOAD_CHANGE);
+                    sqLiteDatabase.setTransactionSuccessful();
+                    updated = true;
+                } finally {
+                    sqLiteDatabase.endTransaction();
+                }
+            }
+            mSortKeyLocale = locale;
+            return updated;
+        }
+    }
+
+    /* Creates the metadata table and the indexes on the sort keys, and computes the sort keys of
+     * the rows already in the tables. */
+    private static void createSortKeys(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL(SQL_CREATE_METADATA);
+        computeSortKeys(sqLiteDatabase);
+        for (String index : SQL_CREATE_SORT_KEY_INDEXES) sqLiteDatabase.execSQL(index);
+    }
+
+    /* Computes the sort keys of all the rows of both tables for the current locale, and saves
+     * this locale. Must be called in a transaction. */
+    private static void computeSortKeys(SQLiteDatabase sqLiteDatabase) {
+        computeSortKeys(sqLiteDatabase, ListContract.ListEntry.TABLE_NAME);
+        computeSortKeys(sqLiteDatabase, ListContract.HistoryEntry.TABLE_NAME);
+        ContentValues values = new ContentValues();
+        values.put("name", METADATA_SORT_KEY_LOCALE);
+        values.put("value", SortKeys.currentLocale());
+        sqLiteDatabase.insertWithOnConflict(METADATA_TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /* Computes the sort keys of all the rows of a table. Both tables have the same columns for the
+     * _ID, the product and the sort key. */
+    private static void computeSortKeys(SQLiteDatabase sqLiteDatabase, String table) {
+        Cursor cursor = sqLiteDatabase.query(table,
+                new String[] {ListContract.ListEntry._ID, ListContract.ListEntry.COLUMN_PRODUCT},
+                null, null, null, null, null);
+        SQLiteStatement statement = sqLiteDatabase.compileStatement("UPDATE " + table
+                + " SET " + ListContract.ListEntry.COLUMN_SORT_KEY + " = ? WHERE " + ListContract.ListEntry._ID + " = ?");
+        try {
+            while (cursor.moveToNext()) {
+                statement.bindBlob(1, SortKeys.compute(cursor.getString(1)));
+                statement.bindLong(2, cursor.getLong(0));
+                statement.executeUpdateDelete();
+            }
+        } finally {
+            cursor.close();
+            statement.close();
+        }
+    }
+
+    /* Returns the value of a metadata, null if there is none. */
+    private static String getMetadata(SQLiteDatabase sqLiteDatabase, String name) {
+        Cursor cursor = sqLiteDatabase.query(METADATA_TABLE_NAME, new String[] {"value"},
+                "name = ?", new String[] {name}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /* Creates the full-text index of the history table along with its triggers. */
+    private static void createHistoryFts(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL(SQL_CREATE_HISTORY_FTS);
+        for (String trigger : SQL_CREATE_HISTORY_FTS_TRIGGERS) sqLiteDatabase.execSQL(trigger);
+    }
+
+    /* Creates the journal of the changes of the list table, its view and its triggers. */
+    private static void createListChanges(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL(SQL_CREATE_LIST_CHANGES);
+        sqLiteDatabase.execSQL(SQL_CREATE_LIST_CHANGES_VIEW);
+        for (String trigger : SQL_CREATE_LIST_CHANGES_TRIGGERS) sqLiteDatabase.execSQL(trigger);
+    }
+
+    /* Statement of a trigger of the list table inserting a change into the journal.
+     * row is "new" or "old", changedColumns an SQL expression. */
+    private static String insertChange(String row, int operation, String changedColumns) {
+        return "INSERT INTO " + ListContract.ListChangeEntry.TABLE_NAME + " ("
+                + ListContract.ListChangeEntry.COLUMN_ROW_ID + ", " + ListContract.ListChangeEntry.COLUMN_OPERATION
+                + ", " + ListContract.ListChangeEntry.COLUMN_CHANGED_COLUMNS + ") VALUES ("
+                + row + "." + ListContract.ListEntry._ID + ", " + operation + ", " + changedColumns + ");";
+    }
+
+    /* SQL expression of an update trigger equal to flag if the column has changed, 0 otherwise */
+    private static String changedColumn(String column, int flag) {
+        return flag + " * (old." + column + " IS NOT new." + column + ")";
+    }
+
+    /* A step of the migration of the database from one version to the next one. */
+    private interface Migration {
+        void migrate(SQLiteDatabase sqLiteDatabase);
     }
 }
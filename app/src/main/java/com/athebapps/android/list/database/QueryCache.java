@@ -0,0 +1,241 @@
+package com.athebapps.android.list.database;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of the results of the queries of ListContentProvider, keyed on the
+ * Uri, projection, selection, selection arguments and sort order of the query.
+ * A result is kept as an immutable copy of its rows, from which each hit returns a new Cursor
+ * without copying anything. Only small results are kept, larger ones are returned as queried.
+ *
+ * Results are invalidated by table, the table of a Uri being its first path segment: every write
+ * to a table removes the results of the queries of this table. A query records the generation of
+ * its table before reading it, and its result is not kept if the table has been written since,
+ * so that a result read before a write is never returned after it.
+ */
+final class QueryCache {
+
+    /** Maximum number of results kept */
+    static final int MAX_ENTRIES = 16;
+
+    /** Maximum number of rows of a result kept */
+    static final int MAX_ROWS = 1000;
+
+    /* Cached results in access order, the eldest being removed above MAX_ENTRIES. Guarded by this. */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /* Number of writes of each table, guarded by this */
+    private final Map<String, Long> mGenerations = new HashMap<>();
+
+    /* Counters, guarded by this */
+    private int mNbOfHits;
+    private int mNbOfMisses;
+
+    /** @return the key of a query */
+    static String key(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return uri + "\u0000" + Arrays.toString(projection) + "\u0000" + selection
+                + "\u0000" + Arrays.toString(selectionArgs) + "\u0000" + sortOrder;
+    }
+
+    /** @return the table of a Uri, the unit of invalidation */
+    static String table(Uri uri) {
+        return uri.getPathSegments().get(0);
+    }
+
+    /** @return a new Cursor on the cached result of a query, null if it is not cached */
+    synchronized Cursor get(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            mNbOfMisses++;
+            return null;
+        }
+        mNbOfHits++;
+        return new SnapshotCursor(entry);
+    }
+
+    /** @return the generation of a table, to be passed to put() for a query started now */
+    synchronized long getGeneration(String table) {
+        Long generation = mGenerations.get(table);
+        return generation != null ? generation : 0;
+    }
+
+    /** Keeps the result of a query if it is small enough and its table has not been written since
+     *  the query started. The cursor is read and closed if it is kept.
+     *  @param generation the generation of the table when the query started
+     *  @return a Cursor on the result, to be returned instead of the given one */
+    Cursor put(String table, String key, long generation, Cursor cursor) {
+        if (cursor == null || cursor.getCount() > MAX_ROWS || getGeneration(table) != generation) {
+            return cursor;
+        }
+        Entry entry;
+        try {
+            entry = new Entry(table, cursor);
+        } finally {
+            cursor.close();
+        }
+        synchronized (this) {
+            if (getGeneration(table) == generation) mEntries.put(key, entry);
+        }
+        return new SnapshotCursor(entry);
+    }
+
+    /** Removes the results of the queries of a table, called on every write to the table. */
+    synchronized void invalidate(String table) {
+        mGenerations.put(table, getGeneration(table) + 1);
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mTable.equals(table)) iterator.remove();
+        }
+    }
+
+    /** @return the number of queries answered from the cache */
+    synchronized int getNbOfHits() {
+        return mNbOfHits;
+    }
+
+    /** @return the number of cacheable queries that were not in the cache */
+    synchronized int getNbOfMisses() {
+        return mNbOfMisses;
+    }
+
+    /* Immutable copy of the rows of a Cursor */
+    private static final class Entry {
+
+        final String mTable;
+        final String[] mColumns;
+        final Object[][] mRows;
+
+        Entry(String table, Cursor cursor) {
+            mTable = table;
+            mColumns = cursor.getColumnNames();
+            mRows = new Object[cursor.getCount()][];
+            int i = 0;
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext() && i < mRows.length) {
+                Object[] row = new Object[mColumns.length];
+                for (int column = 0; column < row.length; column++) {
+                    switch (cursor.getType(column)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            row[column] = cursor.getLong(column);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            row[column] = cursor.getDouble(column);
+                            break;
+                        case Cursor.FIELD_TYPE_STRING:
+                            row[column] = cursor.getString(column);
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            row[column] = cursor.getBlob(column);
+                            break;
+                        default:
+                            row[column] = null;
+                    }
+                }
+                mRows[i++] = row;
+            }
+        }
+    }
+
+    /* Cursor reading an Entry, which is shared by all the Cursors on the same result. Blobs are
+     * returned as copies, so that the Entry cannot be modified. */
+    private static final class SnapshotCursor extends AbstractCursor {
+
+        private final Entry mEntry;
+
+        SnapshotCursor(Entry entry) {
+            mEntry = entry;
+        }
+
+        @Override
+        public int getCount() {
+            return mEntry.mRows.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mEntry.mColumns;
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = get(column);
+            if (value == null) return FIELD_TYPE_NULL;
+            if (value instanceof Long) return FIELD_TYPE_INTEGER;
+            if (value instanceof Double) return FIELD_TYPE_FLOAT;
+            if (value instanceof byte[]) return FIELD_TYPE_BLOB;
+            return FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = get(column);
+            if (value == null) return null;
+            if (value instanceof byte[]) throw new IllegalStateException("Column " + column + " is a blob");
+            return value.toString();
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            Object value = get(column);
+            if (value == null) return null;
+            if (value instanceof byte[]) return ((byte[]) value).clone();
+            throw new IllegalStateException("Column " + column + " is not a blob");
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = get(column);
+            if (value == null) return 0;
+            if (value instanceof Number) return ((Number) value).longValue();
+            return Long.parseLong(value.toString());
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = get(column);
+            if (value == null) return 0;
+            if (value instanceof Number) return ((Number) value).doubleValue();
+            return Double.parseDouble(value.toString());
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+
+        private Object get(int column) {
+            if (mPos < 0 || mPos >= mEntry.mRows.length) {
+                throw new IndexOutOfBoundsException("Position " + mPos + ", count " + mEntry.mRows.length);
+            }
+            return mEntry.mRows[mPos][column];
+        }
+    }
+}
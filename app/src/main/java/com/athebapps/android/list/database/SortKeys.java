@@ -0,0 +1,50 @@
+package com.athebapps.android.list.database;
+
+import android.content.ContentValues;
+
+import java.text.Collator;
+import java.util.Locale;
+
+
+/**
+ * Computes the values of the sort key column of both tables: the collation key of the product for
+ * the current locale. Comparing two keys byte by byte gives the same order as comparing the
+ * products with the collator, so that SQLite can sort products with an index on this column
+ * instead of evaluating COLLATE LOCALIZED for every comparison of a full sort.
+ */
+final class SortKeys {
+
+    /* The locale of the collator */
+    private static Locale sLocale;
+
+    /* Collator of the current locale. Collators are not thread-safe, it is only used while holding
+     * the lock of the class. */
+    private static Collator sCollator;
+
+    private SortKeys() {}
+
+    /** @return the locale for which sort keys are computed, as stored in the database */
+    static String currentLocale() {
+        return Locale.getDefault().toString();
+    }
+
+    /** @return the sort key of the product for the current locale */
+    static synchronized byte[] compute(String product) {
+        Locale locale = Locale.getDefault();
+        if (!locale.equals(sLocale)) {
+            sCollator = Collator.getInstance(locale);
+            sLocale = locale;
+        }
+        return sCollator.getCollationKey(product).toByteArray();
+    }
+
+    /** Returns a copy of the values with the sort key of their product, if they have a product.
+     *  @param values values to be inserted into or updated in one of the tables, can be null
+     *  @param productColumn the column of the product in the table */
+    static ContentValues withSortKey(ContentValues values, String productColumn) {
+        if (values == null || values.getAsString(productColumn) == null) return values;
+        ContentValues copy = new ContentValues(values);
+        copy.put(ListContract.ListEntry.COLUMN_SORT_KEY, compute(values.getAsString(productColumn)));
+        return copy;
+    }
+}
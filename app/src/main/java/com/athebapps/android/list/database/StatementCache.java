@@ -0,0 +1,161 @@
+package com.athebapps.android.list.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the statements of the most frequent writes of ListContentProvider compiled: insertion of
+ * a product into either table, deletion of a product by _ID, and update of the priority and the
+ * annotation of a product of the list. Each write only binds its arguments and executes, instead
+ * of building SQL, ContentValues and selection arrays and compiling a statement every time.
+ *
+ * A statement is taken from the cache for the duration of a write and put back afterwards, no
+ * lock being held while it executes: a thread waiting for the database, e.g. during a batch of
+ * another thread, never holds a statement needed by the thread holding the database. When two
+ * threads need the same statement at the same time, the second one compiles its own.
+ */
+final class StatementCache {
+
+    /* Indices of the statements */
+    private static final int INSERT_LIST = 0;
+    private static final int INSERT_HISTORY = 1;
+    private static final int DELETE_LIST = 2;
+    private static final int DELETE_HISTORY = 3;
+    private static final int UPDATE_LIST_PRIORITY_AND_ANNOTATION = 4;
+
+    /* SQL of the statements, by index. Duplicated products are ignored, as by the tables. */
+    private static final String[] SQL = {
+            "INSERT OR IGNORE INTO " + ListContract.ListEntry.TABLE_NAME + " ("
+                    + ListContract.ListEntry.COLUMN_PRODUCT + ", " + ListContract.ListEntry.COLUMN_PRIORITY + ", "
+                    + ListContract.ListEntry.COLUMN_ANNOTATION + ", " + ListContract.ListEntry.COLUMN_SORT_KEY
+                    + ") VALUES (?, ?, ?, ?)",
+            "INSERT OR IGNORE INTO " + ListContract.HistoryEntry.TABLE_NAME + " ("
+                    + ListContract.HistoryEntry.COLUMN_PRODUCT + ", " + ListContract.HistoryEntry.COLUMN_SORT_KEY
+                    + ") VALUES (?, ?)",
+            "DELETE FROM " + ListContract.ListEntry.TABLE_NAME + " WHERE " + ListContract.ListEntry._ID + " = ?",
+            "DELETE FROM " + ListContract.HistoryEntry.TABLE_NAME + " WHERE " + ListContract.HistoryEntry._ID + " = ?",
+            "UPDATE " + ListContract.ListEntry.TABLE_NAME + " SET " + ListContract.ListEntry.COLUMN_PRIORITY
+                    + " = ?, " + ListContract.ListEntry.COLUMN_ANNOTATION + " = ? WHERE "
+                    + ListContract.ListEntry._ID + " = ?"
+    };
+
+    /* The compiled statements not in use, by index */
+    private final AtomicReferenceArray<SQLiteStatement> mStatements = new AtomicReferenceArray<>(SQL.length);
+
+    /* The database of the cached statements */
+    private final SQLiteDatabase mDatabase;
+
+    /* Set by close(), after which released statements are closed instead of being cached */
+    private volatile boolean mClosed;
+
+    /** @param db the database of the statements, open as long as the cache is used */
+    StatementCache(SQLiteDatabase db) {
+        mDatabase = db;
+    }
+
+    /** @return true if the cache compiles its statements for the given database */
+    boolean isFor(SQLiteDatabase db) {
+        return db == mDatabase;
+    }
+
+    /** Inserts a product into the list table.
+     *  @return the _ID of the new row, -1 if the product was already in the table */
+    long insertIntoList(String product, int priority, @Nullable String annotation, byte[] sortKey) {
+        SQLiteStatement statement = acquire(INSERT_LIST);
+        try {
+            statement.bindString(1, product);
+            statement.bindLong(2, priority);
+            bindStringOrNull(statement, 3, annotation);
+            statement.bindBlob(4, sortKey);
+            return statement.executeInsert();
+        } finally {
+            release(INSERT_LIST, statement);
+        }
+    }
+
+    /** Inserts a product into the history table.
+     *  @return the _ID of the new row, -1 if the product was already in the table */
+    long insertIntoHistory(String product, byte[] sortKey) {
+        SQLiteStatement statement = acquire(INSERT_HISTORY);
+        try {
+            statement.bindString(1, product);
+            statement.bindBlob(2, sortKey);
+            return statement.executeInsert();
+        } finally {
+            release(INSERT_HISTORY, statement);
+        }
+    }
+
+    /** Deletes a product from the list table.
+     *  @return the number of deleted rows */
+    int deleteFromList(long id) {
+        return executeUpdateDelete(DELETE_LIST, id);
+    }
+
+    /** Deletes a product from the history table.
+     *  @return the number of deleted rows */
+    int deleteFromHistory(long id) {
+        return executeUpdateDelete(DELETE_HISTORY, id);
+    }
+
+    /** Updates the priority and the annotation of a product of the list table.
+     *  @return the number of updated rows */
+    int updateListPriorityAndAnnotation(long id, int priority, @Nullable String annotation) {
+        SQLiteStatement statement = acquire(UPDATE_LIST_PRIORITY_AND_ANNOTATION);
+        try {
+            statement.bindLong(1, priority);
+            bindStringOrNull(statement, 2, annotation);
+            statement.bindLong(3, id);
+            return statement.executeUpdateDelete();
+        } finally {
+            release(UPDATE_LIST_PRIORITY_AND_ANNOTATION, statement);
+        }
+    }
+
+    /** Closes the statements not in use, the ones in use being closed when released. */
+    void close() {
+        mClosed = true;
+        for (int i = 0; i < SQL.length; i++) {
+            SQLiteStatement statement = mStatements.getAndSet(i, null);
+            if (statement != null) statement.close();
+        }
+    }
+
+    /* Executes a statement whose only argument is an _ID */
+    private int executeUpdateDelete(int index, long id) {
+        SQLiteStatement statement = acquire(index);
+        try {
+            statement.bindLong(1, id);
+            return statement.executeUpdateDelete();
+        } finally {
+            release(index, statement);
+        }
+    }
+
+    /* Takes a statement from the cache, or compiles it if it is in use by another thread */
+    private SQLiteStatement acquire(int index) {
+        SQLiteStatement statement = mStatements.getAndSet(index, null);
+        return statement != null ? statement : mDatabase.compileStatement(SQL[index]);
+    }
+
+    /* Puts a statement back into the cache, or closes it if another one has been put back first
+     * or if the cache has been closed */
+    private void release(int index, SQLiteStatement statement) {
+        statement.clearBindings();
+        if (mClosed || !mStatements.compareAndSet(index, null, statement)) {
+            statement.close();
+        } else if (mClosed) {
+            // close() ran while the statement was put back, and may have missed it
+            statement = mStatements.getAndSet(index, null);
+            if (statement != null) statement.close();
+        }
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, @Nullable String value) {
+        if (value != null) statement.bindString(index, value);
+        else statement.bindNull(index);
+    }
+}
@@ -0,0 +1,206 @@
+package com.athebapps.android.list.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.v7.preference.PreferenceManager;
+import android.text.TextUtils;
+
+import com.athebapps.android.list.R;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Immutable, typed snapshot of the user's preferences, used instead of looking up keys and
+ * comparing string values every time a preference is needed.
+ * The current snapshot is built once per process, then replaced by a new one by a single
+ * OnSharedPreferenceChangeListener whenever a preference changes. It can be read from any thread
+ * without locking, and the components reacting to a change are notified with both the previous
+ * and the current snapshots, so that they only compare typed values.
+ */
+public final class AppSettings {
+
+    /** Layout of the list */
+    public enum ListLayout { ONE_COLUMN, TWO_COLUMNS }
+
+    /** Order of the products of the list */
+    public enum SortOrder { BY_NAME, BY_PRIORITY }
+
+    /** Notified on the main thread when the settings change */
+    public interface OnSettingsChangedListener {
+        void onSettingsChanged(AppSettings previous, AppSettings current);
+    }
+
+    /* The current snapshot, null until the first call to get() */
+    private static volatile AppSettings sCurrent;
+
+    /* Keys and values of the preferences, resolved once. Guarded by the class lock. */
+    private static Keys sKeys;
+
+    /* The listener replacing the snapshot. SharedPreferences only keeps a weak reference to it. */
+    private static SharedPreferences.OnSharedPreferenceChangeListener sPreferenceListener;
+
+    private static final CopyOnWriteArrayList<OnSettingsChangedListener> sListeners = new CopyOnWriteArrayList<>();
+
+    private final ListLayout mListLayout;
+    private final SortOrder mSortOrder;
+    private final String mFontName;
+    private final boolean mHistoryCompactLayout;
+    private final boolean mAlarmOn;
+    private final String mAlarmTime;
+
+    private AppSettings(ListLayout listLayout, SortOrder sortOrder, String fontName,
+                        boolean historyCompactLayout, boolean alarmOn, String alarmTime) {
+        mListLayout = listLayout;
+        mSortOrder = sortOrder;
+        mFontName = fontName;
+        mHistoryCompactLayout = historyCompactLayout;
+        mAlarmOn = alarmOn;
+        mAlarmTime = alarmTime;
+    }
+
+    /** @return the current settings, read from the preferences the first time */
+    public static AppSettings get(Context context) {
+        AppSettings settings = sCurrent;
+        return settings != null ? settings : initialize(context);
+    }
+
+    /** Registers a listener notified of the changes of the settings. */
+    public static void registerListener(OnSettingsChangedListener listener) {
+        sListeners.addIfAbsent(listener);
+    }
+
+    /** Unregisters a listener registered by registerListener(). */
+    public static void unregisterListener(OnSettingsChangedListener listener) {
+        sListeners.remove(listener);
+    }
+
+    /** @return the layout of the list */
+    public ListLayout getListLayout() {
+        return mListLayout;
+    }
+
+    /** @return the order of the products of the list */
+    public SortOrder getSortOrder() {
+        return mSortOrder;
+    }
+
+    /** @return true if the list is sorted by priority then name, false if by name only */
+    public boolean isSortedByPriority() {
+        return mSortOrder == SortOrder.BY_PRIORITY;
+    }
+
+    /** @return the name of the font of the list in the Google Fonts directory */
+    public String getFontName() {
+        return mFontName;
+    }
+
+    /** @return true if the history is displayed in two columns */
+    public boolean isHistoryCompactLayout() {
+        return mHistoryCompactLayout;
+    }
+
+    /** @return true if a reminder is scheduled */
+    public boolean isAlarmOn() {
+        return mAlarmOn;
+    }
+
+    /** @return the String representation of the time of the reminder, empty if none was set */
+    public String getAlarmTime() {
+        return mAlarmTime;
+    }
+
+    /* Reads the settings and starts listening to the preferences */
+    private static synchronized AppSettings initialize(Context context) {
+        if (sCurrent != null) return sCurrent;
+        final Context appContext = context.getApplicationContext();
+        sKeys = new Keys(appContext);
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(appContext);
+        sCurrent = read(sharedPreferences);
+        sPreferenceListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                AppSettings previous;
+                AppSettings current;
+                synchronized (AppSettings.class) {
+                    previous = sCurrent;
+                    current = read(sharedPreferences);
+                    if (current.equals(previous)) return;
+                    sCurrent = current;
+                }
+                for (OnSettingsChangedListener listener : sListeners) {
+                    listener.onSettingsChanged(previous, current);
+                }
+            }
+        };
+        sharedPreferences.registerOnSharedPreferenceChangeListener(sPreferenceListener);
+        return sCurrent;
+    }
+
+    /* Builds a snapshot of the preferences, called with the class lock held */
+    private static AppSettings read(SharedPreferences sharedPreferences) {
+        Keys keys = sKeys;
+        String listLayout = sharedPreferences.getString(keys.listLayout, keys.listLayoutTwoColumns);
+        String sortOrder = sharedPreferences.getString(keys.sortOrder, keys.sortOrderByName);
+        return new AppSettings(
+                listLayout.equals(keys.listLayoutTwoColumns) ? ListLayout.TWO_COLUMNS : ListLayout.ONE_COLUMN,
+                sortOrder.equals(keys.sortOrderByPriority) ? SortOrder.BY_PRIORITY : SortOrder.BY_NAME,
+                sharedPreferences.getString(keys.font, keys.fontDefault),
+                sharedPreferences.getBoolean(keys.historyCompactLayout, keys.historyCompactLayoutDefault),
+                sharedPreferences.getBoolean(keys.alarmOn, false),
+                sharedPreferences.getString(keys.alarmTime, ""));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AppSettings)) return false;
+        AppSettings other = (AppSettings) o;
+        return mListLayout == other.mListLayout
+                && mSortOrder == other.mSortOrder
+                && TextUtils.equals(mFontName, other.mFontName)
+                && mHistoryCompactLayout == other.mHistoryCompactLayout
+                && mAlarmOn == other.mAlarmOn
+                && TextUtils.equals(mAlarmTime, other.mAlarmTime);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mListLayout.hashCode();
+        result = 31 * result + mSortOrder.hashCode();
+        result = 31 * result + (mFontName != null ? mFontName.hashCode() : 0);
+        result = 31 * result + (mHistoryCompactLayout ? 1 : 0);
+        result = 31 * result + (mAlarmOn ? 1 : 0);
+        result = 31 * result + (mAlarmTime != null ? mAlarmTime.hashCode() : 0);
+        return result;
+    }
+
+    /* Keys of the preferences and their values */
+    private static final class Keys {
+
+        final String listLayout;
+        final String listLayoutTwoColumns;
+        final String sortOrder;
+        final String sortOrderByName;
+        final String sortOrderByPriority;
+        final String font;
+        final String fontDefault;
+        final String historyCompactLayout;
+        final boolean historyCompactLayoutDefault;
+        final String alarmOn;
+        final String alarmTime;
+
+        Keys(Context context) {
+            listLayout = context.getString(R.string.pref_list_layout_key);
+            listLayoutTwoColumns = context.getString(R.string.pref_list_layout_two_columns_value);
+            sortOrder = context.getString(R.string.pref_sort_order_key);
+            sortOrderByName = context.getString(R.string.pref_sort_order_name_value);
+            sortOrderByPriority = context.getString(R.string.pref_sort_order_priority_value);
+            font = context.getString(R.string.pref_font_key);
+            fontDefault = context.getString(R.string.pref_font_roboto_value);
+            historyCompactLayout = context.getString(R.string.pref_history_compact_layout_key);
+            historyCompactLayoutDefault = context.getResources().getBoolean(R.bool.history_layout_compact_default);
+            alarmOn = context.getString(R.string.list_reminder_alarm_on);
+            alarmTime = context.getString(R.string.list_reminder_alarm_time);
+        }
+    }
+}
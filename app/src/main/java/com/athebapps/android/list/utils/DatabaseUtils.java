@@ -3,27 +3,22 @@ package com.athebapps.android.list.utils;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.PendingIntent;
-import android.content.ContentProviderOperation;
-import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
-import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
-import android.os.RemoteException;
-import android.support.annotation.Nullable;
+import android.os.Bundle;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.content.ContextCompat;
 
 import com.athebapps.android.list.ListActivity;
 import com.athebapps.android.list.R;
+import com.athebapps.android.list.database.DataExecutor;
 import com.athebapps.android.list.database.ListContract;
-import com.athebapps.android.list.database.ListQueryHandler;
-
-import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  * Utility methods for operations that require access to the database,
@@ -31,151 +26,133 @@ import java.util.HashMap;
  */
 public class DatabaseUtils {
 
-    /** Inserts a product into the list table.
+    /** Inserts a product into both the list and the history tables, in a single transaction.
      *  Called when a product is entered from the ActionView in the AppBar of ListActivity.
-     *  If the product is already in the table, it is not added a second time as COLUMN_PRODUCT in
-     *  list table is UNIQUE.
-     * @param listQueryHandler needed to perform insertion with ContentProvider on background thread
+     *  If the product is already in a table, it is not added a second time as COLUMN_PRODUCT is
+     *  UNIQUE in both tables.
+     * The insertion is performed on the writer thread of DataExecutor.
+     * @param context needed to get access to Content Resolver
      *  @param product the name of the product to be inserted */
-    public static void insertProductIntoListTable(ListQueryHandler listQueryHandler, String product) {
-
-        ContentValues values = new ContentValues();
-        values.put(ListContract.ListEntry.COLUMN_PRODUCT, product);
-        values.put(ListContract.ListEntry.COLUMN_PRIORITY,
-                ListContract.ListEntry.DEFAULT_PRIORITY_PRODUCT);
-        listQueryHandler.startInsert(
-                ListQueryHandler.INSERTION_LIST, null, ListContract.ListEntry.CONTENT_URI, values);
+    public static void insertProductIntoListAndHistoryTables(Context context, final String product) {
+        final ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        DataExecutor.getInstance().startWrite(DataExecutor.INSERTION_LIST_AND_HISTORY, DataExecutor.PRIORITY_UI,
+                new DataExecutor.Operation<Bundle>() {
+                    @Override
+                    public Bundle run() {
+                        return resolver.call(ListContract.ListEntry.CONTENT_URI,
+                                ListContract.METHOD_ADD_PRODUCT, product, null);
+                    }
+                }, null);
     }
 
-    /** Inserts a product into the history table.
-     *  Called when a product is entered from the ActionView in the AppBar of ListActivity.
-     *  If the product is already in the table, it is not added a second time as COLUMN_PRODUCT in
-     *  history table is UNIQUE.
-     * @param listQueryHandler needed to perform insertion with ContentProvider on background thread
-     *  @param product the name of the product to be inserted */
-    public static void insertProductIntoHistoryTable(ListQueryHandler listQueryHandler, String product) {
-
-        ContentValues values = new ContentValues();
-        values.put(ListContract.HistoryEntry.COLUMN_PRODUCT, product);
-        listQueryHandler.startInsert(
-                ListQueryHandler.INSERTION_HISTORY, null, ListContract.HistoryEntry.CONTENT_URI, values);
+    /**
+     * Inserts a product into the list table, e.g. to restore a deleted product.
+     * The insertion is performed on the writer thread of DataExecutor.
+     * @param context needed to get access to Content Resolver
+     * @param product the name of the product
+     * @param priority the priority of the product
+     * @param annotation the annotation of the product, may be null
+     */
+    public static void insertProductIntoListTable(Context context, String product, int priority, String annotation) {
+        final ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        final ContentValues contentValues = new ContentValues();
+        contentValues.put(ListContract.ListEntry.COLUMN_PRODUCT, product);
+        contentValues.put(ListContract.ListEntry.COLUMN_PRIORITY, priority);
+        if (annotation != null)
+            contentValues.put(ListContract.ListEntry.COLUMN_ANNOTATION, annotation);
+
+        DataExecutor.getInstance().startWrite(DataExecutor.INSERTION_LIST, DataExecutor.PRIORITY_UI,
+                new DataExecutor.Operation<Uri>() {
+                    @Override
+                    public Uri run() {
+                        return resolver.insert(ListContract.ListEntry.CONTENT_URI, contentValues);
+                    }
+                }, null);
     }
 
     /**
      * Deletes a product from the list table identified by its id.
-     * The values corresponding to this product (name, priority, annotation) are saved and returned.
-     * @param listQueryHandler needed to perform insertion with ContentProvider on background thread
-     * @param cu the cursor pointing to the product in the table to delete
-     * @return (product, priority, annotation) of the deleted product
+     * The deletion is performed on the writer thread of DataExecutor.
+     * @param context needed to get access to Content Resolver
+     * @param id the _ID of the product in the list table
      */
-    public static @Nullable ArrayList<String> deleteProductFromListTable(ListQueryHandler listQueryHandler, Cursor cu) {
-
-        if (cu!=null && cu.moveToFirst()) {
-
-            // Save values for result
-            String product = cu.getString(cu.getColumnIndex(ListContract.ListEntry.COLUMN_PRODUCT));
-            int priority = cu.getInt(cu.getColumnIndex(ListContract.ListEntry.COLUMN_PRIORITY));
-            String annotation = cu.getString(cu.getColumnIndex(ListContract.ListEntry.COLUMN_ANNOTATION));
-            String id = cu.getString(cu.getColumnIndex(ListContract.ListEntry._ID));
-            Uri uri = ListContract.ListEntry.CONTENT_URI;
-            uri = uri.buildUpon().appendPath(id).build();
-
-            ArrayList<String> deletedValues = new ArrayList<>();
-            deletedValues.add(product);
-            deletedValues.add(String.valueOf(priority));
-            deletedValues.add(annotation);
-
-            cu.close();
-
-            // Call for actual deletion
-            listQueryHandler.startDelete(ListQueryHandler.DELETION_LIST, null, uri, null, null);
+    public static void deleteProductFromListTable(Context context, long id) {
+        deleteFromListTable(context, ContentUris.withAppendedId(ListContract.ListEntry.CONTENT_URI, id));
+    }
 
-            return deletedValues;
-        }
-        else return null;
+    /**
+     * Deletes all the products from the list table.
+     * The deletion is performed on the writer thread of DataExecutor.
+     * @param context needed to get access to Content Resolver
+     */
+    public static void deleteAllProductsFromListTable(Context context) {
+        deleteFromListTable(context, ListContract.ListEntry.CONTENT_URI);
     }
 
     /**
      * Updates the priority and the annotation of a product of the list table.
-     * @param listQueryHandler needed to perform insertion with ContentProvider on background thread
+     * The update is performed on the writer thread of DataExecutor.
+     * @param context needed to get access to Content Resolver
      * @param uri the uri identifying the product
      * @param priority the new priority for the product
      * @param annotation the new annotation for the product
      */
-    public static void updateProductPriorityAndAnnotation(ListQueryHandler listQueryHandler, Uri uri, int priority, String annotation) {
-
-        ContentValues contentValues = new ContentValues();
+    public static void updateProductPriorityAndAnnotation(Context context, final Uri uri, int priority, String annotation) {
+        final ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        final ContentValues contentValues = new ContentValues();
         contentValues.put(ListContract.ListEntry.COLUMN_PRIORITY, priority);
         contentValues.put(ListContract.ListEntry.COLUMN_ANNOTATION, annotation);
 
-        listQueryHandler.startUpdate(ListQueryHandler.UPDATE_LIST, null, uri,
-                contentValues, null, null);
+        DataExecutor.getInstance().startWrite(DataExecutor.UPDATE_LIST, DataExecutor.PRIORITY_UI,
+                new DataExecutor.Operation<Integer>() {
+                    @Override
+                    public Integer run() {
+                        return resolver.update(uri, contentValues, null, null);
+                    }
+                }, null);
     }
 
     /**
-     * Inserts several products into the list table.
+     * Inserts several products of the history table into the list table.
      * @param context needed to get access to Content Resolver
-     * @param products the (id, name) pairs of the products to be deleted, only id is used here
+     * @param ids the _IDs of the products in the history table
      * @return the number of products actually added to the list (not duplicates)
      */
-    public static int insertProductsIntoListTable(Context context, HashMap<String, String> products) {
-
-        Uri uri = ListContract.ListEntry.CONTENT_URI;
-        ContentValues[] cv_all = new ContentValues[products.size()];
-        // Iterate through all the products in the HashMap
-        // and add the name  (values) of these products to the list table.
-        int i = 0;
-        for (String value: products.keySet()) {
-            ContentValues cv = new ContentValues();
-            cv.put(ListContract.ListEntry.COLUMN_PRODUCT, value);
-            cv.put(ListContract.ListEntry.COLUMN_PRIORITY, ListContract.ListEntry.DEFAULT_PRIORITY_PRODUCT);
-            cv_all[i] = cv;
-            i++;
-        }
-
-        // Here we use bulkInsert() to insert multiples lines at once as it is more efficient than
-        // calling insert() multiple times. We could also use ContentProviderOperations.
-        // AsyncQueryHandler does not allow bulkInsert therefore this implementation is not perfect
-        // but I want to keep it as an example. Same for ContentOperations used for deletion below.
-        return context.getContentResolver().bulkInsert(uri, cv_all);
+    public static int insertProductsIntoListTable(Context context, long[] ids) {
+
+        // The products are copied from the history table by the Content Provider in a single
+        // 'INSERT ... SELECT' statement, so that their names don't need to be passed around.
+        Bundle extras = new Bundle();
+        extras.putLongArray(ListContract.EXTRA_IDS, ids);
+        Bundle result = context.getContentResolver().call(ListContract.ListEntry.CONTENT_URI,
+                ListContract.METHOD_ADD_HISTORY_TO_LIST, null, extras);
+        return result != null ? result.getInt(ListContract.EXTRA_COUNT) : 0;
     }
 
     /**
      * Deletes several products from the history table.
      * @param context needed to get access to Content Resolver
-     * @param products the (id, name) pairs of the products to be deleted, only id is used here
+     * @param ids the _IDs of the products to be deleted
      * @return the number of products deleted from history
      */
-    public static int deleteProductsFromHistoryTable(Context context, HashMap<String, String> products) {
-
-        // We use ContentProviderOperations to delete the selected products in one
-        // batch operation.
-        // First, we iterate through all the Ids contained in the HashMap of selected
-        // products and create our list of deletion operations to be performed.
-        int nb = 0;
-        Uri uri;
-        ArrayList<ContentProviderOperation> deleteOperations = new ArrayList<>();
-        ContentProviderOperation operation;
-        for (String id : products.values()) {
-            uri = ListContract.HistoryEntry.CONTENT_URI;
-            uri = uri.buildUpon().appendPath(id).build();
-            operation = ContentProviderOperation.newDelete(uri).build();
-            deleteOperations.add(operation);
-        }
-        try {
-            ContentProviderResult[] results = context.getContentResolver().applyBatch(ListContract.CONTENT_AUTHORITY, deleteOperations);
-
-            // Check for results of deletion operations
-            for (ContentProviderResult result : results) {
-                nb += result.count;
-            }
+    public static int deleteProductsFromHistoryTable(Context context, long[] ids) {
 
-        }
-        catch (RemoteException | OperationApplicationException exception) {
-            //Log.d(TAG, "Exception while deleting products from history");
-        }
+        // All the products are deleted by a single 'DELETE ... WHERE _id IN (...)' statement.
+        if (ids.length == 0) return 0;
+        return context.getContentResolver().delete(ListContract.HistoryEntry.CONTENT_URI,
+                ListContract.buildIdSelection(ids), null);
+    }
 
-        return nb;
+    /* Deletes the product of a Uri of the list table, or all of them for the Uri of the table */
+    private static void deleteFromListTable(Context context, final Uri uri) {
+        final ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        DataExecutor.getInstance().startWrite(DataExecutor.DELETION_LIST, DataExecutor.PRIORITY_UI,
+                new DataExecutor.Operation<Integer>() {
+                    @Override
+                    public Integer run() {
+                        return resolver.delete(uri, null, null);
+                    }
+                }, null);
     }
 
     /**
@@ -192,7 +169,7 @@ public class DatabaseUtils {
         // For notifications, the whole list may not be entirely visible, so we sort by priority,
         // regardless of the user's preference, in order to get important products first.
         String sortOrder = ListContract.ListEntry.COLUMN_PRIORITY + " ASC, "
-                + ListContract.ListEntry.COLUMN_PRODUCT + " COLLATE LOCALIZED ASC";
+                + ListContract.ListEntry.COLUMN_SORT_KEY + " ASC";
         // We also don't want to show annotations to save space.
         String[] projection  = {ListContract.ListEntry.COLUMN_PRODUCT,
                 ListContract.ListEntry.COLUMN_PRIORITY};
@@ -0,0 +1,245 @@
+package com.athebapps.android.list.utils;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.provider.FontRequest;
+import android.support.v4.provider.FontsContractCompat;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.athebapps.android.list.R;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide cache of the fonts downloaded from Google Fonts, used instead of requesting a font
+ * from the font provider every time an activity is created or the font preference changes.
+ * A font is looked up, by its query, in:
+ *  - a small in-memory LRU cache of Typefaces,
+ *  - a copy of its file in the app's files, made the first time it is downloaded, so that it is
+ *    not requested from the font provider again, even in a new process,
+ *  - the font provider, from a single background thread shared by all the requests.
+ * A font that cannot be loaded, e.g. without network or font provider, is not requested again
+ * for a while, the callbacks receiving null meanwhile.
+ * Must be used from the main thread, on which loaded Typefaces are delivered.
+ */
+public final class FontCache {
+
+    private static final String TAG = FontCache.class.getSimpleName();
+
+    /** Query of the font of the toolbars, the only definition of this font */
+    public static final String TOOLBAR_FONT_QUERY = "name=Montserrat&weight=700&besteffort=true";
+
+    /* Font provider of Google Fonts */
+    private static final String PROVIDER_AUTHORITY = "com.google.android.gms.fonts";
+    private static final String PROVIDER_PACKAGE = "com.google.android.gms";
+
+    /* Maximum number of Typefaces kept in memory: the fonts of the list and of the toolbars, and
+     * the ones recently tried in the preferences */
+    private static final int MAX_TYPEFACES = 4;
+
+    /* Time during which a font that could not be loaded is not requested again */
+    private static final long FAILURE_RETRY_DELAY_MS = 10 * 60 * 1000;
+
+    /* Directory of the copies of the font files */
+    private static final String DIRECTORY = "fonts";
+
+    private static FontCache sInstance;
+
+    private final Context mContext;
+
+    private final LruCache<String, Typeface> mTypefaces = new LruCache<>(MAX_TYPEFACES);
+
+    /* Callbacks waiting for each font being loaded, so that a font is only loaded once at a time */
+    private final Map<String, List<Callback>> mPendingCallbacks = new HashMap<>();
+
+    /* Time of the last failure to load each font that could not be loaded, in elapsedRealtime() */
+    private final Map<String, Long> mFailures = new HashMap<>();
+
+    /* Handler of the background thread loading the fonts */
+    private final Handler mFontHandler;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Receives a loaded font */
+    public interface Callback {
+        /** @param typeface the font, null if it cannot be loaded, the default font being used then */
+        void onTypefaceLoaded(@Nullable Typeface typeface);
+    }
+
+    private FontCache(Context context) {
+        mContext = context.getApplicationContext();
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mFontHandler = new Handler(thread.getLooper());
+    }
+
+    /** @return the single instance of the cache */
+    public static synchronized FontCache getInstance(Context context) {
+        if (sInstance == null) sInstance = new FontCache(context);
+        return sInstance;
+    }
+
+    /** @return the query of a font of the Google Fonts directory, with its default style
+     *  @param name the name of the font, see AppSettings.getFontName() */
+    public static String buildQuery(String name) {
+        return "name=" + name;
+    }
+
+    /**
+     * Loads a font. The callback is called immediately if the font is in memory or has recently
+     * failed to load, otherwise once it has been loaded or has failed to load.
+     * @param query the query of the font, e.g. built by buildQuery()
+     * @param callback receives the font on the main thread, may be null to only load the font
+     */
+    public void load(final String query, @Nullable Callback callback) {
+        Typeface typeface = mTypefaces.get(query);
+        if (typeface != null) {
+            if (callback != null) callback.onTypefaceLoaded(typeface);
+            return;
+        }
+
+        Long failure = mFailures.get(query);
+        if (failure != null) {
+            if (SystemClock.elapsedRealtime() - failure < FAILURE_RETRY_DELAY_MS) {
+                if (callback != null) callback.onTypefaceLoaded(null);
+                return;
+            }
+            mFailures.remove(query);
+        }
+
+        List<Callback> callbacks = mPendingCallbacks.get(query);
+        if (callbacks != null) {
+            if (callback != null) callbacks.add(callback);
+            return;
+        }
+        callbacks = new ArrayList<>();
+        if (callback != null) callbacks.add(callback);
+        mPendingCallbacks.put(query, callbacks);
+
+        mFontHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final Typeface typeface = resolve(query);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        List<Callback> callbacks = mPendingCallbacks.remove(query);
+                        if (typeface == null) mFailures.put(query, SystemClock.elapsedRealtime());
+                        else mTypefaces.put(query, typeface);
+                        for (Callback callback : callbacks) callback.onTypefaceLoaded(typeface);
+                    }
+                });
+            }
+        });
+    }
+
+    /** Loads the font in the current preference and the font of the toolbars, so that they are in
+     *  memory when the activities are created. Called when the process starts. */
+    public void prefetch(String listFontName) {
+        load(TOOLBAR_FONT_QUERY, null);
+        load(buildQuery(listFontName), null);
+    }
+
+    /* Returns the font from its copy if any, otherwise from the font provider, copying its file.
+     * Returns null if the font cannot be loaded. Called on the background thread. */
+    @Nullable
+    private Typeface resolve(String query) {
+        File file = new File(new File(mContext.getFilesDir(), DIRECTORY), toFileName(query));
+        if (file.exists()) {
+            try {
+                return Typeface.createFromFile(file);
+            } catch (RuntimeException e) {
+                // A corrupted copy is downloaded again
+                Log.w(TAG, "Failed to read " + file, e);
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+
+        FontRequest request = new FontRequest(PROVIDER_AUTHORITY, PROVIDER_PACKAGE, query,
+                R.array.com_google_android_gms_fonts_certs);
+        FontsContractCompat.FontFamilyResult result;
+        try {
+            result = FontsContractCompat.fetchFonts(mContext, null, request);
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "Font provider not found", e);
+            return null;
+        }
+        if (result.getStatusCode() != FontsContractCompat.FontFamilyResult.STATUS_OK) {
+            Log.w(TAG, "Failed to fetch " + query + ": " + result.getStatusCode());
+            return null;
+        }
+        FontsContractCompat.FontInfo[] fonts = result.getFonts();
+        for (FontsContractCompat.FontInfo font : fonts) {
+            if (font.getResultCode() != FontsContractCompat.Columns.RESULT_CODE_OK) continue;
+            if (copy(font, file)) {
+                try {
+                    return Typeface.createFromFile(file);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Failed to read " + file, e);
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+            break;
+        }
+        // Without a copy, the font is built as FontsContractCompat.requestFont() would
+        return FontsContractCompat.buildTypeface(mContext, null, fonts);
+    }
+
+    /* Copies the file of a font, through a temporary file renamed when complete */
+    private boolean copy(FontsContractCompat.FontInfo font, File file) {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) return false;
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try {
+            ParcelFileDescriptor descriptor = mContext.getContentResolver().openFileDescriptor(font.getUri(), "r");
+            if (descriptor == null) return false;
+            InputStream in = new FileInputStream(descriptor.getFileDescriptor());
+            try {
+                OutputStream out = new FileOutputStream(temporaryFile);
+                try {
+                    byte[] buffer = new byte[8192];
+                    int length;
+                    while ((length = in.read(buffer)) != -1) out.write(buffer, 0, length);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+                descriptor.close();
+            }
+            return temporaryFile.renameTo(file);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to copy " + font.getUri(), e);
+            //noinspection ResultOfMethodCallIgnored
+            temporaryFile.delete();
+            return false;
+        }
+    }
+
+    /* Name of the copy of the file of a font */
+    @NonNull
+    private static String toFileName(String query) {
+        return query.replaceAll("[^A-Za-z0-9]", "_") + ".ttf";
+    }
+}
@@ -8,7 +8,7 @@ import android.widget.TextView;
 
 public class Utils {
 
-    /** Sets the Toolbar font to the provided Typeface. */
+    /** Sets the Toolbar font to the provided Typeface, the default one if null. */
     public static void styleToolbar(Toolbar toolbar, Typeface typeface) {
         // this is gross but toolbar doesn't expose it's children
         for (int i = 0; i < toolbar.getChildCount(); i++) {
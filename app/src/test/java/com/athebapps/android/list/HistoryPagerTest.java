@@ -0,0 +1,181 @@
+package com.athebapps.android.list;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+
+import com.athebapps.android.list.database.ListContentProvider;
+import com.athebapps.android.list.database.ListContract;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that HistoryPager loads the history in order, whether pages are queried from the keys of
+ * their neighbours or by offset, that it only keeps a bounded number of pages, and that a
+ * modification of the history updates the loaded pages in place.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class HistoryPagerTest {
+
+    /* Number of products in the history, several times the number of products of all the pages
+     * that can be held in memory */
+    private static final int NB_OF_PRODUCTS = 1000;
+
+    /* Maximum time to wait for a load */
+    private static final long TIMEOUT_MS = 5000;
+
+    private HistoryPager mPager;
+
+    private ContentResolver mResolver;
+
+    private int mNbOfCountLoads;
+
+    /* Updates notified by the pager since the history was loaded, e.g. "removed 10 1" */
+    private final List<String> mUpdates = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(ListContentProvider.class).create(ListContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+
+        ContentValues[] values = new ContentValues[NB_OF_PRODUCTS];
+        for (int i = 0; i < NB_OF_PRODUCTS; i++) {
+            values[i] = new ContentValues();
+            values[i].put(ListContract.HistoryEntry.COLUMN_PRODUCT, product(i));
+        }
+        mResolver.bulkInsert(ListContract.HistoryEntry.CONTENT_URI, values);
+
+        // Loaded pages are posted to the main looper, which is run by the test
+        ShadowLooper.pauseMainLooper();
+        mPager = new HistoryPager(mResolver, new HistoryPager.Callback() {
+            @Override
+            public void onCountLoaded() {
+                mNbOfCountLoads++;
+            }
+
+            @Override
+            public void onPageLoaded(int positionStart, int itemCount) {}
+
+            @Override
+            public void onInserted(int position, int count) {
+                mUpdates.add("inserted " + position + " " + count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                mUpdates.add("removed " + position + " " + count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                mUpdates.add("moved " + fromPosition + " " + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                mUpdates.add("changed " + position + " " + count);
+            }
+        });
+        mPager.start();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (mNbOfCountLoads == 0) {
+            assertTrue("History not loaded", System.currentTimeMillis() < deadline);
+            runMainLooper();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mPager.stop();
+    }
+
+    @Test
+    public void start_loadsCountAndFirstPage() {
+        assertEquals(NB_OF_PRODUCTS, mPager.size());
+        assertEquals(product(0), mPager.getProduct(0));
+        assertEquals(product(HistoryPager.PAGE_SIZE - 1), mPager.getProduct(HistoryPager.PAGE_SIZE - 1));
+        assertNull(mPager.getProduct(HistoryPager.PAGE_SIZE));
+    }
+
+    @Test
+    public void loadAround_scrollingDown_loadsAllProductsInOrder() {
+        for (int position = 0; position < NB_OF_PRODUCTS; position++) {
+            assertEquals(product(position), loadProduct(position));
+        }
+        // The first pages have been dropped
+        assertNull(mPager.getProduct(0));
+    }
+
+    @Test
+    public void loadAround_afterJump_loadsPreviousPagesInOrder() {
+        int last = NB_OF_PRODUCTS - 1;
+        assertEquals(product(last), loadProduct(last));
+        // Pages preceding a loaded page are queried from the key of its first product
+        for (int position = last; position >= 0; position--) {
+            assertEquals(product(position), loadProduct(position));
+        }
+    }
+
+    @Test
+    public void reload_afterDeletion_keepsLoadedPagesAndNotifiesRemoval() {
+        int lastLoaded = 3 * HistoryPager.PAGE_SIZE - 1;
+        for (int position = 0; position <= lastLoaded; position++) loadProduct(position);
+        mResolver.delete(ListContract.HistoryEntry.CONTENT_URI,
+                ListContract.HistoryEntry.COLUMN_PRODUCT + " = ?", new String[] {product(10)});
+        int nbOfCountLoads = mNbOfCountLoads;
+        mUpdates.clear();
+
+        mPager.reload();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (mUpdates.isEmpty()) {
+            assertTrue("History not reloaded", System.currentTimeMillis() < deadline);
+            runMainLooper();
+        }
+
+        assertEquals(nbOfCountLoads, mNbOfCountLoads);
+        assertEquals("removed 10 1", mUpdates.get(0));
+        assertEquals(NB_OF_PRODUCTS - 1, mPager.size());
+        // The pages are still loaded, with the products following the deleted one moved up
+        assertEquals(product(9), mPager.getProduct(9));
+        assertEquals(product(11), mPager.getProduct(10));
+        assertEquals(product(lastLoaded + 1), mPager.getProduct(lastLoaded));
+    }
+
+    /* Binds a position and waits until its product is loaded */
+    private String loadProduct(int position) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        mPager.loadAround(position);
+        while (mPager.getProduct(position) == null) {
+            assertTrue("Position " + position + " not loaded", System.currentTimeMillis() < deadline);
+            runMainLooper();
+        }
+        return mPager.getProduct(position);
+    }
+
+    private static void runMainLooper() {
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        ShadowLooper.runUiThreadTasks();
+    }
+
+    private static String product(int i) {
+        return String.format(Locale.US, "Product %04d", i);
+    }
+}
@@ -0,0 +1,60 @@
+package com.athebapps.android.list;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the set of selected ids of the history.
+ */
+public class HistorySelectionTest {
+
+    @Test
+    public void set_keepsIdsSortedAndUnique() {
+        HistorySelection selection = new HistorySelection();
+        selection.set(42, true);
+        selection.set(7, true);
+        selection.set(42, true);
+        selection.set(100, true);
+
+        assertEquals(3, selection.size());
+        assertArrayEquals(new long[] {7, 42, 100}, selection.toArray());
+        assertTrue(selection.contains(42));
+        assertFalse(selection.contains(8));
+    }
+
+    @Test
+    public void set_unselectsIds() {
+        HistorySelection selection = HistorySelection.fromArray(new long[] {3, 1, 2});
+        selection.set(2, false);
+        selection.set(5, false);
+
+        assertArrayEquals(new long[] {1, 3}, selection.toArray());
+        selection.clear();
+        assertTrue(selection.isEmpty());
+    }
+
+    @Test
+    public void set_growsBeyondInitialCapacity() {
+        HistorySelection selection = new HistorySelection();
+        for (long id = 1000; id > 0; id--) selection.set(id, true);
+
+        assertEquals(1000, selection.size());
+        long[] ids = selection.toArray();
+        for (int i = 0; i < ids.length; i++) assertEquals(i + 1, ids[i]);
+    }
+
+    @Test
+    public void fromArray_restoresSavedSelection() {
+        HistorySelection selection = new HistorySelection();
+        selection.set(12, true);
+        selection.set(5, true);
+
+        HistorySelection restored = HistorySelection.fromArray(selection.toArray());
+        assertArrayEquals(selection.toArray(), restored.toArray());
+        assertTrue(HistorySelection.fromArray(null).isEmpty());
+    }
+}
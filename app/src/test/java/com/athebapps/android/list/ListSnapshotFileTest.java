@@ -0,0 +1,121 @@
+package com.athebapps.android.list;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests that ListSnapshotFile reads back the rows it wrote, and that a missing, truncated or
+ * differently sorted file is ignored.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ListSnapshotFileTest {
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        //noinspection ResultOfMethodCallIgnored
+        getFile().delete();
+    }
+
+    @Test
+    public void read_afterWrite_returnsSameRows() {
+        ProductSnapshot snapshot = ProductSnapshot.fromColumns(
+                new long[] {3, 1, 2},
+                new String[] {"Pommes", "Crème fraîche", "Œufs"},
+                new String[] {null, "", "Bio, par 12"},
+                new byte[] {1, 2, 3});
+        ListSnapshotFile.write(mContext, snapshot, true);
+
+        ProductSnapshot read = ListSnapshotFile.read(mContext, true);
+        assertEquals(snapshot.size(), read.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            assertEquals(snapshot.getId(i), read.getId(i));
+            assertEquals(snapshot.getProduct(i), read.getProduct(i));
+            assertEquals(snapshot.getAnnotation(i), read.getAnnotation(i));
+            assertEquals(snapshot.getPriority(i), read.getPriority(i));
+        }
+    }
+
+    @Test
+    public void read_emptyList_returnsEmptySnapshot() {
+        ListSnapshotFile.write(mContext, ProductSnapshot.EMPTY, false);
+
+        assertEquals(0, ListSnapshotFile.read(mContext, false).size());
+    }
+
+    @Test
+    public void read_withoutFile_returnsNull() {
+        assertNull(ListSnapshotFile.read(mContext, true));
+    }
+
+    @Test
+    public void read_otherSortOrder_returnsNull() {
+        ListSnapshotFile.write(mContext, oneProduct(), true);
+
+        assertNull(ListSnapshotFile.read(mContext, false));
+    }
+
+    @Test
+    public void read_truncatedFile_returnsNull() throws Exception {
+        ListSnapshotFile.write(mContext, oneProduct(), true);
+        RandomAccessFile file = new RandomAccessFile(getFile(), "rw");
+        try {
+            file.setLength(file.length() - 3);
+        } finally {
+            file.close();
+        }
+
+        assertNull(ListSnapshotFile.read(mContext, true));
+    }
+
+    @Test
+    public void read_otherFile_returnsNull() throws Exception {
+        FileOutputStream out = new FileOutputStream(getFile());
+        try {
+            out.write(new byte[] {'<', 'h', 't', 'm', 'l', '>', 0, 0, 0, 0, 0, 0, 0});
+        } finally {
+            out.close();
+        }
+
+        assertNull(ListSnapshotFile.read(mContext, true));
+    }
+
+    @Test
+    public void write_largeList_deletesFile() {
+        ListSnapshotFile.write(mContext, oneProduct(), true);
+        int count = ListSnapshotFile.MAX_ROWS + 1;
+        long[] ids = new long[count];
+        String[] products = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i;
+            products[i] = "Product " + i;
+        }
+        ListSnapshotFile.write(mContext,
+                ProductSnapshot.fromColumns(ids, products, new String[count], new byte[count]), true);
+
+        assertNull(ListSnapshotFile.read(mContext, true));
+    }
+
+    private static ProductSnapshot oneProduct() {
+        return ProductSnapshot.fromColumns(new long[] {1}, new String[] {"Pommes"},
+                new String[] {null}, new byte[] {2});
+    }
+
+    private File getFile() {
+        return new File(mContext.getCacheDir(), ListSnapshotFile.FILE_NAME);
+    }
+}
@@ -0,0 +1,240 @@
+package com.athebapps.android.list;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.support.v7.util.ListUpdateCallback;
+
+import com.athebapps.android.list.database.ListContentProvider;
+import com.athebapps.android.list.database.ListContract;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that ListSnapshotLoader edits its previous snapshot with the changes of the list, and
+ * that the edited snapshot is the same as the one of a full query of the table. A change of the
+ * sort order moves the rows of the previous snapshot. The snapshot loaded last is only written to
+ * ListSnapshotFile when saved.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ListSnapshotLoaderTest {
+
+    private static final int NB_OF_PRODUCTS = 200;
+
+    private Context mContext;
+
+    private ContentResolver mResolver;
+
+    private final TestDataGenerator mGenerator = new TestDataGenerator(7);
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(ListContentProvider.class).create(ListContract.CONTENT_AUTHORITY);
+        mContext = RuntimeEnvironment.application;
+        mResolver = mContext.getContentResolver();
+        mGenerator.fillList(mResolver, NB_OF_PRODUCTS);
+    }
+
+    @Test
+    public void loadInBackground_withoutChanges_returnsSameSnapshot() {
+        ListSnapshotLoader loader = new ListSnapshotLoader(mContext, true);
+        ProductSnapshot snapshot = loader.loadInBackground();
+
+        assertSame(snapshot, loader.loadInBackground());
+    }
+
+    @Test
+    public void loadInBackground_afterChanges_editsPreviousSnapshot() {
+        for (boolean sortedByPriority : new boolean[] {true, false}) {
+            ListSnapshotLoader loader = new ListSnapshotLoader(mContext, sortedByPriority);
+            ProductSnapshot snapshot = loader.loadInBackground();
+
+            for (int i = 0; i < 30; i++) {
+                modifyRandomProduct(snapshot, i);
+                ProductSnapshot edited = loader.loadInBackground();
+                // An update that leaves the product unchanged returns the same snapshot
+                assertTrue(edited == snapshot || edited.isEditedFrom(snapshot));
+                assertSameRows(new ListSnapshotLoader(mContext, sortedByPriority).loadInBackground(), edited);
+                snapshot = edited;
+            }
+        }
+    }
+
+    @Test
+    public void loadInBackground_afterManyChanges_queriesWholeTable() {
+        ListSnapshotLoader loader = new ListSnapshotLoader(mContext, true);
+        ProductSnapshot snapshot = loader.loadInBackground();
+
+        mResolver.delete(ListContract.ListEntry.CONTENT_URI, null, null);
+        ProductSnapshot reloaded = loader.loadInBackground();
+
+        assertFalse(reloaded.isEditedFrom(snapshot));
+        assertEquals(0, reloaded.size());
+    }
+
+    @Test
+    public void loadInBackground_afterSortOrderChange_movesRowsOfPreviousSnapshot() {
+        ListSnapshotLoader loader = new ListSnapshotLoader(mContext, true);
+        ProductSnapshot snapshot = loader.loadInBackground();
+
+        for (boolean sortedByPriority : new boolean[] {false, true}) {
+            loader.setSortedByPriority(sortedByPriority);
+            ProductSnapshot sorted = loader.loadInBackground();
+
+            assertTrue(sorted.isEditedFrom(snapshot));
+            assertSameRows(new ListSnapshotLoader(mContext, sortedByPriority).loadInBackground(), sorted);
+            // Moving the rows of the previous snapshot as recorded gives the sorted snapshot
+            final List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < snapshot.size(); i++) ids.add(snapshot.getId(i));
+            sorted.dispatchUpdatesTo(new ListUpdateCallback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    fail();
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    fail();
+                }
+
+                @Override
+                public void onMoved(int fromPosition, int toPosition) {
+                    ids.add(toPosition, ids.remove(fromPosition));
+                }
+
+                @Override
+                public void onChanged(int position, int count, Object payload) {
+                    fail();
+                }
+            });
+            for (int i = 0; i < sorted.size(); i++) assertEquals(sorted.getId(i), (long) ids.get(i));
+            snapshot = sorted;
+        }
+    }
+
+    @Test
+    public void loadInBackground_afterSortOrderChangeOfManyRows_doesNotRecordMoves() {
+        mGenerator.fillList(mResolver, 5 * NB_OF_PRODUCTS);
+        ListSnapshotLoader loader = new ListSnapshotLoader(mContext, true);
+        ProductSnapshot snapshot = loader.loadInBackground();
+
+        loader.setSortedByPriority(false);
+        ProductSnapshot sorted = loader.loadInBackground();
+
+        // Too many rows move to be dispatched one by one: the snapshots are compared instead
+        assertFalse(sorted.isEditedFrom(snapshot));
+        assertSameRows(new ListSnapshotLoader(mContext, false).loadInBackground(), sorted);
+    }
+
+    @Test
+    public void loadInBackground_afterSortOrderChangeAndInsert_dispatchesMovesAndInsert() {
+        ListSnapshotLoader loader = new ListSnapshotLoader(mContext, true);
+        ProductSnapshot snapshot = loader.loadInBackground();
+
+        loader.setSortedByPriority(false);
+        ContentValues values = new ContentValues();
+        values.put(ListContract.ListEntry.COLUMN_PRODUCT, mGenerator.newProduct());
+        values.put(ListContract.ListEntry.COLUMN_PRIORITY, mGenerator.randomPriority());
+        mResolver.insert(ListContract.ListEntry.CONTENT_URI, values);
+        loader.onListChanged();
+        ProductSnapshot loaded = loader.loadInBackground();
+
+        // Both the moves and the insertion are dispatched from the displayed snapshot
+        assertTrue(loaded.isEditedFrom(snapshot));
+        assertSameRows(new ListSnapshotLoader(mContext, false).loadInBackground(), loaded);
+        final List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < snapshot.size(); i++) ids.add(snapshot.getId(i));
+        final int[] nbOfInsertions = {0};
+        loaded.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                nbOfInsertions[0] += count;
+                for (int i = 0; i < count; i++) ids.add(position, null);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                fail();
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                ids.add(toPosition, ids.remove(fromPosition));
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+            }
+        });
+        assertEquals(1, nbOfInsertions[0]);
+        for (int i = 0; i < loaded.size(); i++) {
+            if (ids.get(i) != null) assertEquals(loaded.getId(i), (long) ids.get(i));
+        }
+    }
+
+    @Test
+    public void saveSnapshot_writesLastLoadedSnapshotOnce() {
+        ListSnapshotLoader loader = new ListSnapshotLoader(mContext, true);
+        modifyRandomProduct(loader.loadInBackground(), 0);
+        ProductSnapshot snapshot = loader.loadInBackground();
+        // Loads do not write the file
+        assertNull(ListSnapshotFile.read(mContext, true));
+
+        loader.saveSnapshot();
+        assertSameRows(snapshot, ListSnapshotFile.read(mContext, true));
+
+        // Nothing is written again until a load changes the snapshot
+        ListSnapshotFile.write(mContext, ProductSnapshot.EMPTY, true);
+        loader.saveSnapshot();
+        assertEquals(0, ListSnapshotFile.read(mContext, true).size());
+    }
+
+    /* Inserts, deletes, or updates the priority or the annotation of a product of the snapshot */
+    private void modifyRandomProduct(ProductSnapshot snapshot, int i) {
+        long id = snapshot.getId(mGenerator.nextInt(snapshot.size()));
+        ContentValues values = new ContentValues();
+        switch (i % 4) {
+            case 0:
+                values.put(ListContract.ListEntry.COLUMN_PRODUCT, mGenerator.newProduct());
+                values.put(ListContract.ListEntry.COLUMN_PRIORITY, mGenerator.randomPriority());
+                mResolver.insert(ListContract.ListEntry.CONTENT_URI, values);
+                break;
+            case 1:
+                mResolver.delete(ContentUris.withAppendedId(ListContract.ListEntry.CONTENT_URI, id), null, null);
+                break;
+            case 2:
+                values.put(ListContract.ListEntry.COLUMN_PRIORITY, mGenerator.randomPriority());
+                mResolver.update(ContentUris.withAppendedId(ListContract.ListEntry.CONTENT_URI, id), values, null, null);
+                break;
+            default:
+                values.put(ListContract.ListEntry.COLUMN_ANNOTATION, "Annotation " + i);
+                mResolver.update(ContentUris.withAppendedId(ListContract.ListEntry.CONTENT_URI, id), values, null, null);
+        }
+    }
+
+    private static void assertSameRows(ProductSnapshot expected, ProductSnapshot actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getProduct(i), actual.getProduct(i));
+            assertEquals(expected.getId(i), actual.getId(i));
+            assertEquals(expected.getPriority(i), actual.getPriority(i));
+            assertEquals(expected.getAnnotation(i), actual.getAnnotation(i));
+        }
+    }
+}
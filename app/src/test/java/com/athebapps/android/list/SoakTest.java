@@ -0,0 +1,262 @@
+package com.athebapps.android.list;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import com.athebapps.android.list.benchmark.BenchmarkReport;
+import com.athebapps.android.list.database.ListContentProvider;
+import com.athebapps.android.list.database.ListContract;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the loaders and the adapters of the list and of the history over large generated tables
+ * and checks that they stay within time and memory budgets. As the budgets depend on the machine,
+ * the soak tests are only run along with the benchmarks, with -Pbenchmarks, and their timings and
+ * memory footprints are written by BenchmarkReport.
+ * The size of the tables can be multiplied with -PsoakScale=n, the budgets being multiplied too.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SoakTest {
+
+    /* Multiplier of the size of the tables and of the budgets */
+    private static final int SCALE = Integer.parseInt(System.getProperty("soak.scale", "1"));
+
+    /* Number of products in the list, a very long shopping list */
+    private static final int LIST_SIZE = 1000 * SCALE;
+
+    /* Number of products in the history, years of use */
+    private static final int HISTORY_SIZE = 20000 * SCALE;
+
+    /* Number of modifications of the list while it is displayed */
+    private static final int NB_OF_MODIFICATIONS = 50;
+
+    /* Time budgets */
+    private static final long LIST_LOAD_BUDGET_MS = 3000 * SCALE;
+    private static final long LIST_MODIFICATIONS_BUDGET_MS = 10000 * SCALE;
+    private static final long HISTORY_SCROLL_BUDGET_MS = 30000 * SCALE;
+
+    /* Memory budgets: the list is held in memory, the history only by pages */
+    private static final long LIST_BYTES_PER_PRODUCT_BUDGET = 1024;
+    private static final long HISTORY_MEMORY_BUDGET_BYTES = 4 * 1024 * 1024;
+
+    /* Maximum time to wait for an asynchronous update of an adapter */
+    private static final long TIMEOUT_MS = 5000;
+
+    private Context mContext;
+
+    private ContentResolver mResolver;
+
+    private final TestDataGenerator mGenerator = new TestDataGenerator(42);
+
+    /* Number of notifications received from the adapter being tested */
+    private int mNbOfAdapterUpdates;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(ListContentProvider.class).create(ListContract.CONTENT_AUTHORITY);
+        mContext = new ContextThemeWrapper(RuntimeEnvironment.application, R.style.AppTheme);
+        mResolver = mContext.getContentResolver();
+        // Updates of the adapters are posted to the main looper, which is run by the test
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @Test
+    public void list_loadBindAndModify_withinBudgets() throws Exception {
+        mGenerator.fillList(mResolver, LIST_SIZE);
+        BenchmarkReport report = new BenchmarkReport("ListSoakTest").param("scale", SCALE);
+        final ListAdapter adapter = new ListAdapter(mContext, new ListAdapter.ListAdapterOnClickHandler() {
+            @Override
+            public void onClick(long id, String product, int priority, String annotation) {}
+        });
+        countUpdates(adapter);
+
+        // Initial load, as done by the loader of ListActivity, and binding of every product
+        final ListSnapshotLoader loader = new ListSnapshotLoader(mContext, true);
+        long memoryBefore = usedMemory();
+        long duration = report.measure("listLoad", 0, 1, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                adapter.swapSnapshot(loader.loadInBackground());
+                assertEquals(LIST_SIZE, adapter.getItemCount());
+                bindAll(adapter);
+            }
+        });
+        assertWithinBudget("List load", duration, LIST_LOAD_BUDGET_MS);
+        long bytesPerProduct = (usedMemory() - memoryBefore) / LIST_SIZE;
+        report.record("listBytesPerProduct", bytesPerProduct);
+        assertTrue("List uses " + bytesPerProduct + " bytes per product",
+                bytesPerProduct < LIST_BYTES_PER_PRODUCT_BUDGET);
+
+        // Modifications while the list is displayed, each of them reloading the changed rows
+        duration = report.measure("listModifications", 0, 1, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                modifyList(adapter, loader);
+            }
+        });
+        assertWithinBudget("List modifications", duration, LIST_MODIFICATIONS_BUDGET_MS);
+        report.write();
+    }
+
+    @Test
+    public void history_scrollAndSelect_withinBudgets() throws Exception {
+        mGenerator.fillHistory(mResolver, HISTORY_SIZE);
+        BenchmarkReport report = new BenchmarkReport("HistorySoakTest").param("scale", SCALE);
+        final HistorySelection selection = new HistorySelection();
+        final HistoryAdapter adapter = new HistoryAdapter(mContext, selection, new HistoryAdapter.HistoryAdapterOnClickHandler() {
+            @Override
+            public void onClick() {}
+        });
+        countUpdates(adapter);
+
+        adapter.startLoading();
+        waitForAdapterUpdate(0);
+        assertEquals(HISTORY_SIZE, adapter.getItemCount());
+
+        // Scroll through the whole history, selecting one product out of ten
+        long memoryBefore = usedMemory();
+        long duration = report.measure("historyScroll", 0, 1, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                scrollHistory(adapter);
+            }
+        });
+        assertWithinBudget("History scroll", duration, HISTORY_SCROLL_BUDGET_MS);
+        assertEquals((HISTORY_SIZE + 9) / 10, selection.size());
+
+        long memory = usedMemory() - memoryBefore;
+        report.record("historyBytesAfterScroll", memory);
+        assertTrue("History uses " + memory + " bytes", memory < HISTORY_MEMORY_BUDGET_BYTES);
+        adapter.stopLoading();
+        report.write();
+    }
+
+    /* Modifies the list NB_OF_MODIFICATIONS times while it is displayed by the adapter, the
+     * loader reloading the changed rows after each modification */
+    private void modifyList(ListAdapter adapter, ListSnapshotLoader loader) {
+        int expectedSize = LIST_SIZE;
+        for (int i = 0; i < NB_OF_MODIFICATIONS; i++) {
+            ProductSnapshot snapshot = adapter.getSnapshot();
+            long id = snapshot.getId(mGenerator.nextInt(snapshot.size()));
+            switch (i % 3) {
+                case 0:
+                    ContentValues values = new ContentValues();
+                    values.put(ListContract.ListEntry.COLUMN_PRODUCT, mGenerator.newProduct());
+                    values.put(ListContract.ListEntry.COLUMN_PRIORITY, mGenerator.randomPriority());
+                    mResolver.insert(ListContract.ListEntry.CONTENT_URI, values);
+                    expectedSize++;
+                    break;
+                case 1:
+                    mResolver.delete(ContentUris.withAppendedId(ListContract.ListEntry.CONTENT_URI, id), null, null);
+                    expectedSize--;
+                    break;
+                default:
+                    ContentValues update = new ContentValues();
+                    update.put(ListContract.ListEntry.COLUMN_ANNOTATION, "Modification " + i);
+                    mResolver.update(ContentUris.withAppendedId(ListContract.ListEntry.CONTENT_URI, id), update, null, null);
+            }
+            int nbOfUpdates = mNbOfAdapterUpdates;
+            adapter.swapSnapshot(loader.loadInBackground());
+            waitForAdapterUpdate(nbOfUpdates);
+            assertEquals(expectedSize, adapter.getItemCount());
+        }
+    }
+
+    /* Binds every position of the history, waiting for the pages to be loaded, and selects one
+     * product out of ten */
+    private void scrollHistory(HistoryAdapter adapter) {
+        HistoryAdapter.ViewHolder holder = adapter.onCreateViewHolder(
+                new FrameLayout(mContext), adapter.getItemViewType(0));
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        for (int position = 0; position < HISTORY_SIZE; position++) {
+            adapter.onBindViewHolder(holder, position);
+            if (!holder.mCheckBox.isEnabled()) {
+                // Placeholder: wait for the page to be loaded
+                assertTrue("Position " + position + " not loaded", System.currentTimeMillis() < deadline);
+                runMainLooper();
+                position--;
+                continue;
+            }
+            deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            if (position % 10 == 0) holder.mCheckBox.setChecked(true);
+        }
+    }
+
+    /* Binds every position of the adapter, as when scrolling through the whole RecyclerView */
+    private void bindAll(ListAdapter adapter) {
+        ListAdapter.ViewHolder holder = adapter.onCreateViewHolder(
+                new FrameLayout(mContext), adapter.getItemViewType(0));
+        for (int position = 0; position < adapter.getItemCount(); position++) {
+            adapter.onBindViewHolder(holder, position);
+        }
+    }
+
+    private void countUpdates(RecyclerView.Adapter<?> adapter) {
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                mNbOfAdapterUpdates++;
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                mNbOfAdapterUpdates++;
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                mNbOfAdapterUpdates++;
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                mNbOfAdapterUpdates++;
+            }
+        });
+    }
+
+    /* Waits until the adapter has been notified of an update */
+    private void waitForAdapterUpdate(int nbOfUpdatesBefore) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (mNbOfAdapterUpdates == nbOfUpdatesBefore) {
+            assertTrue("Adapter not updated", System.currentTimeMillis() < deadline);
+            runMainLooper();
+        }
+    }
+
+    private static void assertWithinBudget(String name, long durationNs, long budgetMs) {
+        long durationMs = durationNs / 1000000;
+        assertTrue(name + " took " + durationMs + " ms, budget " + budgetMs + " ms", durationMs < budgetMs);
+    }
+
+    /* Memory used by the heap after a garbage collection */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void runMainLooper() {
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        ShadowLooper.runUiThreadTasks();
+    }
+}
@@ -0,0 +1,119 @@
+package com.athebapps.android.list;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+
+import com.athebapps.android.list.database.ListContract;
+
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+/**
+ * Generates realistic content for the list and history tables, at any scale: product names made
+ * of words with accents and non-latin scripts, quantities, annotations and priorities.
+ * The same seed always generates the same data, so that failures can be reproduced.
+ */
+public final class TestDataGenerator {
+
+    /* Names of products, with accents and non-latin scripts as entered by users */
+    private static final String[] PRODUCTS = {
+            "Pommes", "Poires", "Bananes", "Crème fraîche", "Œufs", "Pâtes", "Riz basmati",
+            "Café moulu", "Thé vert", "Lait demi-écrémé", "Beurre doux", "Pain de mie",
+            "Jalapeño", "Ñoquis", "Käse", "Müsli", "Smørbrød", "Açaí", "Crêpes", "Pâté",
+            "Tomates cerises", "Courgettes", "Épinards", "Brocolis", "Carottes", "Oignons",
+            "Ail", "Échalotes", "Citrons", "Oranges sanguines", "Fraises", "Framboises",
+            "Yaourts nature", "Fromage râpé", "Jambon", "Poulet fermier", "Saumon fumé",
+            "Huile d'olive", "Vinaigre balsamique", "Moutarde de Dijon", "Sel de Guérande",
+            "Poivre noir", "Farine", "Sucre roux", "Chocolat noir 70%", "Confiture d'abricots",
+            "Miel", "Céréales", "Eau pétillante", "Jus d'orange", "Bière", "Vin rouge",
+            "Lessive", "Papier toilette", "Éponges", "Liquide vaisselle", "Dentifrice",
+            "Shampooing", "寿司", "豆腐", "味噌", "キムチ", "Смородина", "Гречка", "Χαλούμι",
+            "חומוס", "Ẩm thực", "Đậu phụ"
+    };
+
+    /* Qualifiers appended to some products */
+    private static final String[] QUALIFIERS = {
+            "bio", "allégé", "sans gluten", "entier", "frais", "surgelé", "en conserve",
+            "de saison", "local", "premier prix", "extra", "à la coupe"
+    };
+
+    /* Quantities appended to some products */
+    private static final String[] QUANTITIES = {
+            "500 g", "1 kg", "250 g", "1 L", "6 x 33 cl", "x2", "x6", "x12", "2 kg", "75 cl"
+    };
+
+    /* Annotations of some of the products of the list */
+    private static final String[] ANNOTATIONS = {
+            "Pour dimanche", "La marque habituelle", "Si possible en promo", "Pour le gâteau",
+            "Demander au rayon", "Ne pas oublier !", "Pour les enfants", "Le plus mûr possible"
+    };
+
+    private final Random mRandom;
+
+    /** @param seed the seed of the generated data */
+    public TestDataGenerator(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /** @return count distinct product names */
+    public String[] products(int count) {
+        LinkedHashSet<String> products = new LinkedHashSet<>(count * 2);
+        while (products.size() < count) {
+            StringBuilder product = new StringBuilder(PRODUCTS[mRandom.nextInt(PRODUCTS.length)]);
+            if (mRandom.nextInt(3) == 0) product.append(' ').append(QUALIFIERS[mRandom.nextInt(QUALIFIERS.length)]);
+            if (mRandom.nextInt(4) == 0) product.append(' ').append(QUANTITIES[mRandom.nextInt(QUANTITIES.length)]);
+            // Large histories have many variants of the same products
+            if (products.contains(product.toString())) product.append(' ').append(products.size());
+            products.add(product.toString());
+        }
+        return products.toArray(new String[count]);
+    }
+
+    /** Inserts count products in the list table, a quarter of them with an annotation, with
+     *  random priorities. */
+    public void fillList(ContentResolver resolver, int count) {
+        String[] products = products(count);
+        ContentValues[] values = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = new ContentValues();
+            values[i].put(ListContract.ListEntry.COLUMN_PRODUCT, products[i]);
+            values[i].put(ListContract.ListEntry.COLUMN_PRIORITY, randomPriority());
+            values[i].put(ListContract.ListEntry.COLUMN_ANNOTATION,
+                    mRandom.nextInt(4) == 0 ? ANNOTATIONS[mRandom.nextInt(ANNOTATIONS.length)] : null);
+        }
+        resolver.bulkInsert(ListContract.ListEntry.CONTENT_URI, values);
+    }
+
+    /** Inserts count products in the history table. */
+    public void fillHistory(ContentResolver resolver, int count) {
+        String[] products = products(count);
+        ContentValues[] values = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = new ContentValues();
+            values[i].put(ListContract.HistoryEntry.COLUMN_PRODUCT, products[i]);
+        }
+        resolver.bulkInsert(ListContract.HistoryEntry.CONTENT_URI, values);
+    }
+
+    /** @return a random product that is unlikely to be in the tables */
+    public String newProduct() {
+        return PRODUCTS[mRandom.nextInt(PRODUCTS.length)] + " " + Long.toHexString(mRandom.nextLong());
+    }
+
+    /** @return a random priority, most products having the default priority */
+    public int randomPriority() {
+        switch (mRandom.nextInt(6)) {
+            case 0:
+                return ListContract.ListEntry.HIGH_PRIORITY_PRODUCT;
+            case 1:
+                return ListContract.ListEntry.LOW_PRIORITY_PRODUCT;
+            default:
+                return ListContract.ListEntry.DEFAULT_PRIORITY_PRODUCT;
+        }
+    }
+
+    /** @return a random int between 0 (inclusive) and bound (exclusive) */
+    public int nextInt(int bound) {
+        return mRandom.nextInt(bound);
+    }
+}
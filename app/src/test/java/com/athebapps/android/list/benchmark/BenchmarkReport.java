@@ -0,0 +1,127 @@
+package com.athebapps.android.list.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures operations and writes their timings as a JSON file, so that results can be compared
+ * from one change to the next.
+ * Each operation is run a number of times to warm up the JIT and the SQLite page cache, then
+ * measured a number of times. The file is written to the directory given by the
+ * 'benchmark.outputDir' system property, set by Gradle when run with -Pbenchmarks.
+ * Values other than timings, such as the memory used by an operation, can be recorded too.
+ */
+public final class BenchmarkReport {
+
+    /* Directory of the results when the system property is not set, e.g. when run from the IDE */
+    private static final String DEFAULT_OUTPUT_DIR = "build/outputs/benchmarks";
+
+    private final String mName;
+
+    /* Parameters of the benchmark, such as the number of rows of the tables */
+    private final Map<String, Object> mParams = new LinkedHashMap<>();
+
+    /* One JSON object per measured operation */
+    private final ArrayList<String> mResults = new ArrayList<>();
+
+    /** @param name name of the benchmark, also the name of the result file */
+    public BenchmarkReport(String name) {
+        mName = name;
+    }
+
+    /** Adds a parameter of the benchmark to the results */
+    public BenchmarkReport param(String name, Object value) {
+        mParams.put(name, value);
+        return this;
+    }
+
+    /** Runs an operation warmups times, then measures it iterations times and records the result.
+     *  @return the median duration of the operation, in nanoseconds */
+    public long measure(String operation, int warmups, int iterations, Operation op) throws Exception {
+        for (int i = 0; i < warmups; i++) op.run(i);
+
+        long[] durations = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            op.run(warmups + i);
+            durations[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(durations);
+
+        long total = 0;
+        for (long duration : durations) total += duration;
+        long median = percentile(durations, 50);
+        mResults.add(String.format(Locale.US,
+                "{\"operation\": \"%s\", \"iterations\": %d, \"meanNs\": %d, \"medianNs\": %d, "
+                        + "\"p90Ns\": %d, \"minNs\": %d, \"maxNs\": %d}",
+                operation, iterations, total / iterations, median,
+                percentile(durations, 90), durations[0], durations[iterations - 1]));
+        System.out.println(String.format(Locale.US, "%s %s %s: median %d us",
+                mName, mParams, operation, median / 1000));
+        return median;
+    }
+
+    /** Records a value measured otherwise than by measure(), such as a memory footprint.
+     *  @param name name of the value, including its unit, such as "listBytesPerProduct" */
+    public void record(String name, long value) {
+        mResults.add(String.format(Locale.US, "{\"operation\": \"%s\", \"value\": %d}", name, value));
+        System.out.println(String.format(Locale.US, "%s %s %s: %d", mName, mParams, name, value));
+    }
+
+    /** Writes the results to the output directory.
+     *  @return the result file */
+    public File write() throws IOException {
+        String dir = System.getProperty("benchmark.outputDir", DEFAULT_OUTPUT_DIR);
+        StringBuilder fileName = new StringBuilder(mName);
+        for (Map.Entry<String, Object> param : mParams.entrySet()) {
+            fileName.append('-').append(param.getKey()).append(param.getValue());
+        }
+        File file = new File(dir, fileName.append(".json").toString());
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+
+        StringBuilder json = new StringBuilder("{\n  \"benchmark\": \"").append(mName).append("\",\n");
+        json.append("  \"params\": {");
+        boolean first = true;
+        for (Map.Entry<String, Object> param : mParams.entrySet()) {
+            if (!first) json.append(", ");
+            first = false;
+            json.append('"').append(param.getKey()).append("\": ");
+            if (param.getValue() instanceof Number) json.append(param.getValue());
+            else json.append('"').append(param.getValue()).append('"');
+        }
+        json.append("},\n  \"results\": [\n");
+        for (int i = 0; i < mResults.size(); i++) {
+            json.append("    ").append(mResults.get(i));
+            json.append(i < mResults.size() - 1 ? ",\n" : "\n");
+        }
+        json.append("  ]\n}\n");
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(json.toString());
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    /** An operation to be measured */
+    public interface Operation {
+        /** @param iteration index of the run, warm-up runs included, e.g. to use different data */
+        void run(int iteration) throws Exception;
+    }
+}
@@ -0,0 +1,197 @@
+package com.athebapps.android.list.benchmark;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.athebapps.android.list.database.HistorySuggestionCache;
+import com.athebapps.android.list.database.ListContentProvider;
+import com.athebapps.android.list.database.ListContract;
+import com.athebapps.android.list.utils.DatabaseUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Benchmarks the operations of ListContentProvider used by the application, as well as the
+ * creation of the notification of the list and the suggestions of the history, for several
+ * sizes of the tables. Only run with -Pbenchmarks, see BenchmarkReport.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+public class ProviderBenchmark {
+
+    /* Number of rows of a bulk insertion or of a batch */
+    private static final int BATCH_SIZE = 100;
+
+    /* Maximum number of suggestions, as in ListActivity */
+    private static final int SUGGESTIONS_LIMIT = 20;
+
+    /* Sort order of the list by priority, as in PreferenceUtils */
+    private static final String LIST_SORT_ORDER = ListContract.ListEntry.COLUMN_PRIORITY + " ASC, "
+            + ListContract.ListEntry.COLUMN_SORT_KEY + " ASC";
+
+    /* Sort order of the history, as in HistoryPager */
+    private static final String HISTORY_SORT_ORDER = ListContract.HistoryEntry.COLUMN_SORT_KEY + " ASC, "
+            + ListContract.HistoryEntry._ID + " ASC";
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "rows = {0}")
+    public static Collection<Object[]> sizes() {
+        return Arrays.asList(new Object[][] {{100}, {10000}, {100000}});
+    }
+
+    /* Number of rows in each table before the operations are measured */
+    private final int mNbOfRows;
+
+    private Context mContext;
+
+    private ContentResolver mResolver;
+
+    public ProviderBenchmark(int nbOfRows) {
+        mNbOfRows = nbOfRows;
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        Robolectric.buildContentProvider(ListContentProvider.class).create(ListContract.CONTENT_AUTHORITY);
+        mContext = RuntimeEnvironment.application;
+        mResolver = mContext.getContentResolver();
+        fillTables();
+
+        // Fewer iterations for large tables, each of them being longer
+        final int warmups = mNbOfRows >= 100000 ? 2 : 10;
+        final int iterations = mNbOfRows >= 100000 ? 5 : 30;
+        BenchmarkReport report = new BenchmarkReport("ProviderBenchmark").param("rows", mNbOfRows);
+
+        report.measure("queryList", warmups, iterations, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                readAll(mResolver.query(ListContract.ListEntry.CONTENT_URI, null, null, null, LIST_SORT_ORDER));
+            }
+        });
+
+        report.measure("queryHistoryPage", warmups, iterations, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                Uri uri = ListContract.HistoryEntry.buildPageUri(50, mNbOfRows / 2);
+                readAll(mResolver.query(uri, null, null, null, HISTORY_SORT_ORDER));
+            }
+        });
+
+        final ArrayList<Uri> insertedUris = new ArrayList<>();
+        report.measure("insert", warmups, iterations, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                ContentValues values = new ContentValues();
+                values.put(ListContract.ListEntry.COLUMN_PRODUCT, "Inserted " + iteration);
+                values.put(ListContract.ListEntry.COLUMN_PRIORITY, ListContract.ListEntry.DEFAULT_PRIORITY_PRODUCT);
+                insertedUris.add(mResolver.insert(ListContract.ListEntry.CONTENT_URI, values));
+            }
+        });
+
+        report.measure("update", warmups, iterations, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                ContentValues values = new ContentValues();
+                values.put(ListContract.ListEntry.COLUMN_PRIORITY, ListContract.ListEntry.HIGH_PRIORITY_PRODUCT);
+                values.put(ListContract.ListEntry.COLUMN_ANNOTATION, "Updated " + iteration);
+                mResolver.update(insertedUris.get(iteration), values, null, null);
+            }
+        });
+
+        report.measure("delete", warmups, iterations, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                mResolver.delete(insertedUris.get(iteration), null, null);
+            }
+        });
+
+        report.measure("bulkInsert" + BATCH_SIZE, warmups, iterations, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                ContentValues[] values = new ContentValues[BATCH_SIZE];
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    values[i] = new ContentValues();
+                    values[i].put(ListContract.HistoryEntry.COLUMN_PRODUCT, "Bulk " + iteration + " " + i);
+                }
+                mResolver.bulkInsert(ListContract.HistoryEntry.CONTENT_URI, values);
+            }
+        });
+
+        report.measure("applyBatch" + BATCH_SIZE, warmups, iterations, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) throws Exception {
+                ArrayList<ContentProviderOperation> operations = new ArrayList<>(BATCH_SIZE);
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    Uri uri = ContentUris.withAppendedId(ListContract.ListEntry.CONTENT_URI,
+                            1 + (iteration * BATCH_SIZE + i) % mNbOfRows);
+                    operations.add(ContentProviderOperation.newUpdate(uri)
+                            .withValue(ListContract.ListEntry.COLUMN_PRIORITY, 1 + iteration % 3)
+                            .build());
+                }
+                mResolver.applyBatch(ListContract.CONTENT_AUTHORITY, operations);
+            }
+        });
+
+        report.measure("createNotification", warmups, iterations, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                DatabaseUtils.createNotificationFromListProducts(mContext);
+            }
+        });
+
+        report.measure("suggest", warmups, iterations, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                readAll(HistorySuggestionCache.getInstance()
+                        .suggest(mResolver, "product " + (iteration % 10), SUGGESTIONS_LIMIT));
+            }
+        });
+
+        report.measure("searchHistory", warmups, iterations, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                Uri uri = ListContract.HistoryEntry.buildSearchUri("product " + (iteration % 10), SUGGESTIONS_LIMIT);
+                readAll(mResolver.query(uri, null, null, null, null));
+            }
+        });
+
+        System.out.println("Results written to " + report.write());
+    }
+
+    /* Inserts mNbOfRows products in both tables */
+    private void fillTables() {
+        ContentValues[] list = new ContentValues[mNbOfRows];
+        ContentValues[] history = new ContentValues[mNbOfRows];
+        for (int i = 0; i < mNbOfRows; i++) {
+            list[i] = new ContentValues();
+            list[i].put(ListContract.ListEntry.COLUMN_PRODUCT, "Product " + i);
+            list[i].put(ListContract.ListEntry.COLUMN_PRIORITY, 1 + i % 3);
+            list[i].put(ListContract.ListEntry.COLUMN_ANNOTATION, i % 4 == 0 ? "Annotation " + i : null);
+            history[i] = new ContentValues();
+            history[i].put(ListContract.HistoryEntry.COLUMN_PRODUCT, "Product " + i);
+        }
+        mResolver.bulkInsert(ListContract.ListEntry.CONTENT_URI, list);
+        mResolver.bulkInsert(ListContract.HistoryEntry.CONTENT_URI, history);
+    }
+
+    /* Reads all the rows of the cursor, as an adapter would, and closes it */
+    private static void readAll(Cursor cursor) {
+        if (cursor == null) return;
+        try {
+            while (cursor.moveToNext()) cursor.getString(1);
+        } finally {
+            cursor.close();
+        }
+    }
+}
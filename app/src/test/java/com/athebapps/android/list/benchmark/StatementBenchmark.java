@@ -0,0 +1,135 @@
+package com.athebapps.android.list.benchmark;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Compares the writes of ListContentProvider through SQLiteDatabase.insertWithOnConflict(),
+ * update() and delete(), as before the statements were cached, with the same writes through
+ * statements compiled once and only bound and executed, as done by StatementCache.
+ * Only run with -Pbenchmarks, see BenchmarkReport.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StatementBenchmark {
+
+    /* Number of rows in the table before the writes are measured */
+    private static final int NB_OF_ROWS = 10000;
+
+    private static final int WARMUPS = 200;
+
+    private static final int ITERATIONS = 2000;
+
+    /* Same columns as the list table */
+    private static final String SQL_CREATE_LIST = "CREATE TABLE list (_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "product TEXT NOT NULL, annotation TEXT, priority INTEGER NOT NULL, sort_key BLOB, "
+            + "UNIQUE (product) ON CONFLICT IGNORE);";
+
+    /* A sort key of a typical length */
+    private static final byte[] SORT_KEY = new byte[24];
+
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mDb = SQLiteDatabase.create(null);
+        mDb.execSQL(SQL_CREATE_LIST);
+        mDb.beginTransaction();
+        try {
+            for (int i = 0; i < NB_OF_ROWS; i++) {
+                mDb.execSQL("INSERT INTO list (product, priority, sort_key) VALUES (?, 2, ?)",
+                        new Object[] {"Product " + i, SORT_KEY});
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("StatementBenchmark").param("rows", NB_OF_ROWS);
+        final int total = WARMUPS + ITERATIONS;
+
+        report.measure("insertWithOnConflict", WARMUPS, ITERATIONS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                ContentValues values = new ContentValues();
+                values.put("product", "Inserted " + iteration);
+                values.put("priority", 2);
+                values.put("sort_key", SORT_KEY);
+                mDb.insertWithOnConflict("list", null, values, SQLiteDatabase.CONFLICT_IGNORE);
+            }
+        });
+
+        final SQLiteStatement insert = mDb.compileStatement(
+                "INSERT OR IGNORE INTO list (product, priority, annotation, sort_key) VALUES (?, ?, ?, ?)");
+        report.measure("compiledInsert", WARMUPS, ITERATIONS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                insert.bindString(1, "Compiled " + iteration);
+                insert.bindLong(2, 2);
+                insert.bindNull(3);
+                insert.bindBlob(4, SORT_KEY);
+                insert.executeInsert();
+                insert.clearBindings();
+            }
+        });
+
+        report.measure("update", WARMUPS, ITERATIONS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                ContentValues values = new ContentValues();
+                values.put("priority", 1 + iteration % 3);
+                values.put("annotation", "Updated " + iteration);
+                mDb.update("list", values, "_id=?", new String[] {String.valueOf(1 + iteration)});
+            }
+        });
+
+        final SQLiteStatement update = mDb.compileStatement(
+                "UPDATE list SET priority = ?, annotation = ? WHERE _id = ?");
+        report.measure("compiledUpdate", WARMUPS, ITERATIONS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                update.bindLong(1, 1 + iteration % 3);
+                update.bindString(2, "Compiled " + iteration);
+                update.bindLong(3, 1 + iteration);
+                update.executeUpdateDelete();
+                update.clearBindings();
+            }
+        });
+
+        report.measure("delete", WARMUPS, ITERATIONS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                mDb.delete("list", "_id=?", new String[] {String.valueOf(1 + iteration)});
+            }
+        });
+
+        final SQLiteStatement delete = mDb.compileStatement("DELETE FROM list WHERE _id = ?");
+        report.measure("compiledDelete", WARMUPS, ITERATIONS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                delete.bindLong(1, 1 + total + iteration);
+                delete.executeUpdateDelete();
+                delete.clearBindings();
+            }
+        });
+
+        insert.close();
+        update.close();
+        delete.close();
+        System.out.println("Results written to " + report.write());
+    }
+}
@@ -0,0 +1,102 @@
+package com.athebapps.android.list.database;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Tests that ChangeNotifier dispatches the first notification of a Uri immediately, merges the
+ * following ones until the end of the window, and holds them until the end of the outermost batch.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ChangeNotifierTest {
+
+    private static final Uri LIST = ListContract.ListEntry.CONTENT_URI;
+
+    private static final Uri HISTORY = ListContract.HistoryEntry.CONTENT_URI;
+
+    private ContentResolver mResolver;
+
+    private ChangeNotifier mNotifier;
+
+    @Before
+    public void setUp() {
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        ShadowLooper.pauseMainLooper();
+        mNotifier = new ChangeNotifier(mResolver, new Handler(Looper.getMainLooper()));
+    }
+
+    @Test
+    public void notifyChange_withinWindow_dispatchesTwice() {
+        for (int i = 0; i < 10; i++) mNotifier.notifyChange(LIST);
+        assertEquals(1, nbOfNotifiedUris());
+
+        ShadowLooper.idleMainLooper(ChangeNotifier.WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals(2, nbOfNotifiedUris());
+        assertEquals(10, mNotifier.getNbOfRequests());
+        assertEquals(2, mNotifier.getNbOfDispatches());
+        assertEquals(8, mNotifier.getNbOfCollapsed());
+    }
+
+    @Test
+    public void notifyChange_differentUris_dispatchesEach() {
+        mNotifier.notifyChange(LIST);
+        mNotifier.notifyChange(HISTORY);
+
+        assertEquals(2, nbOfNotifiedUris());
+        assertEquals(0, mNotifier.getNbOfCollapsed());
+    }
+
+    @Test
+    public void notifyChange_afterWindow_dispatchesImmediately() {
+        mNotifier.notifyChange(LIST);
+        ShadowLooper.idleMainLooper(ChangeNotifier.WINDOW_MS, TimeUnit.MILLISECONDS);
+        mNotifier.notifyChange(LIST);
+
+        assertEquals(2, nbOfNotifiedUris());
+    }
+
+    @Test
+    public void endBatch_outermost_dispatchesOncePerUri() {
+        mNotifier.beginBatch();
+        mNotifier.notifyChange(LIST);
+        mNotifier.beginBatch();
+        mNotifier.notifyChange(LIST);
+        mNotifier.notifyChange(HISTORY);
+        mNotifier.endBatch(true);
+        assertEquals(0, nbOfNotifiedUris());
+
+        mNotifier.endBatch(true);
+
+        assertEquals(2, nbOfNotifiedUris());
+        assertEquals(1, mNotifier.getNbOfCollapsed());
+    }
+
+    @Test
+    public void endBatch_rolledBack_dispatchesNothing() {
+        mNotifier.beginBatch();
+        mNotifier.notifyChange(LIST);
+        mNotifier.endBatch(false);
+        ShadowLooper.idleMainLooper(ChangeNotifier.WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals(0, nbOfNotifiedUris());
+    }
+
+    private int nbOfNotifiedUris() {
+        return shadowOf(mResolver).getNotifiedUris().size();
+    }
+}
@@ -0,0 +1,143 @@
+package com.athebapps.android.list.database;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that DataExecutor runs operations by priority then in order, that reads do not wait for
+ * writes, and that cancelled operations neither run nor deliver their results.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DataExecutorTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private DataExecutor mExecutor;
+
+    /* Names of the operations, in the order in which they ran */
+    private final List<String> mRun = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() {
+        // A single reader, so that the order of the reads is deterministic
+        mExecutor = new DataExecutor(1, new Handler(Looper.getMainLooper()));
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @Test
+    public void startRead_uiPriority_runsBeforePendingBackgroundReads() throws Exception {
+        CountDownLatch blocked = block(true);
+        mExecutor.startRead(1, DataExecutor.PRIORITY_BACKGROUND, record("background 1"), null);
+        mExecutor.startRead(1, DataExecutor.PRIORITY_BACKGROUND, record("background 2"), null);
+        mExecutor.startRead(1, DataExecutor.PRIORITY_UI, record("ui"), null);
+        blocked.countDown();
+
+        awaitRun(4);
+        assertEquals(Arrays.asList("blocking", "ui", "background 1", "background 2"), mRun);
+    }
+
+    @Test
+    public void startWrite_samePriority_runsInOrder() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            mExecutor.startWrite(1, DataExecutor.PRIORITY_UI, record("write " + i), null);
+        }
+
+        awaitRun(20);
+        for (int i = 0; i < 20; i++) assertEquals("write " + i, mRun.get(i));
+    }
+
+    @Test
+    public void startRead_duringWrite_doesNotWait() throws Exception {
+        CountDownLatch blocked = block(false);
+        mExecutor.startRead(1, DataExecutor.PRIORITY_UI, record("read"), null);
+
+        awaitRun(2);
+        assertEquals("read", mRun.get(1));
+        blocked.countDown();
+    }
+
+    @Test
+    public void cancel_pendingOperation_neitherRunsNorDelivers() throws Exception {
+        final List<String> delivered = new ArrayList<>();
+        DataExecutor.Callback<String> callback = new DataExecutor.Callback<String>() {
+            @Override
+            public void onComplete(int token, String result) {
+                delivered.add(result);
+            }
+        };
+        CountDownLatch blocked = block(true);
+        // Only the cancelled operation is cancelled, not the other one with the same token
+        DataExecutor.Handle cancelled = mExecutor.startRead(2, DataExecutor.PRIORITY_UI, record("cancelled"), callback);
+        mExecutor.startRead(2, DataExecutor.PRIORITY_UI, record("kept"), callback);
+        cancelled.cancel();
+        blocked.countDown();
+
+        awaitRun(2);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (delivered.isEmpty()) {
+            assertTrue("Result not delivered", System.currentTimeMillis() < deadline);
+            ShadowLooper.runUiThreadTasks();
+        }
+        assertEquals(Arrays.asList("blocking", "kept"), mRun);
+        assertEquals(Collections.singletonList("kept"), delivered);
+    }
+
+    /* Starts an operation occupying the reader, or the writer, until the returned latch is
+     * counted down, and waits for it to start */
+    private CountDownLatch block(boolean reader) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        DataExecutor.Operation<String> operation = new DataExecutor.Operation<String>() {
+            @Override
+            public String run() {
+                mRun.add("blocking");
+                started.countDown();
+                try {
+                    blocked.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "blocking";
+            }
+        };
+        if (reader) mExecutor.startRead(0, DataExecutor.PRIORITY_BACKGROUND, operation, null);
+        else mExecutor.startWrite(0, DataExecutor.PRIORITY_BACKGROUND, operation, null);
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return blocked;
+    }
+
+    /* An operation recording its name when it runs */
+    private DataExecutor.Operation<String> record(final String name) {
+        return new DataExecutor.Operation<String>() {
+            @Override
+            public String run() {
+                mRun.add(name);
+                return name;
+            }
+        };
+    }
+
+    private void awaitRun(int nbOfOperations) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (mRun.size() < nbOfOperations) {
+            assertTrue("Operations not run: " + mRun, System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.athebapps.android.list.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests that the add_product method of ListContentProvider inserts a product into both tables,
+ * and reports the tables in which the product already was.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ListContentProviderAddProductTest {
+
+    private ListContentProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.buildContentProvider(ListContentProvider.class)
+                .create(ListContract.CONTENT_AUTHORITY).get();
+    }
+
+    @Test
+    public void addProduct_newProduct_insertsIntoBothTables() {
+        Bundle result = addProduct("Pommes");
+
+        assertNotEquals(-1, result.getLong(ListContract.EXTRA_LIST_ID));
+        assertNotEquals(-1, result.getLong(ListContract.EXTRA_HISTORY_ID));
+        assertEquals(1, count(ListContract.ListEntry.TABLE_NAME, "Pommes"));
+        assertEquals(1, count(ListContract.HistoryEntry.TABLE_NAME, "Pommes"));
+    }
+
+    @Test
+    public void addProduct_twice_insertsOnce() {
+        addProduct("Pommes");
+        Bundle result = addProduct("Pommes");
+
+        assertEquals(-1, result.getLong(ListContract.EXTRA_LIST_ID));
+        assertEquals(-1, result.getLong(ListContract.EXTRA_HISTORY_ID));
+        assertEquals(1, count(ListContract.ListEntry.TABLE_NAME, "Pommes"));
+        assertEquals(1, count(ListContract.HistoryEntry.TABLE_NAME, "Pommes"));
+    }
+
+    @Test
+    public void addProduct_alreadyInHistory_insertsIntoListOnly() {
+        ContentValues values = new ContentValues();
+        values.put(ListContract.HistoryEntry.COLUMN_PRODUCT, "Pommes");
+        mProvider.insert(ListContract.HistoryEntry.CONTENT_URI, values);
+
+        Bundle result = addProduct("Pommes");
+
+        assertNotEquals(-1, result.getLong(ListContract.EXTRA_LIST_ID));
+        assertEquals(-1, result.getLong(ListContract.EXTRA_HISTORY_ID));
+        assertEquals(1, count(ListContract.ListEntry.TABLE_NAME, "Pommes"));
+        assertEquals(1, count(ListContract.HistoryEntry.TABLE_NAME, "Pommes"));
+    }
+
+    private Bundle addProduct(String product) {
+        return mProvider.call(ListContract.METHOD_ADD_PRODUCT, product, null);
+    }
+
+    /* Number of rows of a table with the given product */
+    private int count(String table, String product) {
+        Cursor cursor = mProvider.query(
+                table.equals(ListContract.ListEntry.TABLE_NAME)
+                        ? ListContract.ListEntry.CONTENT_URI : ListContract.HistoryEntry.CONTENT_URI,
+                null, "product = ?", new String[] {product}, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.athebapps.android.list.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that upgrading a version 5 database, the oldest migrated version, to the current version
+ * keeps all the rows of both tables. Also tests that recomputing the sort keys for a new locale
+ * writes a single change to the journal.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ListDbHelperMigrationTest {
+
+    private static final String DATABASE_NAME = "migration_test.db";
+
+    /* Number of rows inserted in each table before upgrading */
+    private static final int NB_OF_ROWS = 5000;
+
+    /* Schema of the version 5 of the database, which must not change */
+    private static final String SQL_CREATE_LIST_V5 =
+            "CREATE TABLE list (_id INTEGER PRIMARY KEY AUTOINCREMENT, product TEXT NOT NULL, "
+                    + "annotation TEXT, priority INTEGER NOT NULL,  UNIQUE (product) ON CONFLICT IGNORE);";
+    private static final String SQL_CREATE_HISTORY_V5 =
+            "CREATE TABLE history (_id INTEGER PRIMARY KEY AUTOINCREMENT, product TEXT NOT NULL,  "
+                    + "UNIQUE (product) ON CONFLICT IGNORE);";
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void upgradeFromVersion5_keepsAllRows() {
+        createVersion5Database(NB_OF_ROWS);
+
+        ListDbHelper helper = new ListDbHelper(mContext, DATABASE_NAME);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        assertEquals(NB_OF_ROWS, count(db, "SELECT COUNT(*) FROM list"));
+        assertEquals(NB_OF_ROWS, count(db, "SELECT COUNT(*) FROM history"));
+
+        // Check the values of one of the rows
+        Cursor cursor = db.rawQuery("SELECT product, annotation, priority FROM list WHERE _id = 42", null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Product 41", cursor.getString(0));
+        assertEquals("Annotation 41", cursor.getString(1));
+        assertEquals(ListContract.ListEntry.LOW_PRIORITY_PRODUCT, cursor.getInt(2));
+        cursor.close();
+
+        // The full-text index of history must contain the existing products
+        assertEquals(NB_OF_ROWS, count(db,
+                "SELECT COUNT(*) FROM history_fts WHERE history_fts MATCH 'prod*'"));
+
+        // All the rows must have a sort key
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM list WHERE sort_key IS NULL"));
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM history WHERE sort_key IS NULL"));
+
+        helper.close();
+    }
+
+    @Test
+    public void upgradeFromVersion5_emptyDatabase() {
+        createVersion5Database(0);
+
+        ListDbHelper helper = new ListDbHelper(mContext, DATABASE_NAME);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM list"));
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM history"));
+
+        helper.close();
+    }
+
+    @Test
+    public void upgradeFromVersion5_sortsFromIndexes() {
+        createVersion5Database(100);
+
+        ListDbHelper helper = new ListDbHelper(mContext, DATABASE_NAME);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        // Both orders of the list and the order of the history must not need a temporary sort tree
+        assertSortedFromIndex(db, "SELECT * FROM list ORDER BY priority ASC, sort_key ASC");
+        assertSortedFromIndex(db, "SELECT * FROM list ORDER BY sort_key ASC");
+        assertSortedFromIndex(db, "SELECT * FROM history ORDER BY sort_key ASC");
+
+        // Sort keys give the same order as the names, "Product 10" comes before "Product 2"
+        Cursor cursor = db.rawQuery("SELECT product FROM history ORDER BY sort_key ASC", null);
+        String previous = null;
+        while (cursor.moveToNext()) {
+            if (previous != null) assertTrue(previous.compareTo(cursor.getString(0)) < 0);
+            previous = cursor.getString(0);
+        }
+        cursor.close();
+
+        helper.close();
+    }
+
+    @Test
+    public void updateSortKeysIfLocaleChanged_journalsSingleReload() {
+        createVersion5Database(100);
+        ListDbHelper helper = new ListDbHelper(mContext, DATABASE_NAME);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(locale.equals(Locale.FRANCE) ? Locale.GERMANY : Locale.FRANCE);
+            assertTrue(helper.updateSortKeysIfLocaleChanged(db));
+            assertFalse(helper.updateSortKeysIfLocaleChanged(db));
+        } finally {
+            Locale.setDefault(locale);
+        }
+
+        // The rewritten sort keys are not journaled row by row
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM list_changes"));
+        assertEquals(ListContract.ListChangeEntry.OPERATION_RELOAD,
+                count(db, "SELECT operation FROM list_changes"));
+
+        helper.close();
+    }
+
+    /* Checks that the query plan of a query does not contain any sort */
+    private static void assertSortedFromIndex(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            while (cursor.moveToNext()) {
+                String detail = cursor.getString(cursor.getColumnIndex("detail"));
+                assertFalse(sql + ": " + detail, detail.contains("TEMP B-TREE"));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /* Creates a version 5 database with the given number of rows in each table */
+    private void createVersion5Database(int nbOfRows) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(
+                mContext.getDatabasePath(DATABASE_NAME), null);
+        db.execSQL(SQL_CREATE_LIST_V5);
+        db.execSQL(SQL_CREATE_HISTORY_V5);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < nbOfRows; i++) {
+                db.execSQL("INSERT INTO list (product, annotation, priority) VALUES (?, ?, ?)",
+                        new Object[] {"Product " + i, "Annotation " + i, 1 + i % 3});
+                db.execSQL("INSERT INTO history (product) VALUES (?)", new Object[] {"Product " + i});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.setVersion(5);
+        db.close();
+    }
+
+    private static long count(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.athebapps.android.list.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that ListContentProvider answers repeated queries from its cache of query results, and
+ * that a write to a table removes the cached results of the queries of this table. Uncached Uris
+ * are always read from the database.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class QueryCacheTest {
+
+    private static final String[] PROJECTION = {
+            ListContract.ListEntry._ID,
+            ListContract.ListEntry.COLUMN_PRODUCT,
+            ListContract.ListEntry.COLUMN_PRIORITY};
+
+    private ListContentProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.buildContentProvider(ListContentProvider.class)
+                .create(ListContract.CONTENT_AUTHORITY).get();
+        insertIntoList("Pommes", 1);
+        insertIntoList("Poires", 2);
+    }
+
+    @Test
+    public void query_repeated_isAnsweredFromCache() {
+        assertEquals(2, countList());
+        assertEquals(2, countList());
+
+        Bundle stats = getStats();
+        assertEquals(1, stats.getInt(ListContract.EXTRA_HITS));
+        assertEquals(1, stats.getInt(ListContract.EXTRA_MISSES));
+    }
+
+    @Test
+    public void query_afterInsertion_readsNewRow() {
+        assertEquals(2, countList());
+        insertIntoList("Cerises", 3);
+
+        assertEquals(3, countList());
+        assertEquals(0, getStats().getInt(ListContract.EXTRA_HITS));
+    }
+
+    @Test
+    public void query_afterWriteOfOtherTable_isAnsweredFromCache() {
+        assertEquals(2, countList());
+        ContentValues values = new ContentValues();
+        values.put(ListContract.HistoryEntry.COLUMN_PRODUCT, "Cerises");
+        mProvider.insert(ListContract.HistoryEntry.CONTENT_URI, values);
+
+        assertEquals(2, countList());
+        assertEquals(1, getStats().getInt(ListContract.EXTRA_HITS));
+    }
+
+    @Test
+    public void query_cachedResult_hasSameValues() {
+        Cursor queried = queryList();
+        Cursor cached = queryList();
+        try {
+            assertEquals(queried.getCount(), cached.getCount());
+            while (queried.moveToNext() && cached.moveToNext()) {
+                assertEquals(queried.getLong(0), cached.getLong(0));
+                assertEquals(queried.getString(1), cached.getString(1));
+                assertEquals(queried.getInt(2), cached.getInt(2));
+            }
+        } finally {
+            queried.close();
+            cached.close();
+        }
+    }
+
+    @Test
+    public void query_largeResult_isNotCached() {
+        for (int i = 0; i < QueryCache.MAX_ROWS; i++) insertIntoList("Product " + i, 2);
+
+        assertEquals(QueryCache.MAX_ROWS + 2, countList());
+        assertEquals(QueryCache.MAX_ROWS + 2, countList());
+        assertEquals(0, getStats().getInt(ListContract.EXTRA_HITS));
+    }
+
+    @Test
+    public void query_uncachedUri_readsDatabase() {
+        assertEquals(2, countList());
+        Cursor cursor = mProvider.query(ListContract.ListEntry.UNCACHED_CONTENT_URI, PROJECTION, null, null,
+                ListContract.ListEntry.COLUMN_PRODUCT + " ASC");
+        try {
+            assertEquals(2, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+
+        assertEquals(0, getStats().getInt(ListContract.EXTRA_HITS));
+    }
+
+    private void insertIntoList(String product, int priority) {
+        ContentValues values = new ContentValues();
+        values.put(ListContract.ListEntry.COLUMN_PRODUCT, product);
+        values.put(ListContract.ListEntry.COLUMN_PRIORITY, priority);
+        mProvider.insert(ListContract.ListEntry.CONTENT_URI, values);
+    }
+
+    private Cursor queryList() {
+        return mProvider.query(ListContract.ListEntry.CONTENT_URI, PROJECTION, null, null,
+                ListContract.ListEntry.COLUMN_PRODUCT + " ASC");
+    }
+
+    private int countList() {
+        Cursor cursor = queryList();
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Bundle getStats() {
+        return mProvider.call(ListContract.METHOD_GET_QUERY_CACHE_STATS, null, null);
+    }
+}